@@ -0,0 +1,40 @@
+package com.gnemirko.imdbvec.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "app.embedding-cache")
+public class EmbeddingCacheProperties {
+
+    /** Look embedding texts up in {@code embedding_cache} before asking the model. */
+    private boolean enabled = true;
+    /** Least recently used entries beyond this many are evicted after each backfill; 0 keeps everything. */
+    private long maxEntries = 500_000;
+    /** A hit only refreshes {@code last_used_at} once it is older than this, so lookups rarely write. */
+    private Duration touchInterval = Duration.ofDays(1);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(long maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public Duration getTouchInterval() {
+        return touchInterval;
+    }
+
+    public void setTouchInterval(Duration touchInterval) {
+        this.touchInterval = touchInterval;
+    }
+}
@@ -1,9 +1,11 @@
 package com.gnemirko.imdbvec.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
 
 import java.net.URI;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -22,6 +24,37 @@ public class ImdbImportProperties {
 
     private Integer maxTitles = 10_000;
 
+    private boolean parallelLoad = true;
+
+    private int loadThreads = 4;
+
+    private boolean prefilter = true;
+
+    private boolean incremental = true;
+
+    private int downloadRetries = 5;
+
+    private int downloadSegments = 1;
+
+    private DataSize downloadSegmentMinSize = DataSize.ofMegabytes(256);
+
+    private boolean downloadVerifyEtagDigest = true;
+
+    private RefreshMode refreshMode = RefreshMode.IN_PLACE;
+
+    private Duration swapLockTimeout = Duration.ofSeconds(10);
+
+    private Duration resumeMaxAge = Duration.ofHours(24);
+
+    /**
+     * How a refresh reaches the live catalog: {@code IN_PLACE} upserts into {@code movie} and
+     * friends directly, {@code SHADOW} builds copies next to them and swaps them in by rename.
+     */
+    public enum RefreshMode {
+        IN_PLACE,
+        SHADOW
+    }
+
     public String getBaseUrl() {
         return baseUrl;
     }
@@ -54,6 +87,94 @@ public class ImdbImportProperties {
         this.maxTitles = maxTitles;
     }
 
+    public boolean isParallelLoad() {
+        return parallelLoad;
+    }
+
+    public void setParallelLoad(boolean parallelLoad) {
+        this.parallelLoad = parallelLoad;
+    }
+
+    public int getLoadThreads() {
+        return loadThreads;
+    }
+
+    public void setLoadThreads(int loadThreads) {
+        this.loadThreads = loadThreads;
+    }
+
+    public boolean isPrefilter() {
+        return prefilter;
+    }
+
+    public void setPrefilter(boolean prefilter) {
+        this.prefilter = prefilter;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public int getDownloadRetries() {
+        return downloadRetries;
+    }
+
+    public void setDownloadRetries(int downloadRetries) {
+        this.downloadRetries = downloadRetries;
+    }
+
+    public int getDownloadSegments() {
+        return downloadSegments;
+    }
+
+    public void setDownloadSegments(int downloadSegments) {
+        this.downloadSegments = downloadSegments;
+    }
+
+    public DataSize getDownloadSegmentMinSize() {
+        return downloadSegmentMinSize;
+    }
+
+    public void setDownloadSegmentMinSize(DataSize downloadSegmentMinSize) {
+        this.downloadSegmentMinSize = downloadSegmentMinSize;
+    }
+
+    public boolean isDownloadVerifyEtagDigest() {
+        return downloadVerifyEtagDigest;
+    }
+
+    public void setDownloadVerifyEtagDigest(boolean downloadVerifyEtagDigest) {
+        this.downloadVerifyEtagDigest = downloadVerifyEtagDigest;
+    }
+
+    public RefreshMode getRefreshMode() {
+        return refreshMode;
+    }
+
+    public void setRefreshMode(RefreshMode refreshMode) {
+        this.refreshMode = refreshMode;
+    }
+
+    public Duration getSwapLockTimeout() {
+        return swapLockTimeout;
+    }
+
+    public void setSwapLockTimeout(Duration swapLockTimeout) {
+        this.swapLockTimeout = swapLockTimeout;
+    }
+
+    public Duration getResumeMaxAge() {
+        return resumeMaxAge;
+    }
+
+    public void setResumeMaxAge(Duration resumeMaxAge) {
+        this.resumeMaxAge = resumeMaxAge;
+    }
+
     public URI resolveDownloadUri(String fileName) {
         Objects.requireNonNull(fileName, "fileName must not be null");
         String normalizedBase = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
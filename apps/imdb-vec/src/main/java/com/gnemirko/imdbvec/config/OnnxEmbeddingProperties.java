@@ -0,0 +1,70 @@
+package com.gnemirko.imdbvec.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "app.embedding.onnx")
+public class OnnxEmbeddingProperties {
+
+    /** The sentence-embedding model exported to ONNX, e.g. nomic-embed-text-v1.5 {@code onnx/model.onnx}. */
+    private String modelPath;
+    /** The model's HuggingFace {@code tokenizer.json}. */
+    private String tokenizerPath;
+    /**
+     * Model name recorded with the vectors. Keep the Ollama name of the same model to reuse the
+     * catalog's vectors; a new name is picked up by an embedding migration like any other model.
+     */
+    private String model = "nomic-embed-text";
+    /** Longer texts are truncated to this many tokens. */
+    private int maxSequenceLength = 512;
+    /** ONNX Runtime threads per inference; 0 lets ONNX Runtime use every core. */
+    private int intraOpThreads = 0;
+    private String outputName = "last_hidden_state";
+
+    public String getModelPath() {
+        return modelPath;
+    }
+
+    public void setModelPath(String modelPath) {
+        this.modelPath = modelPath;
+    }
+
+    public String getTokenizerPath() {
+        return tokenizerPath;
+    }
+
+    public void setTokenizerPath(String tokenizerPath) {
+        this.tokenizerPath = tokenizerPath;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    public int getMaxSequenceLength() {
+        return maxSequenceLength;
+    }
+
+    public void setMaxSequenceLength(int maxSequenceLength) {
+        this.maxSequenceLength = maxSequenceLength;
+    }
+
+    public int getIntraOpThreads() {
+        return intraOpThreads;
+    }
+
+    public void setIntraOpThreads(int intraOpThreads) {
+        this.intraOpThreads = intraOpThreads;
+    }
+
+    public String getOutputName() {
+        return outputName;
+    }
+
+    public void setOutputName(String outputName) {
+        this.outputName = outputName;
+    }
+}
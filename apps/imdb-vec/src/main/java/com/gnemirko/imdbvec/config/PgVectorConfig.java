@@ -1,9 +1,74 @@
 package com.gnemirko.imdbvec.config;
 
+import com.gnemirko.common.vector.VectorSearchPlanner;
+import com.pgvector.PGvector;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
 @Configuration
 @EnableTransactionManagement
 public class PgVectorConfig {
+
+    /**
+     * Registers the pgvector type on every connection the pool hands out. With the type known to
+     * the driver, {@link PGvector} parameters and {@code vector} columns are transferred in
+     * pgvector's binary format instead of being formatted to and parsed from text.
+     */
+    @Bean
+    static BeanPostProcessor pgVectorDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof PgVectorDataSource)) {
+                    return new PgVectorDataSource(dataSource);
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    VectorSearchPlanner vectorSearchPlanner(NamedParameterJdbcTemplate jdbc,
+                                            VectorSearchProperties properties,
+                                            VectorIndexProperties indexProperties,
+                                            @Value("${app.recommend.efSearch:200}") int efSearch) {
+        return new VectorSearchPlanner(jdbc, new VectorSearchPlanner.Settings(properties.getExactMaxRows(), efSearch,
+                properties.getIterativeScan(), properties.getMaxScanTuples(), indexProperties.getRerankFactor()));
+    }
+
+    static final class PgVectorDataSource extends DelegatingDataSource {
+
+        PgVectorDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return register(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return register(super.getConnection(username, password));
+        }
+
+        private static Connection register(Connection connection) throws SQLException {
+            try {
+                PGvector.addVectorType(connection);
+                return connection;
+            } catch (SQLException | RuntimeException ex) {
+                connection.close();
+                throw ex;
+            }
+        }
+    }
 }
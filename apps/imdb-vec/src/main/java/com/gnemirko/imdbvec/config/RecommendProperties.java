@@ -0,0 +1,39 @@
+package com.gnemirko.imdbvec.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Weights of the hybrid score that orders search candidates:
+ * {@code similarity * sim + rating * min(rating / 10, 1) + votes * log10(max(votes, 1))}.
+ */
+@ConfigurationProperties(prefix = "app.recommend")
+public class RecommendProperties {
+
+    private double similarityWeight = 0.60;
+    private double ratingWeight = 0.30;
+    private double votesWeight = 0.10;
+
+    public double getSimilarityWeight() {
+        return similarityWeight;
+    }
+
+    public void setSimilarityWeight(double similarityWeight) {
+        this.similarityWeight = similarityWeight;
+    }
+
+    public double getRatingWeight() {
+        return ratingWeight;
+    }
+
+    public void setRatingWeight(double ratingWeight) {
+        this.ratingWeight = ratingWeight;
+    }
+
+    public double getVotesWeight() {
+        return votesWeight;
+    }
+
+    public void setVotesWeight(double votesWeight) {
+        this.votesWeight = votesWeight;
+    }
+}
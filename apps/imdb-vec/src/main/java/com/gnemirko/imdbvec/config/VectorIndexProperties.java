@@ -0,0 +1,108 @@
+package com.gnemirko.imdbvec.config;
+
+import com.gnemirko.common.vector.VectorQuantization;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+@ConfigurationProperties(prefix = "app.vector-index")
+public class VectorIndexProperties {
+
+    /** Drop the HNSW index before a large embedding backfill and build it in bulk afterwards. */
+    private boolean bulkLoad = true;
+    /** Minimum number of movies waiting for an embedding before the index is deferred. */
+    private long bulkLoadThreshold = 5_000;
+    private int m = 16;
+    private int efConstruction = 128;
+    private DataSize maintenanceWorkMem = DataSize.ofGigabytes(1);
+    private int parallelWorkers = 2;
+    /** Held-out queries used to measure recall after a build; 0 disables the measurement. */
+    private int recallQueries = 100;
+    private int recallK = 10;
+    /**
+     * How the index stores vectors: {@code none} (float32), {@code halfvec} (half the size) or
+     * {@code binary} (1 bit per dimension, searched with a float re-rank). Changing it rebuilds the index.
+     */
+    private VectorQuantization quantization = VectorQuantization.NONE;
+    /** With binary quantization, index candidates fetched per requested neighbour for the float re-rank. */
+    private int rerankFactor = 4;
+
+    public boolean isBulkLoad() {
+        return bulkLoad;
+    }
+
+    public void setBulkLoad(boolean bulkLoad) {
+        this.bulkLoad = bulkLoad;
+    }
+
+    public long getBulkLoadThreshold() {
+        return bulkLoadThreshold;
+    }
+
+    public void setBulkLoadThreshold(long bulkLoadThreshold) {
+        this.bulkLoadThreshold = bulkLoadThreshold;
+    }
+
+    public int getM() {
+        return m;
+    }
+
+    public void setM(int m) {
+        this.m = m;
+    }
+
+    public int getEfConstruction() {
+        return efConstruction;
+    }
+
+    public void setEfConstruction(int efConstruction) {
+        this.efConstruction = efConstruction;
+    }
+
+    public DataSize getMaintenanceWorkMem() {
+        return maintenanceWorkMem;
+    }
+
+    public void setMaintenanceWorkMem(DataSize maintenanceWorkMem) {
+        this.maintenanceWorkMem = maintenanceWorkMem;
+    }
+
+    public int getParallelWorkers() {
+        return parallelWorkers;
+    }
+
+    public void setParallelWorkers(int parallelWorkers) {
+        this.parallelWorkers = parallelWorkers;
+    }
+
+    public int getRecallQueries() {
+        return recallQueries;
+    }
+
+    public void setRecallQueries(int recallQueries) {
+        this.recallQueries = recallQueries;
+    }
+
+    public int getRecallK() {
+        return recallK;
+    }
+
+    public void setRecallK(int recallK) {
+        this.recallK = recallK;
+    }
+
+    public VectorQuantization getQuantization() {
+        return quantization;
+    }
+
+    public void setQuantization(VectorQuantization quantization) {
+        this.quantization = quantization;
+    }
+
+    public int getRerankFactor() {
+        return rerankFactor;
+    }
+
+    public void setRerankFactor(int rerankFactor) {
+        this.rerankFactor = rerankFactor;
+    }
+}
@@ -0,0 +1,49 @@
+package com.gnemirko.imdbvec.config;
+
+import com.gnemirko.common.vector.VectorSearchPlanner.IterativeScan;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "app.vector-search")
+public class VectorSearchProperties {
+
+    /** Filters matching at most this many movies are searched exactly instead of through the index; 0 turns exact search off. */
+    private int exactMaxRows = 20_000;
+    /** Lets a filtered HNSW scan keep walking the graph until enough rows pass the filter. */
+    private IterativeScan iterativeScan = IterativeScan.RELAXED_ORDER;
+    /** Upper bound on the index tuples one iterative scan visits. */
+    private int maxScanTuples = 20_000;
+    /** Nearest neighbours fetched per requested result before the hybrid score orders them. */
+    private int candidateFactor = 4;
+
+    public int getExactMaxRows() {
+        return exactMaxRows;
+    }
+
+    public void setExactMaxRows(int exactMaxRows) {
+        this.exactMaxRows = exactMaxRows;
+    }
+
+    public IterativeScan getIterativeScan() {
+        return iterativeScan;
+    }
+
+    public void setIterativeScan(IterativeScan iterativeScan) {
+        this.iterativeScan = iterativeScan;
+    }
+
+    public int getMaxScanTuples() {
+        return maxScanTuples;
+    }
+
+    public void setMaxScanTuples(int maxScanTuples) {
+        this.maxScanTuples = maxScanTuples;
+    }
+
+    public int getCandidateFactor() {
+        return candidateFactor;
+    }
+
+    public void setCandidateFactor(int candidateFactor) {
+        this.candidateFactor = candidateFactor;
+    }
+}
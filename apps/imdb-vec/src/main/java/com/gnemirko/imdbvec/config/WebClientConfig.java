@@ -1,6 +1,10 @@
 package com.gnemirko.imdbvec.config;
 
+import com.gnemirko.common.ollama.OllamaConcurrencyLimiter;
+import com.gnemirko.common.ollama.OllamaLimiterProperties;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
@@ -26,4 +30,15 @@ public class WebClientConfig {
     public WebClient plainWebClient() {
         return WebClient.builder().build();
     }
+
+    @Bean
+    @ConfigurationProperties(prefix = "app.ollama-limiter")
+    public OllamaLimiterProperties ollamaLimiterProperties() {
+        return new OllamaLimiterProperties();
+    }
+
+    @Bean
+    public OllamaConcurrencyLimiter ollamaConcurrencyLimiter(OllamaLimiterProperties properties, MeterRegistry meterRegistry) {
+        return new OllamaConcurrencyLimiter(properties, meterRegistry);
+    }
 }
@@ -0,0 +1,225 @@
+package com.gnemirko.imdbvec.importer;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Push-style gzip checker for bytes as they come off the wire. Chunks are inflated into a scratch
+ * buffer only to maintain the CRC32 and length of each member, which are compared with the member
+ * trailer, so a truncated or corrupted archive is rejected while it is still downloading instead
+ * of by a second read of the file. Optionally keeps an MD5 of the compressed bytes for ETag checks.
+ */
+final class GzipStreamVerifier implements AutoCloseable {
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    private static final int TRAILER_SIZE = 8;
+
+    private enum State { HEADER, BODY, TRAILER }
+
+    private final Inflater inflater = new Inflater(true);
+    private final CRC32 crc = new CRC32();
+    private final MessageDigest md5;
+    private final byte[] inflated = new byte[1 << 16];
+    private final byte[] chunk = new byte[1 << 16];
+
+    private State state = State.HEADER;
+    private byte[] header = new byte[64];
+    private int headerLength;
+    private final byte[] trailer = new byte[TRAILER_SIZE];
+    private int trailerLength;
+
+    private long memberSize;
+    private long compressedBytes;
+    private long uncompressedBytes;
+    private int members;
+
+    GzipStreamVerifier(boolean digest) {
+        this.md5 = digest ? newMd5() : null;
+    }
+
+    void update(ByteBuffer buffer) throws ZipException {
+        while (buffer.hasRemaining()) {
+            int length = Math.min(buffer.remaining(), chunk.length);
+            buffer.get(chunk, 0, length);
+            update(chunk, 0, length);
+        }
+    }
+
+    void update(byte[] bytes, int offset, int length) throws ZipException {
+        if (md5 != null) {
+            md5.update(bytes, offset, length);
+        }
+        compressedBytes += length;
+
+        int end = offset + length;
+        while (offset < end) {
+            switch (state) {
+                case HEADER -> {
+                    appendHeader(bytes[offset++]);
+                    int size = headerSize();
+                    if (size >= 0) {
+                        headerLength = 0;
+                        state = State.BODY;
+                    }
+                }
+                case BODY -> {
+                    inflater.setInput(bytes, offset, end - offset);
+                    inflate();
+                    offset = end - inflater.getRemaining();
+                    if (inflater.finished()) {
+                        trailerLength = 0;
+                        state = State.TRAILER;
+                    }
+                }
+                case TRAILER -> {
+                    trailer[trailerLength++] = bytes[offset++];
+                    if (trailerLength == TRAILER_SIZE) {
+                        checkTrailer();
+                    }
+                }
+            }
+        }
+    }
+
+    /** Throws unless the stream ended exactly after a complete member. */
+    void finish() throws EOFException {
+        try {
+            if (members == 0 || state != State.HEADER || headerLength != 0) {
+                throw new EOFException("Truncated gzip stream after " + compressedBytes + " bytes (" + members + " complete members)");
+            }
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** Hex MD5 of all compressed bytes seen so far, when digesting was requested. */
+    Optional<String> md5Hex() {
+        return md5 == null ? Optional.empty() : Optional.of(HexFormat.of().formatHex(md5.digest()));
+    }
+
+    long compressedBytes() {
+        return compressedBytes;
+    }
+
+    long uncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+    int members() {
+        return members;
+    }
+
+    @Override
+    public void close() {
+        inflater.end();
+    }
+
+    private void inflate() throws ZipException {
+        try {
+            while (!inflater.finished() && !inflater.needsInput()) {
+                int n = inflater.inflate(inflated);
+                if (n == 0 && !inflater.finished() && !inflater.needsInput()) {
+                    throw new ZipException("Gzip member requires a preset dictionary");
+                }
+                crc.update(inflated, 0, n);
+                memberSize += n;
+                uncompressedBytes += n;
+            }
+        } catch (DataFormatException e) {
+            ZipException zip = new ZipException("Corrupt deflate data after " + compressedBytes + " bytes: " + e.getMessage());
+            zip.initCause(e);
+            throw zip;
+        }
+    }
+
+    private void checkTrailer() throws ZipException {
+        long expectedCrc = readIntLE(trailer, 0);
+        long expectedSize = readIntLE(trailer, 4);
+        if (expectedCrc != crc.getValue()) {
+            throw new ZipException("Gzip member " + (members + 1) + " CRC mismatch");
+        }
+        if (expectedSize != (memberSize & 0xFFFFFFFFL)) {
+            throw new ZipException("Gzip member " + (members + 1) + " size mismatch");
+        }
+        members++;
+        memberSize = 0;
+        crc.reset();
+        inflater.reset();
+        state = State.HEADER;
+    }
+
+    private void appendHeader(byte b) {
+        if (headerLength == header.length) {
+            header = Arrays.copyOf(header, header.length * 2);
+        }
+        header[headerLength++] = b;
+    }
+
+    /** Size of the buffered member header, or {@code -1} while it is still incomplete. */
+    private int headerSize() throws ZipException {
+        if (headerLength >= 1 && (header[0] & 0xFF) != 0x1F
+                || headerLength >= 2 && (header[1] & 0xFF) != 0x8B) {
+            throw new ZipException("Not in GZIP format at byte " + compressedBytes);
+        }
+        if (headerLength >= 3 && header[2] != 8) {
+            throw new ZipException("Unsupported gzip compression method " + header[2]);
+        }
+        if (headerLength < 10) {
+            return -1;
+        }
+        int flags = header[3] & 0xFF;
+        int position = 10;
+        if ((flags & FEXTRA) != 0) {
+            if (headerLength < position + 2) {
+                return -1;
+            }
+            position += 2 + ((header[position] & 0xFF) | (header[position + 1] & 0xFF) << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            position = skipZeroTerminated(position);
+        }
+        if (position >= 0 && (flags & FCOMMENT) != 0) {
+            position = skipZeroTerminated(position);
+        }
+        if (position >= 0 && (flags & FHCRC) != 0) {
+            position += 2;
+        }
+        return position >= 0 && headerLength >= position ? position : -1;
+    }
+
+    private int skipZeroTerminated(int position) {
+        for (int i = position; i < headerLength; i++) {
+            if (header[i] == 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static long readIntLE(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFFL)
+                | (bytes[offset + 1] & 0xFFL) << 8
+                | (bytes[offset + 2] & 0xFFL) << 16
+                | (bytes[offset + 3] & 0xFFL) << 24;
+    }
+
+    private static MessageDigest newMd5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+}
@@ -1,225 +1,328 @@
 package com.gnemirko.imdbvec.importer;
 
-import org.postgresql.PGConnection;
-import org.postgresql.copy.CopyManager;
+import com.gnemirko.imdbvec.config.ImdbImportProperties;
 import org.springframework.jdbc.datasource.DataSourceUtils;
 import org.springframework.stereotype.Component;
 
 import javax.sql.DataSource;
-import java.io.BufferedInputStream;
-import java.io.InputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
-import java.util.zip.GZIPInputStream;
-
+import java.util.stream.Collectors;
+
+/**
+ * Moves the staged IMDb dumps into the catalog, one checkpointed stage at a time. Everything a
+ * later stage needs is kept in UNLOGGED {@code imdb_stage_*} tables rather than temp tables, so the
+ * stages can run in separate transactions (and a resumed run in a separate JVM). The staging tables
+ * are dropped once the principals stage consumed them.
+ */
 @Component
 public class ImdbCopyLoader {
 
-    private static final String RANKING_ORDER = """
-              COALESCE(NULLIF(r.average_rating, '\\N')::double precision, -1) DESC,
-              COALESCE(NULLIF(r.num_votes, '\\N')::bigint, 0) DESC,
-              b.tconst
-            """;
-    private static final String TITLE_TYPE_WHERE = "LOWER(NULLIF(b.title_type, '\\\\N')) IN ('movie','tvmovie')";
+    private static final String RANKED_TITLES_TABLE = "imdb_stage_ranked_titles";
+    private static final String TITLE_CHANGES_TABLE = "imdb_stage_title_changes";
+    private static final String FILTERED_PRINCIPALS_TABLE = "imdb_stage_filtered_principals";
+    private static final String FILTERED_PEOPLE_TABLE = "imdb_stage_filtered_people";
+    private static final String PRINCIPAL_HASHES_TABLE = "imdb_stage_principal_hashes";
 
     private final DataSource dataSource;
+    private final ImdbStagingLoader stagingLoader;
+    private final ImdbImportProperties properties;
 
-    public ImdbCopyLoader(DataSource dataSource) {
+    public ImdbCopyLoader(DataSource dataSource,
+                          ImdbStagingLoader stagingLoader,
+                          ImdbImportProperties properties) {
         this.dataSource = dataSource;
+        this.stagingLoader = stagingLoader;
+        this.properties = properties;
     }
 
-    public long loadTopTitles(ImdbFiles files, int maxTitles) throws Exception {
-        Connection connection = DataSourceUtils.getConnection(dataSource);
-        try {
-            return performImport(connection, files, maxTitles);
-        } finally {
-            DataSourceUtils.releaseConnection(connection, dataSource);
+    /**
+     * Stage-load: selects the top titles and COPYs them, their ranking and the credit dumps into
+     * the staging tables. Runs on its own connections, outside of any transaction.
+     */
+    public ImportStageResult stage(ImdbFiles files, int maxTitles) throws Exception {
+        boolean prefilter = properties.isPrefilter();
+        ImdbStagingLoader.Staged staged = prefilter
+                ? stagingLoader.loadTitles(files, maxTitles)
+                : stagingLoader.load(files, maxTitles);
+        List<ImdbStagingLoader.StageStats> stats = new ArrayList<>(staged.stats());
+        if (prefilter) {
+            stats.addAll(stagingLoader.loadCredits(files, staged.selection().ids()));
         }
+        return new ImportStageResult(
+                stats.stream().mapToLong(ImdbStagingLoader.StageStats::rows).sum(),
+                stats.stream()
+                        .map(stat -> stat.table() + "=" + stat.rows())
+                        .collect(Collectors.joining(", ")));
+    }
+
+    /**
+     * Select: builds the ranked title rows with their content and principal-set hashes and diffs
+     * them against {@code movie}. With {@code forceAll} every existing title counts as changed.
+     */
+    public ImportStageResult select(boolean forceAll) throws Exception {
+        return withStatement(statement -> {
+            requireStaged(statement, ImdbStagingLoader.SELECTED_TITLES_TABLE, ImportStage.STAGE_LOAD);
+            requireStaged(statement, ImdbStagingLoader.TITLE_BASICS_TABLE, ImportStage.STAGE_LOAD);
+            statement.execute("DROP TABLE IF EXISTS " + String.join(", ", derivedTables()));
+
+            filterPrincipals(statement);
+            populateRankedTitles(statement);
+            classifyChanges(statement, forceAll);
+            for (String table : derivedTables()) {
+                statement.execute("ANALYZE " + table);
+            }
+            return countChanges(statement);
+        });
+    }
+
+    /**
+     * Upsert: writes new and changed titles and deletes the ones that fell out of the selection. In
+     * shadow mode the kept rows (ids, plots and embeddings included) are copied into a fresh
+     * {@code movie_shadow} first and the changes applied there; dropped titles are simply not copied.
+     */
+    public ImportStageResult upsert() throws Exception {
+        return withStatement(statement -> {
+            requireStaged(statement, RANKED_TITLES_TABLE, ImportStage.STAGE_LOAD);
+            requireStaged(statement, TITLE_CHANGES_TABLE, ImportStage.STAGE_LOAD);
+            long deleted;
+            long upserted;
+            long rescored;
+            if (isShadowRefresh()) {
+                ImdbShadowCatalog.dropShadows(statement);
+                ImdbShadowCatalog.create(statement, ImdbShadowCatalog.MOVIE);
+                statement.execute("""
+                    INSERT INTO movie_shadow
+                    SELECT m.*
+                    FROM movie m
+                    JOIN imdb_stage_ranked_titles t ON t.tconst = m.tconst
+                    """);
+                upserted = upsertMovies(statement, ImdbShadowCatalog.shadowOf(ImdbShadowCatalog.MOVIE));
+                rescored = updateStatistics(statement, ImdbShadowCatalog.shadowOf(ImdbShadowCatalog.MOVIE));
+                deleted = countMissingMovies(statement);
+            } else {
+                upserted = upsertMovies(statement, ImdbShadowCatalog.MOVIE);
+                rescored = updateStatistics(statement, ImdbShadowCatalog.MOVIE);
+                deleted = deleteMissingMovies(statement);
+            }
+            return new ImportStageResult(upserted + rescored + deleted,
+                    "upserted=" + upserted + ", rescored=" + rescored + ", deleted=" + deleted);
+        });
     }
 
-    private long performImport(Connection connection, ImdbFiles files, int maxTitles) throws Exception {
-        try (var statement = connection.createStatement()) {
-            createTempTables(statement);
-
-            copyFile(connection, files.titleBasics(), """
-                COPY tmp_title_basics
-                  (tconst, title_type, primary_title, original_title, is_adult,
-                   start_year, end_year, runtime_minutes, genres)
-                FROM STDIN WITH (FORMAT text)
-                """);
-
-            copyFile(connection, files.titleRatings(), """
-                COPY tmp_title_ratings (tconst, average_rating, num_votes)
-                FROM STDIN WITH (FORMAT text)
-                """);
-
-            copyFile(connection, files.nameBasics(), """
-                COPY tmp_name_basics
-                  (nconst, primary_name, birth_year, death_year, primary_profession, known_for_titles)
-                FROM STDIN WITH (FORMAT text)
-                """);
-
-            copyFile(connection, files.titlePrincipals(), """
-                COPY tmp_title_principals
-                  (tconst, ordering, nconst, category, job, characters)
-                FROM STDIN WITH (FORMAT text)
-                """);
-
-            createSelectedTitles(statement, maxTitles);
-
-            populateRankedTitles(statement, maxTitles);
-            long affected = upsertMovies(statement);
-            deleteMissingMovies(statement);
-            syncPrincipals(statement);
-
-            try (ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM tmp_ranked_titles")) {
-                if (rs.next()) {
-                    return rs.getLong(1);
+    /**
+     * Principals: rewrites the credits of titles whose principal set changed, then drops staging.
+     * In shadow mode people and unchanged credits are copied into their shadows first.
+     */
+    public ImportStageResult syncPrincipals() throws Exception {
+        return withStatement(statement -> {
+            requireStaged(statement, TITLE_CHANGES_TABLE, ImportStage.STAGE_LOAD);
+            if (!exists(statement, FILTERED_PRINCIPALS_TABLE)) {
+                throw new StaleStagingException(ImportStage.STAGE_LOAD,
+                        "Staging table " + FILTERED_PRINCIPALS_TABLE + " is missing; the import has to be staged again");
+            }
+            long rewritten;
+            if (isShadowRefresh()) {
+                if (!exists(statement, ImdbShadowCatalog.shadowOf(ImdbShadowCatalog.MOVIE))) {
+                    throw new StaleStagingException(ImportStage.UPSERT, "Shadow catalog is missing; the upsert has to run again");
                 }
+                ImdbShadowCatalog.create(statement, ImdbShadowCatalog.PERSON);
+                ImdbShadowCatalog.create(statement, ImdbShadowCatalog.MOVIE_PRINCIPAL);
+                statement.execute("INSERT INTO person_shadow SELECT * FROM person");
+                statement.execute("""
+                    INSERT INTO movie_principal_shadow
+                    SELECT mp.*
+                    FROM movie_principal mp
+                    JOIN movie_shadow m ON m.id = mp.movie_id
+                    JOIN imdb_stage_title_changes c ON c.tconst = m.tconst
+                    WHERE NOT c.principals_changed
+                    """);
+                rewritten = syncPrincipals(statement, ImdbShadowCatalog.shadowOf(ImdbShadowCatalog.MOVIE),
+                        ImdbShadowCatalog.shadowOf(ImdbShadowCatalog.PERSON),
+                        ImdbShadowCatalog.shadowOf(ImdbShadowCatalog.MOVIE_PRINCIPAL));
+            } else {
+                rewritten = syncPrincipals(statement, ImdbShadowCatalog.MOVIE, ImdbShadowCatalog.PERSON,
+                        ImdbShadowCatalog.MOVIE_PRINCIPAL);
             }
-            return affected;
-        }
+            statement.execute("DROP TABLE IF EXISTS " + String.join(", ", derivedTables()));
+            stagingLoader.dropStagingTables(statement);
+            return new ImportStageResult(rewritten, "principal sets rewritten=" + rewritten);
+        });
     }
 
-    private void createTempTables(java.sql.Statement statement) throws SQLException {
-        statement.execute("""
-            CREATE TEMP TABLE tmp_title_basics (
-              tconst           text,
-              title_type       text,
-              primary_title    text,
-              original_title   text,
-              is_adult         text,
-              start_year       text,
-              end_year         text,
-              runtime_minutes  text,
-              genres           text
-            ) ON COMMIT DROP
-            """);
+    /**
+     * Swap (shadow mode only): bulk-builds the remaining indexes on the shadow tables and renames
+     * them over the live catalog.
+     */
+    public ImportStageResult swap() throws Exception {
+        return withStatement(statement -> {
+            for (String table : List.of(ImdbShadowCatalog.MOVIE, ImdbShadowCatalog.PERSON, ImdbShadowCatalog.MOVIE_PRINCIPAL)) {
+                if (!exists(statement, ImdbShadowCatalog.shadowOf(table))) {
+                    throw new StaleStagingException(ImportStage.STAGE_LOAD,
+                            "Shadow table " + ImdbShadowCatalog.shadowOf(table) + " is missing; the import has to be staged again");
+                }
+            }
+            ImdbShadowCatalog.swap(statement, properties.getSwapLockTimeout());
+            try (ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM movie")) {
+                rs.next();
+                return new ImportStageResult(rs.getLong(1), null);
+            }
+        });
+    }
 
-        statement.execute("""
-            CREATE TEMP TABLE tmp_title_ratings (
-              tconst         text,
-              average_rating text,
-              num_votes      text
-            ) ON COMMIT DROP
-            """);
+    public boolean isShadowRefresh() {
+        return properties.getRefreshMode() == ImdbImportProperties.RefreshMode.SHADOW;
+    }
 
-        statement.execute("""
-            CREATE TEMP TABLE tmp_name_basics (
-              nconst             text,
-              primary_name       text,
-              birth_year         text,
-              death_year         text,
-              primary_profession text,
-              known_for_titles   text
-            ) ON COMMIT DROP
-            """);
+    @FunctionalInterface
+    private interface StatementWork {
+        ImportStageResult apply(Statement statement) throws Exception;
+    }
 
-        statement.execute("""
-            CREATE TEMP TABLE tmp_title_principals (
-              tconst     text,
-              ordering   text,
-              nconst     text,
-              category   text,
-              job        text,
-              characters text
-            ) ON COMMIT DROP
-            """);
+    /** Runs on the connection of the surrounding stage transaction, if there is one. */
+    private ImportStageResult withStatement(StatementWork work) throws Exception {
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try (Statement statement = connection.createStatement()) {
+            return work.apply(statement);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    private static List<String> derivedTables() {
+        return List.of(FILTERED_PRINCIPALS_TABLE, FILTERED_PEOPLE_TABLE, PRINCIPAL_HASHES_TABLE,
+                RANKED_TITLES_TABLE, TITLE_CHANGES_TABLE);
+    }
+
+    /**
+     * Guards a resumed stage against acting on missing input: UNLOGGED tables come back empty after
+     * a Postgres crash, and deleting every movie not in an empty ranking would wipe the catalog.
+     */
+    private void requireStaged(Statement statement, String table, ImportStage restartFrom) throws SQLException {
+        if (!exists(statement, table)) {
+            throw new StaleStagingException(restartFrom,
+                    "Staging table " + table + " is missing; the import has to be staged again");
+        }
+        try (ResultSet rs = statement.executeQuery("SELECT EXISTS (SELECT 1 FROM " + table + ")")) {
+            rs.next();
+            if (!rs.getBoolean(1)) {
+                throw new StaleStagingException(restartFrom,
+                        "Staging table " + table + " is empty; the import has to be staged again");
+            }
+        }
+    }
 
+    private boolean exists(Statement statement, String table) throws SQLException {
+        try (ResultSet rs = statement.executeQuery("SELECT to_regclass('" + table + "') IS NOT NULL")) {
+            rs.next();
+            return rs.getBoolean(1);
+        }
     }
 
-    private void createSelectedTitles(java.sql.Statement statement, int maxTitles) throws SQLException {
-        String selectionFilter = maxTitles > 0 ? "WHERE rn <= " + maxTitles : "";
+    private void populateRankedTitles(Statement statement) throws SQLException {
         statement.execute("""
-            CREATE TEMP TABLE tmp_selected_titles ON COMMIT DROP AS
-            SELECT tconst
+            CREATE UNLOGGED TABLE imdb_stage_ranked_titles AS
+            SELECT
+              ranked.*,
+              md5(ROW(ranked.title_type, ranked.primary_title, ranked.original_title, ranked.is_adult,
+                      ranked.start_year, ranked.end_year, ranked.runtime_minutes, ranked.genres)::text) AS content_hash,
+              h.principals_hash
             FROM (
               SELECT
                 b.tconst,
-                ROW_NUMBER() OVER (
-                  ORDER BY
-%s
-                ) AS rn
-              FROM tmp_title_basics b
-              LEFT JOIN tmp_title_ratings r ON r.tconst = b.tconst
-              WHERE %s
+                b.title_type,
+                b.primary_title,
+                b.original_title,
+                b.is_adult,
+                b.start_year,
+                b.end_year,
+                b.runtime_minutes,
+                b.genres,
+                st.rating,
+                st.votes,
+                st.rank
+              FROM imdb_stage_selected_titles st
+              JOIN imdb_stage_title_basics b ON b.tconst = st.tconst
             ) ranked
-            %s
-            """.formatted(RANKING_ORDER, TITLE_TYPE_WHERE, selectionFilter));
-        statement.execute("CREATE INDEX tmp_selected_titles_tconst_idx ON tmp_selected_titles (tconst)");
+            LEFT JOIN imdb_stage_principal_hashes h ON h.tconst = ranked.tconst
+            ORDER BY ranked.rank
+            """);
     }
 
-    private void copyFile(Connection connection, Path source, String copySql) throws Exception {
-        CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
-        try (InputStream fis = Files.newInputStream(source);
-             InputStream bis = new BufferedInputStream(fis);
-             GZIPInputStream gz = new GZIPInputStream(bis)) {
-            skipHeaderLine(gz);
-            copyManager.copyIn(copySql, gz);
-        }
+    /**
+     * Compares the freshly ranked titles with what is stored in {@code movie}. With
+     * {@code forceAll} every existing title is treated as changed (full rewrite).
+     * <p>
+     * Ratings and vote counts move every night for nearly every ranked title, so they are kept out
+     * of the content hash: {@code stats_changed} marks titles whose rating changed or whose votes
+     * crossed a tenth of a decade ({@code floor(10 * log10(votes))}), and only those two columns
+     * are rewritten for them.
+     */
+    private void classifyChanges(Statement statement, boolean forceAll) throws SQLException {
+        statement.execute("""
+            CREATE UNLOGGED TABLE imdb_stage_title_changes AS
+            SELECT
+              t.tconst,
+              m.id IS NULL AS is_new,
+              (%1$s OR m.content_hash IS DISTINCT FROM t.content_hash) AS content_changed,
+              (%1$s OR m.principals_hash IS DISTINCT FROM t.principals_hash) AS principals_changed,
+              (m.rating IS DISTINCT FROM t.rating
+                OR floor(10 * log(greatest(m.votes, 1))) IS DISTINCT FROM floor(10 * log(greatest(t.votes, 1))))
+                AS stats_changed
+            FROM imdb_stage_ranked_titles t
+            LEFT JOIN movie m ON m.tconst = t.tconst
+            """.formatted(forceAll ? "TRUE" : "FALSE"));
     }
 
-    private void populateRankedTitles(java.sql.Statement statement, int maxTitles) throws SQLException {
-        String limitClause = maxTitles > 0 ? "LIMIT " + maxTitles : "";
-        statement.execute("""
-            CREATE TEMP TABLE tmp_ranked_titles AS
+    /**
+     * {@code rescored} titles only need a new rating or vote count; {@code unchanged} ones matched
+     * their stored hashes and statistics.
+     */
+    private ImportStageResult countChanges(Statement statement) throws SQLException {
+        try (ResultSet rs = statement.executeQuery("""
             SELECT
-              b.tconst,
-              NULLIF(b.title_type, '\\N') AS title_type,
-              NULLIF(b.primary_title, '\\N') AS primary_title,
-              NULLIF(b.original_title, '\\N') AS original_title,
-              CASE
-                WHEN b.is_adult IS NULL OR b.is_adult = '\\N' THEN NULL
-                WHEN b.is_adult IN ('1','t','true','TRUE') THEN TRUE
-                WHEN b.is_adult IN ('0','f','false','FALSE') THEN FALSE
-                ELSE NULL
-              END AS is_adult,
-              NULLIF(b.start_year, '\\N')::smallint AS start_year,
-              NULLIF(b.end_year, '\\N')::smallint AS end_year,
-              CASE
-                WHEN b.runtime_minutes IS NULL OR b.runtime_minutes = '\\N' THEN NULL
-                WHEN b.runtime_minutes !~ '^-?\\d+$' THEN NULL
-                WHEN (b.runtime_minutes)::integer BETWEEN -32768 AND 32767
-                  THEN b.runtime_minutes::smallint
-                ELSE NULL
-              END AS runtime_minutes,
-              CASE
-                WHEN b.genres IS NULL OR b.genres = '\\N' THEN NULL
-                ELSE string_to_array(b.genres, ',')::text[]
-              END AS genres,
-              NULLIF(r.average_rating, '\\N')::double precision AS rating,
-              NULLIF(r.num_votes, '\\N')::integer AS votes
-            FROM tmp_title_basics b
-            JOIN tmp_selected_titles st ON st.tconst = b.tconst
-            LEFT JOIN tmp_title_ratings r ON r.tconst = b.tconst
-            ORDER BY
-%s
-            %s
-            """.formatted(RANKING_ORDER, limitClause));
+              COUNT(*),
+              COUNT(*) FILTER (WHERE is_new),
+              COUNT(*) FILTER (WHERE NOT is_new AND (content_changed OR principals_changed)),
+              COUNT(*) FILTER (WHERE NOT is_new AND NOT content_changed AND NOT principals_changed AND stats_changed),
+              COUNT(*) FILTER (WHERE NOT is_new AND NOT content_changed AND NOT principals_changed AND NOT stats_changed)
+            FROM imdb_stage_title_changes
+            """)) {
+            rs.next();
+            return new ImportStageResult(rs.getLong(1), "inserted=%d, updated=%d, rescored=%d, unchanged=%d"
+                    .formatted(rs.getLong(2), rs.getLong(3), rs.getLong(4), rs.getLong(5)));
+        }
     }
 
-    private long upsertMovies(java.sql.Statement statement) throws SQLException {
+    private long upsertMovies(Statement statement, String movieTable) throws SQLException {
         return statement.executeUpdate("""
-            INSERT INTO movie
+            INSERT INTO %s
               (tconst, title_type, primary_title, original_title, is_adult,
-               start_year, end_year, runtime_minutes, genres, rating, votes)
+               start_year, end_year, runtime_minutes, genres, rating, votes,
+               content_hash, principals_hash)
             SELECT
-              tconst,
-              title_type,
-              primary_title,
-              original_title,
-              is_adult,
-              start_year,
-              end_year,
-              runtime_minutes,
-              genres,
-              rating,
-              votes
-            FROM tmp_ranked_titles
+              t.tconst,
+              t.title_type,
+              t.primary_title,
+              t.original_title,
+              t.is_adult,
+              t.start_year,
+              t.end_year,
+              t.runtime_minutes,
+              t.genres,
+              t.rating,
+              t.votes,
+              t.content_hash,
+              t.principals_hash
+            FROM imdb_stage_ranked_titles t
+            JOIN imdb_stage_title_changes c ON c.tconst = t.tconst
+            WHERE c.content_changed OR c.principals_changed
             ON CONFLICT (tconst) DO UPDATE
               SET title_type      = EXCLUDED.title_type,
                   primary_title   = EXCLUDED.primary_title,
@@ -230,88 +333,132 @@ public class ImdbCopyLoader {
                   runtime_minutes = EXCLUDED.runtime_minutes,
                   genres          = EXCLUDED.genres,
                   rating          = EXCLUDED.rating,
-                  votes           = EXCLUDED.votes
-            """);
+                  votes           = EXCLUDED.votes,
+                  content_hash    = EXCLUDED.content_hash,
+                  principals_hash = EXCLUDED.principals_hash
+            """.formatted(movieTable));
     }
 
-    private void deleteMissingMovies(java.sql.Statement statement) throws SQLException {
-        statement.execute("""
+    /**
+     * Writes the new rating and vote count of titles that changed nothing else. Neither column is
+     * indexed, so these updates can stay HOT and leave the HNSW index alone.
+     */
+    private long updateStatistics(Statement statement, String movieTable) throws SQLException {
+        return statement.executeUpdate("""
+            UPDATE %s m
+            SET rating = t.rating,
+                votes  = t.votes
+            FROM imdb_stage_ranked_titles t
+            JOIN imdb_stage_title_changes c ON c.tconst = t.tconst
+            WHERE m.tconst = t.tconst
+              AND c.stats_changed
+              AND NOT (c.is_new OR c.content_changed OR c.principals_changed)
+            """.formatted(movieTable));
+    }
+
+    private long deleteMissingMovies(Statement statement) throws SQLException {
+        return statement.executeUpdate("""
             DELETE FROM movie m
             WHERE NOT EXISTS (
-              SELECT 1 FROM tmp_ranked_titles t WHERE t.tconst = m.tconst
+              SELECT 1 FROM imdb_stage_ranked_titles t WHERE t.tconst = m.tconst
             )
             """);
     }
 
-    private void syncPrincipals(java.sql.Statement statement) throws SQLException {
+    private long countMissingMovies(Statement statement) throws SQLException {
+        try (ResultSet rs = statement.executeQuery("""
+            SELECT COUNT(*)
+            FROM movie m
+            WHERE NOT EXISTS (
+              SELECT 1 FROM imdb_stage_ranked_titles t WHERE t.tconst = m.tconst
+            )
+            """)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private void filterPrincipals(Statement statement) throws SQLException {
         statement.execute("""
-            CREATE TEMP TABLE tmp_filtered_principals ON COMMIT DROP AS
-            SELECT DISTINCT ON (p.tconst, clean.nconst, clean.category)
+            CREATE UNLOGGED TABLE imdb_stage_filtered_principals AS
+            SELECT DISTINCT ON (p.tconst, p.nconst, LOWER(p.category))
               p.tconst,
-              clean.nconst,
-              clean.category,
-              clean.ordering,
-              clean.job,
-              clean.characters
-            FROM tmp_title_principals p
-            JOIN tmp_selected_titles st ON st.tconst = p.tconst
-            CROSS JOIN LATERAL (
-              SELECT
-                NULLIF(p.nconst, '\\N') AS nconst,
-                LOWER(NULLIF(p.category, '\\N')) AS category,
-                CASE
-                  WHEN p.ordering IS NULL OR p.ordering = '\\N' THEN NULL
-                  WHEN p.ordering ~ '^\\d+$' THEN p.ordering::integer
-                  ELSE NULL
-                END AS ordering,
-                NULLIF(p.job, '\\N') AS job,
-                NULLIF(p.characters, '\\N') AS characters
-            ) AS clean
-            WHERE clean.nconst IS NOT NULL
-              AND clean.category IN ('actor', 'actress', 'director', 'writer')
-            ORDER BY p.tconst, clean.nconst, clean.category, clean.ordering NULLS LAST
+              p.nconst,
+              LOWER(p.category) AS category,
+              p.ordering,
+              p.job,
+              p.characters
+            FROM imdb_stage_title_principals p
+            JOIN imdb_stage_selected_titles st ON st.tconst = p.tconst
+            WHERE p.nconst IS NOT NULL
+              AND LOWER(p.category) IN ('actor', 'actress', 'director', 'writer')
+            ORDER BY p.tconst, p.nconst, LOWER(p.category), p.ordering NULLS LAST
             """);
 
         statement.execute("""
-            CREATE TEMP TABLE tmp_filtered_people ON COMMIT DROP AS
+            CREATE UNLOGGED TABLE imdb_stage_filtered_people AS
             SELECT DISTINCT
               fp.nconst,
-              COALESCE(NULLIF(nb.primary_name, '\\N'), fp.nconst) AS primary_name
-            FROM tmp_filtered_principals fp
-            LEFT JOIN tmp_name_basics nb ON nb.nconst = fp.nconst
+              COALESCE(nb.primary_name, fp.nconst) AS primary_name
+            FROM imdb_stage_filtered_principals fp
+            LEFT JOIN imdb_stage_name_basics nb ON nb.nconst = fp.nconst
             WHERE fp.nconst IS NOT NULL
             """);
 
         statement.execute("""
-            INSERT INTO person (nconst, primary_name)
-            SELECT nconst, primary_name
-            FROM tmp_filtered_people
-            ON CONFLICT (nconst) DO UPDATE
-              SET primary_name = EXCLUDED.primary_name
+            CREATE UNLOGGED TABLE imdb_stage_principal_hashes AS
+            SELECT
+              fp.tconst,
+              md5(string_agg(
+                    ROW(fp.nconst, fp.category, fp.ordering, fp.job, fp.characters)::text,
+                    '|' ORDER BY fp.nconst, fp.category)) AS principals_hash
+            FROM imdb_stage_filtered_principals fp
+            GROUP BY fp.tconst
             """);
+    }
+
+    private long syncPrincipals(Statement statement,
+                                String movieTable,
+                                String personTable,
+                                String principalTable) throws SQLException {
+        statement.execute("CREATE TEMP TABLE tmp_upserted_people (nconst text PRIMARY KEY) ON COMMIT DROP");
+        statement.execute("""
+            WITH upserted AS (
+              INSERT INTO %s AS p (nconst, primary_name, normalized_name)
+              SELECT nconst, primary_name, regexp_replace(LOWER(primary_name), '[^a-z0-9]', '', 'g')
+              FROM imdb_stage_filtered_people
+              ON CONFLICT (nconst) DO UPDATE
+                SET primary_name = EXCLUDED.primary_name,
+                    normalized_name = EXCLUDED.normalized_name
+                WHERE p.primary_name IS DISTINCT FROM EXCLUDED.primary_name
+              RETURNING p.nconst
+            )
+            INSERT INTO tmp_upserted_people SELECT nconst FROM upserted
+            """.formatted(personTable));
 
         statement.execute("""
             CREATE TEMP TABLE tmp_person_ids ON COMMIT DROP AS
             SELECT p.id, p.nconst
-            FROM person p
-            JOIN tmp_filtered_people fp ON fp.nconst = p.nconst
-            """);
+            FROM %s p
+            JOIN imdb_stage_filtered_people fp ON fp.nconst = p.nconst
+            """.formatted(personTable));
 
-        statement.execute("""
+        long rewritten = statement.executeUpdate("""
             CREATE TEMP TABLE tmp_movie_ids ON COMMIT DROP AS
-            SELECT id, tconst
-            FROM movie
-            WHERE tconst IN (SELECT tconst FROM tmp_selected_titles)
-            """);
+            SELECT m.id, m.tconst
+            FROM %s m
+            JOIN imdb_stage_title_changes c ON c.tconst = m.tconst
+            WHERE c.principals_changed
+            """.formatted(movieTable));
 
         statement.execute("""
-            DELETE FROM movie_principal mp
+            DELETE FROM %s mp
             USING tmp_movie_ids mi
             WHERE mp.movie_id = mi.id
-            """);
+            """.formatted(principalTable));
 
         statement.execute("""
-            INSERT INTO movie_principal (movie_id, person_id, category, ordering, job, characters)
+            INSERT INTO %s (movie_id, person_id, category, ordering, job, characters)
             SELECT DISTINCT
               mi.id,
               pi.id,
@@ -319,26 +466,55 @@ public class ImdbCopyLoader {
               fp.ordering,
               fp.job,
               fp.characters
-            FROM tmp_filtered_principals fp
+            FROM imdb_stage_filtered_principals fp
             JOIN tmp_movie_ids mi ON mi.tconst = fp.tconst
             JOIN tmp_person_ids pi ON pi.nconst = fp.nconst
-            """);
+            """.formatted(principalTable));
+
+        refreshTopCast(statement, movieTable, personTable, principalTable);
+        return rewritten;
     }
 
-    private void skipHeaderLine(InputStream in) throws Exception {
-        int b;
-        boolean sawCR = false;
-        while ((b = in.read()) != -1) {
-            if (b == '\n') break;
-            if (b == '\r') { sawCR = true; break; }
-        }
-        if (sawCR) {
-            in.mark(1);
-            int next = in.read();
-            if (next != '\n') {
-                in.reset();
-            }
-        }
+    /**
+     * Recomputes {@code top_cast_names}/{@code top_cast_ids} of the movies whose credits were just
+     * rewritten and of those crediting a renamed person; every other movie's cast is unchanged.
+     */
+    private void refreshTopCast(Statement statement,
+                                String movieTable,
+                                String personTable,
+                                String principalTable) throws SQLException {
+        statement.execute("""
+            UPDATE %1$s m
+            SET top_cast_names = COALESCE(c.names, '{}'),
+                top_cast_ids   = COALESCE(c.ids, '{}')
+            FROM (
+              SELECT DISTINCT targets.id
+              FROM (
+                SELECT id FROM tmp_movie_ids
+                UNION ALL
+                SELECT mp.movie_id
+                FROM %3$s mp
+                JOIN %2$s p ON p.id = mp.person_id
+                JOIN tmp_upserted_people up ON up.nconst = p.nconst
+                WHERE mp.category IN ('actor','actress')
+              ) targets
+            ) t
+            LEFT JOIN LATERAL (
+              SELECT array_agg(top.primary_name ORDER BY top.rank) AS names,
+                     array_agg(top.nconst ORDER BY top.rank)       AS ids
+              FROM (
+                SELECT p.primary_name,
+                       p.nconst,
+                       row_number() OVER (ORDER BY mp.ordering NULLS LAST, p.primary_name) AS rank
+                FROM %3$s mp
+                JOIN %2$s p ON p.id = mp.person_id
+                WHERE mp.movie_id = t.id AND mp.category IN ('actor','actress')
+                ORDER BY rank
+                LIMIT 5
+              ) top
+            ) c ON TRUE
+            WHERE m.id = t.id
+            """.formatted(movieTable, personTable, principalTable));
     }
 
     public static ImdbFiles.Builder builder() {
@@ -24,9 +24,9 @@ public class ImdbDownloadMetadataStore {
 
     private static final Logger log = LoggerFactory.getLogger(ImdbDownloadMetadataStore.class);
 
-    public record Metadata(Optional<String> etag, Optional<String> lastModified) {
+    public record Metadata(Optional<String> etag, Optional<String> lastModified, Optional<Long> contentLength) {
         public static Metadata empty() {
-            return new Metadata(Optional.empty(), Optional.empty());
+            return new Metadata(Optional.empty(), Optional.empty(), Optional.empty());
         }
     }
 
@@ -49,11 +49,20 @@ public class ImdbDownloadMetadataStore {
 
         return new Metadata(
                 Optional.ofNullable(emptyToNull(props.getProperty("etag"))),
-                Optional.ofNullable(emptyToNull(props.getProperty("lastModified")))
+                Optional.ofNullable(emptyToNull(props.getProperty("lastModified"))),
+                Optional.ofNullable(emptyToNull(props.getProperty("contentLength"))).flatMap(ImdbDownloadMetadataStore::parseLength)
         );
     }
 
     public void store(Path dataDir, String fileName, Optional<String> etag, Optional<String> lastModified) throws IOException {
+        store(dataDir, fileName, etag, lastModified, Optional.empty());
+    }
+
+    public void store(Path dataDir,
+                      String fileName,
+                      Optional<String> etag,
+                      Optional<String> lastModified,
+                      Optional<Long> contentLength) throws IOException {
         Objects.requireNonNull(dataDir, "dataDir must not be null");
         Objects.requireNonNull(fileName, "fileName must not be null");
 
@@ -63,6 +72,7 @@ public class ImdbDownloadMetadataStore {
         Properties props = new Properties();
         etag.ifPresent(value -> props.setProperty("etag", value));
         lastModified.ifPresent(value -> props.setProperty("lastModified", value));
+        contentLength.ifPresent(value -> props.setProperty("contentLength", Long.toString(value)));
 
         try (OutputStream out = Files.newOutputStream(metaFile,
                 StandardOpenOption.CREATE,
@@ -72,10 +82,24 @@ public class ImdbDownloadMetadataStore {
         }
     }
 
+    public void delete(Path dataDir, String fileName) throws IOException {
+        Objects.requireNonNull(dataDir, "dataDir must not be null");
+        Objects.requireNonNull(fileName, "fileName must not be null");
+        Files.deleteIfExists(metadataPath(dataDir, fileName));
+    }
+
     private Path metadataPath(Path dataDir, String fileName) {
         return dataDir.resolve(fileName + ".meta");
     }
 
+    private static Optional<Long> parseLength(String value) {
+        try {
+            return Optional.of(Long.parseLong(value.trim()));
+        } catch (NumberFormatException ex) {
+            return Optional.empty();
+        }
+    }
+
     private static String emptyToNull(String value) {
         return value == null || value.isBlank() ? null : value;
     }
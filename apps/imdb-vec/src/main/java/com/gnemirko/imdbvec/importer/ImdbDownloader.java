@@ -1,29 +1,63 @@
 package com.gnemirko.imdbvec.importer;
 
+import com.gnemirko.imdbvec.config.ImdbImportProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import reactor.netty.http.client.HttpClient;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
-import java.util.zip.GZIPInputStream;
-
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipException;
 
+/**
+ * Downloads IMDb dumps into {@code <file>.part} and atomically moves them into place once the
+ * payload has been verified. Interrupted transfers are resumed with HTTP Range requests from the
+ * bytes already on disk (guarded by {@code If-Range}, so a dump republished in the meantime
+ * restarts from zero), and large files can optionally be fetched as parallel range segments.
+ * The remote validators and length of an in-flight download are kept next to the partial file
+ * via {@link ImdbDownloadMetadataStore}, so a resume also survives an application restart.
+ */
 @Component
 public class ImdbDownloader {
 
+    private static final Logger log = LoggerFactory.getLogger(ImdbDownloader.class);
+
+    private static final Duration ATTEMPT_TIMEOUT = Duration.ofMinutes(10);
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+    private static final Pattern MD5_ETAG = Pattern.compile("[0-9a-fA-F]{32}");
+    private static final int COPY_BUFFER_SIZE = 1 << 16;
+
     private final WebClient http;
+    private final ImdbDownloadMetadataStore metadataStore;
+    private final ImdbImportProperties properties;
 
-    public ImdbDownloader(WebClient.Builder builder) {
+    public ImdbDownloader(WebClient.Builder builder,
+                          ImdbDownloadMetadataStore metadataStore,
+                          ImdbImportProperties properties) {
         HttpClient netty = HttpClient.create()
                 .responseTimeout(Duration.ofMinutes(5))
                 .compress(true);
@@ -31,10 +65,36 @@ public class ImdbDownloader {
         this.http = builder
                 .clientConnector(new ReactorClientHttpConnector(netty))
                 .build();
+        this.metadataStore = metadataStore;
+        this.properties = properties;
     }
 
     public record DownloadResult(Path file, Optional<String> etag, Optional<String> lastModified, boolean notModified) {}
 
+    private record Transfer(boolean notModified,
+                            Optional<String> etag,
+                            Optional<String> lastModified,
+                            long contentLength,
+                            GzipStreamVerifier verifier) {
+        static final Transfer NOT_MODIFIED = new Transfer(true, Optional.empty(), Optional.empty(), -1, null);
+    }
+
+    private record Segment(int index, long start, long end, Path file) {
+        long length() {
+            return end - start + 1;
+        }
+    }
+
+    /** Raised when the bytes on disk cannot be the advertised file; the partial state is dropped. */
+    static final class CorruptDownloadException extends IOException {
+        CorruptDownloadException(String message) {
+            super(message);
+        }
+
+        CorruptDownloadException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
 
     public DownloadResult downloadGzAtomically(URI url,
                                                Path dataDir,
@@ -46,52 +106,439 @@ public class ImdbDownloader {
 
         Path finalFile = dataDir.resolve(fileName);
         Path partFile  = dataDir.resolve(fileName + ".part");
-        try { Files.deleteIfExists(partFile); } catch (Exception ignore) {}
+        Optional<String> knownEtag = Files.exists(finalFile) ? etag : Optional.empty();
+        Optional<String> knownLastModified = Files.exists(finalFile) ? lastModified : Optional.empty();
 
-        WebClient.RequestHeadersSpec<?> req = http.get().uri(url);
-        if (etag.isPresent())         req = req.header(HttpHeaders.IF_NONE_MATCH, etag.get());
-        if (lastModified.isPresent()) req = req.header(HttpHeaders.IF_MODIFIED_SINCE, lastModified.get());
-        req = req.header(HttpHeaders.ACCEPT_ENCODING, "identity");
+        int attempts = Math.max(1, properties.getDownloadRetries() + 1);
+        IOException failure = null;
+        for (int attempt = 1; attempt <= attempts; attempt++) {
+            try {
+                Transfer transfer = useSegments()
+                        ? fetchSegmented(url, dataDir, fileName, partFile, knownEtag, knownLastModified)
+                        : fetchStream(url, dataDir, fileName, partFile, knownEtag, knownLastModified);
+                if (transfer.notModified()) {
+                    return new DownloadResult(finalFile, etag, lastModified, true);
+                }
 
-        DownloadResult result = req.exchangeToMono(cr -> {
-            HttpStatus status = (HttpStatus) cr.statusCode();
-            if (status == HttpStatus.NOT_MODIFIED) {
-                return Mono.just(new DownloadResult(finalFile, etag, lastModified, true));
-            }
-            if (!status.is2xxSuccessful()) {
-                return Mono.error(new IOException("HTTP " + status + " for " + url));
+                verify(partFile, transfer);
+                Files.move(partFile, finalFile,
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                metadataStore.delete(dataDir, partialKey(fileName));
+
+                return new DownloadResult(finalFile, transfer.etag(), transfer.lastModified(), false);
+            } catch (IOException | RuntimeException e) {
+                Throwable cause = Exceptions.unwrap(e);
+                if (cause instanceof CorruptDownloadException corrupt) {
+                    log.warn("Discarding partial download of {} (attempt {}/{}): {}", fileName, attempt, attempts, corrupt.getMessage());
+                    discardPartial(dataDir, fileName);
+                    failure = corrupt;
+                } else {
+                    log.warn("Download of {} failed (attempt {}/{}), keeping {} bytes for resume: {}",
+                            fileName, attempt, attempts, partialBytes(dataDir, fileName), cause.toString());
+                    failure = cause instanceof IOException io ? io : new IOException("Download of " + url + " failed", cause);
+                }
             }
+        }
+        throw failure;
+    }
 
-            var newEtag = Optional.ofNullable(cr.headers().asHttpHeaders().getFirst(HttpHeaders.ETAG));
-            var newLM   = Optional.ofNullable(cr.headers().asHttpHeaders().getFirst(HttpHeaders.LAST_MODIFIED));
-
-            return DataBufferUtils.write(
-                            cr.bodyToFlux(DataBuffer.class),
-                            partFile,
-                            StandardOpenOption.CREATE,
-                            StandardOpenOption.TRUNCATE_EXISTING,
-                            StandardOpenOption.WRITE
-                    )
-                    .doOnError(e -> {
-                        try { Files.deleteIfExists(partFile); } catch (Exception ignore) {}
-                    })
-                    .then(Mono.fromCallable(() -> {
-                        try (var in = new GZIPInputStream(Files.newInputStream(partFile))) {
-                        } catch (Exception e) {
-                            try { Files.deleteIfExists(partFile); } catch (Exception ignore) {}
-                            throw new IOException("Downloaded file failed gzip header check: " + partFile, e);
-                        }
+    private boolean useSegments() {
+        return properties.getDownloadSegments() > 1;
+    }
 
-                        Files.move(partFile, finalFile,
-                                StandardCopyOption.REPLACE_EXISTING,
-                                StandardCopyOption.ATOMIC_MOVE);
+    private Transfer fetchStream(URI url,
+                                 Path dataDir,
+                                 String fileName,
+                                 Path partFile,
+                                 Optional<String> etag,
+                                 Optional<String> lastModified) throws IOException {
 
-                        return new DownloadResult(finalFile, newEtag, newLM, false);
-                    }));
-        }).block(Duration.ofMinutes(10));
+        ImdbDownloadMetadataStore.Metadata partial = metadataStore.load(dataDir, partialKey(fileName));
+        Optional<String> validator = rangeValidator(partial.etag(), partial.lastModified());
+        long offset = Files.exists(partFile) && validator.isPresent() ? Files.size(partFile) : 0L;
+        if (offset == 0) {
+            discardPartial(dataDir, fileName);
+        } else if (partial.contentLength().filter(length -> length == offset).isPresent()) {
+            log.info("Partial download of {} is already complete ({} bytes)", fileName, offset);
+            return new Transfer(false, partial.etag(), partial.lastModified(), offset, scan(partFile, offset, newVerifier(partial.etag())));
+        }
 
+        // The prefix is re-inflated before the request is sent, never on the event loop while a
+        // response waits unread. This extra read of the bytes on disk is only paid on a resume.
+        GzipStreamVerifier resumed = offset > 0 ? scan(partFile, offset, newVerifier(partial.etag())) : null;
+        WebClient.RequestHeadersSpec<?> req = http.get().uri(url)
+                .header(HttpHeaders.ACCEPT_ENCODING, "identity");
+        if (offset > 0) {
+            log.info("Resuming {} at byte {} of {}", fileName, offset, partial.contentLength().map(String::valueOf).orElse("?"));
+            req = req.header(HttpHeaders.RANGE, "bytes=" + offset + "-")
+                    .header(HttpHeaders.IF_RANGE, validator.get());
+        } else {
+            if (etag.isPresent())         req = req.header(HttpHeaders.IF_NONE_MATCH, etag.get());
+            if (lastModified.isPresent()) req = req.header(HttpHeaders.IF_MODIFIED_SINCE, lastModified.get());
+        }
+
+        Transfer result;
+        try {
+            result = exchange(req, url, dataDir, fileName, partFile, offset, partial, resumed);
+        } catch (RuntimeException e) {
+            if (resumed != null) {
+                resumed.close();
+            }
+            throw e;
+        }
+        if (resumed != null && (result == null || result.verifier() != resumed)) {
+            resumed.close();
+        }
         if (result == null) throw new IOException("No response from " + url);
         return result;
     }
 
-}
\ No newline at end of file
+    private Transfer exchange(WebClient.RequestHeadersSpec<?> req,
+                              URI url,
+                              Path dataDir,
+                              String fileName,
+                              Path partFile,
+                              long offset,
+                              ImdbDownloadMetadataStore.Metadata partial,
+                              GzipStreamVerifier resumed) {
+        return req.exchangeToMono(cr -> {
+            int status = cr.statusCode().value();
+            if (status == HttpStatus.NOT_MODIFIED.value() && offset == 0) {
+                return Mono.just(Transfer.NOT_MODIFIED);
+            }
+            if (status == HttpStatus.PARTIAL_CONTENT.value() && offset > 0) {
+                long[] range = parseContentRange(cr.headers().asHttpHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+                if (range == null || range[0] != offset) {
+                    return Mono.error(new CorruptDownloadException("Unexpected Content-Range for " + url + ": "
+                            + cr.headers().asHttpHeaders().getFirst(HttpHeaders.CONTENT_RANGE)));
+                }
+                long total = range[2] >= 0 ? range[2] : partial.contentLength().orElse(-1L);
+                return write(cr, partFile, offset, resumed)
+                        .thenReturn(new Transfer(false, partial.etag(), partial.lastModified(), total, resumed));
+            }
+            if (status == HttpStatus.OK.value()) {
+                if (offset > 0) {
+                    log.info("Remote {} changed since the partial download started, restarting from zero", fileName);
+                }
+                var newEtag = Optional.ofNullable(cr.headers().asHttpHeaders().getFirst(HttpHeaders.ETAG));
+                var newLM   = Optional.ofNullable(cr.headers().asHttpHeaders().getFirst(HttpHeaders.LAST_MODIFIED));
+                long total = cr.headers().contentLength().orElse(-1L);
+                Transfer transfer = new Transfer(false, newEtag, newLM, total, newVerifier(newEtag));
+                return Mono.fromCallable(() -> {
+                            storePartial(dataDir, fileName, transfer);
+                            return transfer;
+                        })
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .flatMap(t -> write(cr, partFile, 0L, t.verifier()).thenReturn(t))
+                        .doOnError(e -> transfer.verifier().close());
+            }
+            if (status == HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value()) {
+                return Mono.error(new CorruptDownloadException("Partial file of " + url + " is larger than the remote file"));
+            }
+            return Mono.error(new IOException("HTTP " + status + " for " + url));
+        }).block(ATTEMPT_TIMEOUT);
+    }
+
+    /**
+     * Splits the file into {@code downloadSegments} byte ranges fetched concurrently into
+     * {@code <file>.part-<n>}, each resumable on its own, and concatenates them into the part
+     * file. Falls back to a single stream when the server does not advertise range support,
+     * exposes no strong validator, or the file is below {@code downloadSegmentMinSize}.
+     */
+    private Transfer fetchSegmented(URI url,
+                                    Path dataDir,
+                                    String fileName,
+                                    Path partFile,
+                                    Optional<String> etag,
+                                    Optional<String> lastModified) throws IOException {
+
+        WebClient.RequestHeadersSpec<?> head = http.head().uri(url)
+                .header(HttpHeaders.ACCEPT_ENCODING, "identity");
+        if (etag.isPresent())         head = head.header(HttpHeaders.IF_NONE_MATCH, etag.get());
+        if (lastModified.isPresent()) head = head.header(HttpHeaders.IF_MODIFIED_SINCE, lastModified.get());
+
+        ResponseEntity<Void> probe = head.exchangeToMono(ClientResponse::toBodilessEntity).block(ATTEMPT_TIMEOUT);
+        if (probe == null) throw new IOException("No response from " + url);
+
+        int status = probe.getStatusCode().value();
+        if (status == HttpStatus.NOT_MODIFIED.value()) {
+            return Transfer.NOT_MODIFIED;
+        }
+        if (status != HttpStatus.OK.value()) {
+            throw new IOException("HTTP " + status + " for HEAD " + url);
+        }
+
+        HttpHeaders headers = probe.getHeaders();
+        Optional<String> remoteEtag = Optional.ofNullable(headers.getFirst(HttpHeaders.ETAG));
+        Optional<String> remoteLM = Optional.ofNullable(headers.getFirst(HttpHeaders.LAST_MODIFIED));
+        Optional<String> validator = rangeValidator(remoteEtag, remoteLM);
+        long total = headers.getContentLength();
+        boolean acceptsRanges = "bytes".equalsIgnoreCase(headers.getFirst(HttpHeaders.ACCEPT_RANGES));
+        if (!acceptsRanges || validator.isEmpty() || total < properties.getDownloadSegmentMinSize().toBytes()) {
+            return fetchStream(url, dataDir, fileName, partFile, etag, lastModified);
+        }
+
+        Transfer transfer = new Transfer(false, remoteEtag, remoteLM, total, newVerifier(remoteEtag));
+        ImdbDownloadMetadataStore.Metadata partial = metadataStore.load(dataDir, partialKey(fileName));
+        boolean sameRemote = partial.contentLength().filter(length -> length == total).isPresent()
+                && rangeValidator(partial.etag(), partial.lastModified()).equals(validator);
+        if (!sameRemote) {
+            discardPartial(dataDir, fileName);
+            storePartial(dataDir, fileName, transfer);
+        } else if (Files.exists(partFile) && Files.size(partFile) == total) {
+            scan(partFile, total, transfer.verifier());
+            return transfer;
+        }
+
+        List<Segment> segments = segments(dataDir, fileName, total, properties.getDownloadSegments());
+        log.info("Downloading {} ({} bytes) in {} segments", fileName, total, segments.size());
+        Flux.fromIterable(segments)
+                .flatMap(segment -> fetchSegment(url, segment, validator.get()), segments.size())
+                .then()
+                .block(ATTEMPT_TIMEOUT);
+
+        concatenate(segments, partFile, transfer.verifier());
+        return transfer;
+    }
+
+    private Mono<Void> fetchSegment(URI url, Segment segment, String validator) {
+        return Mono.fromCallable(() -> {
+                    long have = Files.exists(segment.file()) ? Files.size(segment.file()) : 0L;
+                    if (have > segment.length()) {
+                        Files.delete(segment.file());
+                        have = 0L;
+                    }
+                    return have;
+                })
+                .flatMap(have -> {
+                    if (have == segment.length()) {
+                        return Mono.empty();
+                    }
+                    long from = segment.start() + have;
+                    return http.get().uri(url)
+                            .header(HttpHeaders.ACCEPT_ENCODING, "identity")
+                            .header(HttpHeaders.RANGE, "bytes=" + from + "-" + segment.end())
+                            .header(HttpHeaders.IF_RANGE, validator)
+                            .exchangeToMono(cr -> {
+                                int status = cr.statusCode().value();
+                                if (status == HttpStatus.PARTIAL_CONTENT.value()) {
+                                    long[] range = parseContentRange(cr.headers().asHttpHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+                                    if (range == null || range[0] != from || range[1] != segment.end()) {
+                                        return Mono.error(new CorruptDownloadException("Unexpected Content-Range for segment "
+                                                + segment.index() + " of " + url));
+                                    }
+                                    return write(cr, segment.file(), have, null);
+                                }
+                                if (status == HttpStatus.OK.value()) {
+                                    return Mono.error(new CorruptDownloadException("Remote file " + url + " changed during segmented download"));
+                                }
+                                return Mono.error(new IOException("HTTP " + status + " for segment " + segment.index() + " of " + url));
+                            });
+                });
+    }
+
+    /**
+     * Streams the body into {@code target} starting at {@code position} (position 0 truncates),
+     * feeding each buffer to {@code verifier} on the way so a corrupt stream aborts the transfer.
+     */
+    private static Mono<Void> write(ClientResponse response, Path target, long position, GzipStreamVerifier verifier) {
+        Flux<DataBuffer> body = response.bodyToFlux(DataBuffer.class);
+        if (verifier != null) {
+            body = body.handle((buffer, sink) -> {
+                try (DataBuffer.ByteBufferIterator chunks = buffer.readableByteBuffers()) {
+                    while (chunks.hasNext()) {
+                        verifier.update(chunks.next());
+                    }
+                    sink.next(buffer);
+                } catch (ZipException e) {
+                    DataBufferUtils.release(buffer);
+                    sink.error(new CorruptDownloadException("Gzip verification of " + target + " failed", e));
+                }
+            });
+        }
+        Flux<DataBuffer> source = body;
+        return Mono.using(
+                () -> position == 0
+                        ? AsynchronousFileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+                        : AsynchronousFileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE),
+                channel -> DataBufferUtils.write(source, channel, position)
+                        .map(DataBufferUtils::release)
+                        .then(),
+                channel -> {
+                    try {
+                        channel.close();
+                    } catch (IOException ignore) {
+                    }
+                });
+    }
+
+    private static List<Segment> segments(Path dataDir, String fileName, long total, int count) {
+        long size = Math.ceilDiv(total, count);
+        List<Segment> segments = new ArrayList<>(count);
+        for (int i = 0; i < count && i * size < total; i++) {
+            long start = i * size;
+            long end = Math.min(total, start + size) - 1;
+            segments.add(new Segment(i, start, end, dataDir.resolve(fileName + ".part-" + i)));
+        }
+        return segments;
+    }
+
+    /** Joins the segments into the part file, verifying the bytes during the copy. */
+    private static void concatenate(List<Segment> segments, Path partFile, GzipStreamVerifier verifier) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+        try (FileChannel out = FileChannel.open(partFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Segment segment : segments) {
+                try (FileChannel in = FileChannel.open(segment.file(), StandardOpenOption.READ)) {
+                    long size = in.size();
+                    if (size != segment.length()) {
+                        throw new CorruptDownloadException("Segment " + segment.index() + " has " + size
+                                + " bytes, expected " + segment.length());
+                    }
+                    while (in.read(buffer.clear()) >= 0) {
+                        buffer.flip();
+                        verifier.update(buffer.duplicate());
+                        while (buffer.hasRemaining()) {
+                            out.write(buffer);
+                        }
+                    }
+                }
+            }
+        } catch (ZipException e) {
+            throw new CorruptDownloadException("Gzip verification of " + partFile + " failed", e);
+        }
+        for (Segment segment : segments) {
+            Files.deleteIfExists(segment.file());
+        }
+    }
+
+    /**
+     * Feeds the first {@code length} bytes already on disk to the verifier. Used for the prefix of
+     * a resumed transfer, and for a part file that was complete before an earlier run stopped;
+     * fresh downloads are verified in flight and never re-read. Blocking: call it off the event loop.
+     */
+    private static GzipStreamVerifier scan(Path file, long length, GzipStreamVerifier verifier) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long remaining = length;
+            while (remaining > 0) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+                int n = in.read(buffer);
+                if (n < 0) {
+                    break;
+                }
+                remaining -= n;
+                verifier.update(buffer.flip());
+            }
+        } catch (ZipException e) {
+            verifier.close();
+            throw new CorruptDownloadException("Gzip verification of " + file + " failed", e);
+        }
+        return verifier;
+    }
+
+    /**
+     * Checks the part file before it replaces the previous dump. The gzip members were already
+     * inflated and CRC/ISIZE-checked while the bytes arrived, so this only confirms the stream
+     * ended on a member boundary, the length matches what the server advertised, and the MD5
+     * matches the ETag when that is a plain digest (S3 single-part uploads).
+     */
+    private void verify(Path partFile, Transfer transfer) throws IOException {
+        GzipStreamVerifier verifier = transfer.verifier();
+        long size = Files.size(partFile);
+        try {
+            if (transfer.contentLength() >= 0 && size != transfer.contentLength()) {
+                throw new CorruptDownloadException("Downloaded " + size + " bytes of " + partFile
+                        + ", expected " + transfer.contentLength());
+            }
+            if (verifier.compressedBytes() != size) {
+                throw new CorruptDownloadException("Verified " + verifier.compressedBytes() + " of " + size + " bytes of " + partFile);
+            }
+            verifier.finish();
+        } catch (EOFException e) {
+            throw new CorruptDownloadException("Downloaded file failed gzip verification: " + partFile, e);
+        } finally {
+            verifier.close();
+        }
+
+        Optional<String> expectedMd5 = expectedMd5(transfer.etag());
+        if (expectedMd5.isPresent()) {
+            String actual = verifier.md5Hex().orElseThrow();
+            if (!actual.equalsIgnoreCase(expectedMd5.get())) {
+                throw new CorruptDownloadException("MD5 " + actual + " of " + partFile + " does not match ETag " + expectedMd5.get());
+            }
+        }
+        log.info("Verified {}: {} bytes, {} uncompressed, {} gzip member(s)",
+                partFile.getFileName(), size, verifier.uncompressedBytes(), verifier.members());
+    }
+
+    private GzipStreamVerifier newVerifier(Optional<String> etag) {
+        return new GzipStreamVerifier(expectedMd5(etag).isPresent());
+    }
+
+    private Optional<String> expectedMd5(Optional<String> etag) {
+        if (!properties.isDownloadVerifyEtagDigest()) {
+            return Optional.empty();
+        }
+        return etag.map(ImdbDownloader::unquote).filter(value -> MD5_ETAG.matcher(value).matches());
+    }
+
+    private void storePartial(Path dataDir, String fileName, Transfer transfer) throws IOException {
+        metadataStore.store(dataDir, partialKey(fileName), transfer.etag(), transfer.lastModified(),
+                transfer.contentLength() >= 0 ? Optional.of(transfer.contentLength()) : Optional.empty());
+    }
+
+    private void discardPartial(Path dataDir, String fileName) throws IOException {
+        Files.deleteIfExists(dataDir.resolve(fileName + ".part"));
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(dataDir, fileName + ".part-*")) {
+            for (Path segment : segments) {
+                Files.deleteIfExists(segment);
+            }
+        }
+        metadataStore.delete(dataDir, partialKey(fileName));
+    }
+
+    private static long partialBytes(Path dataDir, String fileName) {
+        long bytes = 0;
+        try (DirectoryStream<Path> parts = Files.newDirectoryStream(dataDir, fileName + ".part*")) {
+            for (Path part : parts) {
+                if (!part.getFileName().toString().endsWith(".meta")) {
+                    bytes += Files.size(part);
+                }
+            }
+        } catch (IOException ignore) {
+        }
+        return bytes;
+    }
+
+    private static String partialKey(String fileName) {
+        return fileName + ".part";
+    }
+
+    /** If-Range only accepts a strong ETag or an HTTP date; weak ETags cannot guard a resume. */
+    private static Optional<String> rangeValidator(Optional<String> etag, Optional<String> lastModified) {
+        return etag.filter(value -> !value.startsWith("W/")).or(() -> lastModified);
+    }
+
+    /** Returns {@code [first, last, total]} of a {@code Content-Range} header, total {@code -1} when unknown. */
+    private static long[] parseContentRange(String header) {
+        if (header == null) {
+            return null;
+        }
+        Matcher m = CONTENT_RANGE.matcher(header.trim());
+        if (!m.matches()) {
+            return null;
+        }
+        long total = "*".equals(m.group(3)) ? -1L : Long.parseLong(m.group(3));
+        return new long[]{Long.parseLong(m.group(1)), Long.parseLong(m.group(2)), total};
+    }
+
+    private static String unquote(String etag) {
+        String value = etag.trim();
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+}
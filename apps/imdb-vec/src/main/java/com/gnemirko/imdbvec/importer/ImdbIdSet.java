@@ -0,0 +1,102 @@
+package com.gnemirko.imdbvec.importer;
+
+/**
+ * Open-addressing hash set of IMDb identifiers ({@code tt0111161} / {@code nm0000209}) stored as
+ * their numeric part. Keeps millions of ids in a plain {@code int[]} instead of boxed strings.
+ */
+public final class ImdbIdSet {
+
+    private static final int EMPTY = 0;
+
+    private int[] slots;
+    private int size;
+
+    public ImdbIdSet() {
+        this(1024);
+    }
+
+    public ImdbIdSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        this.slots = new int[capacity];
+    }
+
+    /** Parses the numeric part of an IMDb id, returning {@code -1} when it is not one. */
+    public static int parse(CharSequence id) {
+        if (id == null || id.length() < 3) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 2; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9' || value > (Integer.MAX_VALUE - 9) / 10) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    public boolean add(int id) {
+        if (id <= 0) {
+            return false;
+        }
+        if ((size + 1) * 2 > slots.length) {
+            rehash(slots.length << 1);
+        }
+        int mask = slots.length - 1;
+        int i = mix(id) & mask;
+        while (slots[i] != EMPTY) {
+            if (slots[i] == id) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        slots[i] = id;
+        size++;
+        return true;
+    }
+
+    public boolean contains(int id) {
+        if (id <= 0) {
+            return false;
+        }
+        int mask = slots.length - 1;
+        int i = mix(id) & mask;
+        while (slots[i] != EMPTY) {
+            if (slots[i] == id) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void rehash(int capacity) {
+        int[] old = slots;
+        slots = new int[capacity];
+        size = 0;
+        for (int id : old) {
+            if (id != EMPTY) {
+                add(id);
+            }
+        }
+    }
+
+    private static int mix(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public String toString() {
+        return "ImdbIdSet[size=" + size + ", capacity=" + slots.length + "]";
+    }
+}
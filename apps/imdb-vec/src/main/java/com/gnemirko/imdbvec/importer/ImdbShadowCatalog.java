@@ -0,0 +1,203 @@
+package com.gnemirko.imdbvec.importer;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Blue/green refresh of {@code movie}, {@code person} and {@code movie_principal}. The import fills
+ * {@code *_shadow} copies that carry only their key constraints while rows go in. Right before the
+ * swap, every other index (the HNSW one included) and the foreign keys are cloned from the live
+ * tables and built in bulk. The live tables are then dropped and the shadows renamed in one short
+ * transaction, so searches only ever wait for that final rename.
+ * <p>
+ * Index, constraint and sequence definitions are read from the catalog rather than hard-coded, so
+ * migrations that touch the live tables need no changes here. Other writers of the catalog (e.g. a
+ * standalone TMDB overview job) must not run while a shadow is being built; their changes would be
+ * dropped with the old tables.
+ */
+final class ImdbShadowCatalog {
+
+    static final String MOVIE = "movie";
+    static final String PERSON = "person";
+    static final String MOVIE_PRINCIPAL = "movie_principal";
+
+    /** Dependants first, so the list also works as a DROP order. */
+    private static final List<String> TABLES = List.of(MOVIE_PRINCIPAL, MOVIE, PERSON);
+    private static final String SUFFIX = "_shadow";
+    private static final int MAX_IDENTIFIER_LENGTH = 63;
+
+    private static final Pattern INDEX_DEF = Pattern.compile(
+            "^(CREATE (?:UNIQUE )?INDEX )(\\S+)( ON (?:ONLY )?(?:\\S+\\.)?)(\\S+)( USING .*)$", Pattern.DOTALL);
+    private static final Pattern REFERENCES = Pattern.compile("REFERENCES ((?:\\S+\\.)?)(\\w+)\\(");
+
+    private ImdbShadowCatalog() {
+    }
+
+    static String shadowOf(String name) {
+        String base = name.length() + SUFFIX.length() > MAX_IDENTIFIER_LENGTH
+                ? name.substring(0, MAX_IDENTIFIER_LENGTH - SUFFIX.length())
+                : name;
+        return base + SUFFIX;
+    }
+
+    /** Drops whatever an earlier, unfinished refresh left behind. */
+    static void dropShadows(Statement statement) throws SQLException {
+        statement.execute("DROP TABLE IF EXISTS " + String.join(", ",
+                TABLES.stream().map(ImdbShadowCatalog::shadowOf).toList()));
+    }
+
+    /**
+     * Creates the empty shadow of {@code table} with the live column layout and defaults (the id
+     * default keeps drawing from the live sequence) plus its primary/unique keys, which the
+     * import's {@code ON CONFLICT} clauses need.
+     */
+    static void create(Statement statement, String table) throws SQLException {
+        String shadow = shadowOf(table);
+        statement.execute("DROP TABLE IF EXISTS " + shadow);
+        statement.execute("CREATE TABLE %s (LIKE %s INCLUDING DEFAULTS INCLUDING STORAGE INCLUDING COMMENTS)"
+                .formatted(shadow, table));
+        for (List<String> constraint : constraints(statement, table, "'p', 'u', 'x'")) {
+            statement.execute("ALTER TABLE %s ADD CONSTRAINT %s %s"
+                    .formatted(shadow, shadowOf(constraint.get(0)), constraint.get(1)));
+        }
+    }
+
+    /**
+     * Finishes the shadows and swaps them in. The index builds happen before any lock on the live
+     * tables is requested; {@code lockTimeout} bounds how long the swap may queue behind running
+     * queries before it gives up (the stage then fails and can be retried).
+     */
+    static void swap(Statement statement, Duration lockTimeout) throws SQLException {
+        rejectForeignDependants(statement);
+
+        List<String> renames = new ArrayList<>();
+        for (String table : TABLES) {
+            String shadow = shadowOf(table);
+            for (List<String> index : secondaryIndexes(statement, table)) {
+                String name = index.get(0);
+                statement.execute(cloneIndex(index.get(1), table, shadowOf(name), shadow));
+                renames.add("ALTER INDEX %s RENAME TO %s".formatted(shadowOf(name), name));
+            }
+            for (List<String> constraint : constraints(statement, table, "'f', 'c'")) {
+                statement.execute("ALTER TABLE %s ADD CONSTRAINT %s %s"
+                        .formatted(shadow, shadowOf(constraint.get(0)), pointAtShadows(constraint.get(1))));
+            }
+            for (List<String> constraint : constraints(statement, table, "'p', 'u', 'x', 'f', 'c'")) {
+                renames.add("ALTER TABLE %s RENAME CONSTRAINT %s TO %s"
+                        .formatted(table, shadowOf(constraint.get(0)), constraint.get(0)));
+            }
+            statement.execute("ANALYZE " + shadow);
+        }
+
+        List<String> sequences = new ArrayList<>();
+        for (String table : TABLES) {
+            for (List<String> owned : ownedSequences(statement, table)) {
+                sequences.add("ALTER SEQUENCE %s OWNED BY %s.%s".formatted(owned.get(0), shadowOf(table), owned.get(1)));
+            }
+        }
+
+        statement.execute("SET LOCAL lock_timeout = '%dms'".formatted(Math.max(1, lockTimeout.toMillis())));
+        statement.execute("LOCK TABLE " + String.join(", ", TABLES) + " IN ACCESS EXCLUSIVE MODE");
+        for (String sql : sequences) {
+            statement.execute(sql);
+        }
+        statement.execute("DROP TABLE " + String.join(", ", TABLES));
+        for (String table : TABLES) {
+            statement.execute("ALTER TABLE %s RENAME TO %s".formatted(shadowOf(table), table));
+        }
+        for (String sql : renames) {
+            statement.execute(sql);
+        }
+    }
+
+    static String cloneIndex(String definition, String table, String shadowIndex, String shadowTable) {
+        Matcher matcher = INDEX_DEF.matcher(definition);
+        if (!matcher.matches() || !matcher.group(4).equals(table)) {
+            throw new IllegalStateException("Cannot clone index definition onto " + shadowTable + ": " + definition);
+        }
+        return matcher.group(1) + shadowIndex + matcher.group(3) + shadowTable + matcher.group(5);
+    }
+
+    /** Re-targets foreign keys between catalog tables to the matching shadows. */
+    static String pointAtShadows(String constraintDefinition) {
+        Matcher matcher = REFERENCES.matcher(constraintDefinition);
+        StringBuilder out = new StringBuilder();
+        while (matcher.find()) {
+            String target = TABLES.contains(matcher.group(2)) ? shadowOf(matcher.group(2)) : matcher.group(2);
+            matcher.appendReplacement(out, Matcher.quoteReplacement("REFERENCES " + matcher.group(1) + target + "("));
+        }
+        matcher.appendTail(out);
+        return out.toString();
+    }
+
+    /** A foreign key from outside the catalog would keep the old tables from being dropped. */
+    private static void rejectForeignDependants(Statement statement) throws SQLException {
+        List<List<String>> dependants = rows(statement, """
+                SELECT conrelid::regclass::text, conname
+                FROM pg_constraint
+                WHERE contype = 'f'
+                  AND confrelid IN (%s)
+                  AND conrelid NOT IN (%s)
+                """.formatted(regclasses(TABLES), regclasses(TABLES)));
+        if (!dependants.isEmpty()) {
+            throw new IllegalStateException("Shadow swap is not possible while other tables reference the catalog: " + dependants);
+        }
+    }
+
+    private static List<List<String>> constraints(Statement statement, String table, String types) throws SQLException {
+        return rows(statement, """
+                SELECT conname, pg_get_constraintdef(oid)
+                FROM pg_constraint
+                WHERE conrelid = '%s'::regclass AND contype IN (%s)
+                ORDER BY conname
+                """.formatted(table, types));
+    }
+
+    private static List<List<String>> secondaryIndexes(Statement statement, String table) throws SQLException {
+        return rows(statement, """
+                SELECT c.relname, pg_get_indexdef(i.indexrelid)
+                FROM pg_index i
+                JOIN pg_class c ON c.oid = i.indexrelid
+                WHERE i.indrelid = '%s'::regclass
+                  AND NOT EXISTS (SELECT 1 FROM pg_constraint k WHERE k.conindid = i.indexrelid)
+                ORDER BY c.relname
+                """.formatted(table));
+    }
+
+    private static List<List<String>> ownedSequences(Statement statement, String table) throws SQLException {
+        return rows(statement, """
+                SELECT d.objid::regclass::text, a.attname
+                FROM pg_depend d
+                JOIN pg_class s ON s.oid = d.objid AND s.relkind = 'S'
+                JOIN pg_attribute a ON a.attrelid = d.refobjid AND a.attnum = d.refobjsubid
+                WHERE d.classid = 'pg_class'::regclass
+                  AND d.refobjid = '%s'::regclass
+                  AND d.deptype = 'a'
+                """.formatted(table));
+    }
+
+    private static String regclasses(List<String> tables) {
+        return String.join(", ", tables.stream().map(table -> "'" + table + "'::regclass").toList());
+    }
+
+    private static List<List<String>> rows(Statement statement, String sql) throws SQLException {
+        List<List<String>> rows = new ArrayList<>();
+        try (ResultSet rs = statement.executeQuery(sql)) {
+            int columns = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                List<String> row = new ArrayList<>(columns);
+                for (int i = 1; i <= columns; i++) {
+                    row.add(rs.getString(i));
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+}
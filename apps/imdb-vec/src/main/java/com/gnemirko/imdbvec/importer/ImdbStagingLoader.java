@@ -0,0 +1,472 @@
+package com.gnemirko.imdbvec.importer;
+
+import com.gnemirko.imdbvec.config.ImdbImportProperties;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streams the IMDb TSV dumps into typed UNLOGGED staging tables. Rows are parsed in Java and sent
+ * as binary COPY, so {@code \N} markers, numbers, flags and genre lists arrive already as SQL
+ * NULLs, smallints, booleans and {@code text[]} and the import queries need no casts. Every file
+ * is copied on its own pooled connection (outside of the import transaction), so the four
+ * gunzip + parse + COPY chains can run on separate cores instead of queueing behind one connection.
+ * title.basics is only staged for the titles {@link ImdbTitleSelector} kept; their rank, rating and
+ * votes are staged next to it in {@code imdb_stage_selected_titles} instead of a title.ratings table.
+ * All staging tables outlive the JVM, so a resumed import can pick up after the stage-load stage.
+ */
+@Component
+public class ImdbStagingLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(ImdbStagingLoader.class);
+
+    static final String TITLE_BASICS_TABLE = "imdb_stage_title_basics";
+    static final String NAME_BASICS_TABLE = "imdb_stage_name_basics";
+    static final String TITLE_PRINCIPALS_TABLE = "imdb_stage_title_principals";
+    static final String SELECTED_TITLES_TABLE = "imdb_stage_selected_titles";
+
+    private static final String TITLE_BASICS_DDL = """
+            CREATE UNLOGGED TABLE imdb_stage_title_basics (
+              tconst           text,
+              title_type       text,
+              primary_title    text,
+              original_title   text,
+              is_adult         boolean,
+              start_year       smallint,
+              end_year         smallint,
+              runtime_minutes  smallint,
+              genres           text[]
+            )
+            """;
+    private static final String TITLE_BASICS_COPY = """
+            COPY imdb_stage_title_basics
+              (tconst, title_type, primary_title, original_title, is_adult,
+               start_year, end_year, runtime_minutes, genres)
+            FROM STDIN WITH (FORMAT binary)
+            """;
+
+    private static final String SELECTED_TITLES_DDL = """
+            CREATE UNLOGGED TABLE imdb_stage_selected_titles (
+              tconst text PRIMARY KEY,
+              rank   integer NOT NULL,
+              rating double precision,
+              votes  integer
+            )
+            """;
+    private static final String SELECTED_TITLES_COPY = """
+            COPY imdb_stage_selected_titles (tconst, rank, rating, votes)
+            FROM STDIN WITH (FORMAT binary)
+            """;
+
+    private static final String NAME_BASICS_DDL = """
+            CREATE UNLOGGED TABLE imdb_stage_name_basics (
+              nconst             text,
+              primary_name       text,
+              birth_year         smallint,
+              death_year         smallint,
+              primary_profession text,
+              known_for_titles   text
+            )
+            """;
+    private static final String NAME_BASICS_COPY = """
+            COPY imdb_stage_name_basics
+              (nconst, primary_name, birth_year, death_year, primary_profession, known_for_titles)
+            FROM STDIN WITH (FORMAT binary)
+            """;
+
+    private static final String TITLE_PRINCIPALS_DDL = """
+            CREATE UNLOGGED TABLE imdb_stage_title_principals (
+              tconst     text,
+              ordering   integer,
+              nconst     text,
+              category   text,
+              job        text,
+              characters text
+            )
+            """;
+    private static final String TITLE_PRINCIPALS_COPY = """
+            COPY imdb_stage_title_principals
+              (tconst, ordering, nconst, category, job, characters)
+            FROM STDIN WITH (FORMAT binary)
+            """;
+
+    private static final List<String> CREDIT_CATEGORIES = List.of("actor", "actress", "director", "writer");
+    private static final int COPY_BUFFER_SIZE = 1 << 16;
+    private static final LineFilter ALL_ROWS = reader -> true;
+
+    private final DataSource dataSource;
+    private final ImdbImportProperties properties;
+
+    public ImdbStagingLoader(DataSource dataSource, ImdbImportProperties properties) {
+        this.dataSource = dataSource;
+        this.properties = properties;
+    }
+
+    public record StageStats(String table, Path source, long scannedRows, long rows, long compressedBytes, Duration elapsed) {
+
+        public double megabytesPerSecond() {
+            double seconds = Math.max(elapsed.toMillis(), 1) / 1000.0;
+            return compressedBytes / (1024.0 * 1024.0) / seconds;
+        }
+
+        public double rowsPerSecond() {
+            double seconds = Math.max(elapsed.toMillis(), 1) / 1000.0;
+            return scannedRows / seconds;
+        }
+    }
+
+    /** The kept titles plus what staging them (and, unless pre-filtering, the credits) produced. */
+    record Staged(ImdbTitleSelector.Selection selection, List<StageStats> stats) {}
+
+    private record CopyCount(long scanned, long written) {}
+
+    @FunctionalInterface
+    private interface CopyAction {
+        CopyCount copy(Connection connection) throws Exception;
+    }
+
+    private record StageTask(String table, Path source, String ddl, CopyAction action) {}
+
+    /**
+     * Selects the top titles and loads them plus the unfiltered credit dumps into their staging
+     * tables, concurrently unless {@code app.imdb.parallelLoad} is disabled. The staging tables are
+     * committed as soon as each COPY finishes so the import transaction can join them afterwards.
+     */
+    Staged load(ImdbCopyLoader.ImdbFiles files, int maxTitles) throws Exception {
+        AtomicReference<ImdbTitleSelector.Selection> selection = new AtomicReference<>();
+        List<StageStats> stats = run(List.of(
+                titleBasicsTask(files, maxTitles, selection),
+                nameBasicsTask(files.nameBasics()),
+                titlePrincipalsTask(files.titlePrincipals())
+        ));
+        return new Staged(selection.get(), stats);
+    }
+
+    /** First half of a pre-filtered import: title selection and the selected title.basics rows. */
+    Staged loadTitles(ImdbCopyLoader.ImdbFiles files, int maxTitles) throws Exception {
+        AtomicReference<ImdbTitleSelector.Selection> selection = new AtomicReference<>();
+        List<StageStats> stats = run(List.of(titleBasicsTask(files, maxTitles, selection)));
+        return new Staged(selection.get(), stats);
+    }
+
+    /**
+     * Second half of a pre-filtered import. title.principals is streamed through a line filter
+     * that keeps only selected titles and the categories {@code syncPrincipals} uses; the people
+     * referenced by the surviving rows then drive the same filter over name.basics. Nothing else
+     * reaches the database.
+     */
+    public List<StageStats> loadCredits(ImdbCopyLoader.ImdbFiles files, ImdbIdSet selectedTitles) throws Exception {
+        ImdbIdSet people = new ImdbIdSet(selectedTitles.size() * 8);
+        List<StageStats> stats = new ArrayList<>(2);
+        stats.addAll(run(List.of(new StageTask(TITLE_PRINCIPALS_TABLE, files.titlePrincipals(), TITLE_PRINCIPALS_DDL,
+                connection -> copyRows(connection, files.titlePrincipals(), TITLE_PRINCIPALS_COPY, reader -> {
+                    if (!selectedTitles.contains(reader.imdbId(0)) || !isCreditCategory(reader)) {
+                        return false;
+                    }
+                    int person = reader.imdbId(2);
+                    if (person <= 0) {
+                        return false;
+                    }
+                    people.add(person);
+                    return true;
+                }, ImdbStagingLoader::writeTitlePrincipal)))));
+        stats.addAll(run(List.of(new StageTask(NAME_BASICS_TABLE, files.nameBasics(), NAME_BASICS_DDL,
+                connection -> copyRows(connection, files.nameBasics(), NAME_BASICS_COPY,
+                        reader -> people.contains(reader.imdbId(0)), ImdbStagingLoader::writeNameBasics)))));
+        return stats;
+    }
+
+    /** Drops the staging tables; meant to run inside the import transaction once they were consumed. */
+    void dropStagingTables(Statement statement) throws SQLException {
+        statement.execute("DROP TABLE IF EXISTS "
+                + String.join(", ", SELECTED_TITLES_TABLE, TITLE_BASICS_TABLE, NAME_BASICS_TABLE, TITLE_PRINCIPALS_TABLE));
+    }
+
+    private List<StageStats> run(List<StageTask> tasks) throws Exception {
+        long start = System.nanoTime();
+        List<StageStats> stats = properties.isParallelLoad() && tasks.size() > 1
+                ? runConcurrently(tasks)
+                : runSequentially(tasks);
+        Duration total = Duration.ofNanos(System.nanoTime() - start);
+
+        for (StageStats stat : stats) {
+            log.info("Staged {}/{} rows into {} from {} in {} ms ({} MB/s compressed, {} rows/s scanned)",
+                    stat.rows(),
+                    stat.scannedRows(),
+                    stat.table(),
+                    stat.source().getFileName(),
+                    stat.elapsed().toMillis(),
+                    String.format(Locale.ROOT, "%.1f", stat.megabytesPerSecond()),
+                    String.format(Locale.ROOT, "%.0f", stat.rowsPerSecond()));
+        }
+        log.info("Staging load of {} file(s) finished in {} ms (parallel={})",
+                tasks.size(), total.toMillis(), properties.isParallelLoad());
+        return stats;
+    }
+
+    private StageTask titleBasicsTask(ImdbCopyLoader.ImdbFiles files,
+                                      int maxTitles,
+                                      AtomicReference<ImdbTitleSelector.Selection> result) {
+        return new StageTask(TITLE_BASICS_TABLE, files.titleBasics(), TITLE_BASICS_DDL, connection -> {
+            long start = System.nanoTime();
+            ImdbTitleSelector.Selection selection = ImdbTitleSelector.select(files.titleBasics(), files.titleRatings(), maxTitles);
+            log.info("Selected {} titles from {} title.basics rows ({} rated) in {} ms",
+                    selection.titles().size(),
+                    selection.scannedTitles(),
+                    selection.ratedTitles(),
+                    Duration.ofNanos(System.nanoTime() - start).toMillis());
+            result.set(selection);
+            stageSelection(connection, selection);
+            return copySelectedTitles(connection, selection);
+        });
+    }
+
+    private StageTask nameBasicsTask(Path source) {
+        return new StageTask(NAME_BASICS_TABLE, source, NAME_BASICS_DDL,
+                connection -> copyRows(connection, source, NAME_BASICS_COPY, ALL_ROWS, ImdbStagingLoader::writeNameBasics));
+    }
+
+    private StageTask titlePrincipalsTask(Path source) {
+        return new StageTask(TITLE_PRINCIPALS_TABLE, source, TITLE_PRINCIPALS_DDL,
+                connection -> copyRows(connection, source, TITLE_PRINCIPALS_COPY, ALL_ROWS, ImdbStagingLoader::writeTitlePrincipal));
+    }
+
+    private List<StageStats> runSequentially(List<StageTask> tasks) throws Exception {
+        List<StageStats> stats = new ArrayList<>(tasks.size());
+        for (StageTask task : tasks) {
+            stats.add(stage(task));
+        }
+        return stats;
+    }
+
+    private List<StageStats> runConcurrently(List<StageTask> tasks) throws Exception {
+        int threads = Math.max(1, Math.min(properties.getLoadThreads(), tasks.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                Thread.ofPlatform().name("imdb-stage-", 0).factory());
+        try {
+            List<Future<StageStats>> futures = new ArrayList<>(tasks.size());
+            for (StageTask task : tasks) {
+                Callable<StageStats> call = () -> stage(task);
+                futures.add(executor.submit(call));
+            }
+            List<StageStats> stats = new ArrayList<>(tasks.size());
+            for (Future<StageStats> future : futures) {
+                try {
+                    stats.add(future.get());
+                } catch (ExecutionException ex) {
+                    executor.shutdownNow();
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof Exception e) {
+                        throw e;
+                    }
+                    throw ex;
+                }
+            }
+            return stats;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private StageStats stage(StageTask task) throws Exception {
+        long start = System.nanoTime();
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(true);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE IF EXISTS " + task.table());
+                statement.execute(task.ddl());
+            }
+            CopyCount count = task.action().copy(connection);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("ANALYZE " + task.table());
+            }
+            return new StageStats(
+                    task.table(),
+                    task.source(),
+                    count.scanned(),
+                    count.written(),
+                    Files.size(task.source()),
+                    Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    /** Writes the selection, already in rank order, next to the staged title.basics rows. */
+    private void stageSelection(Connection connection, ImdbTitleSelector.Selection selection) throws Exception {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS " + SELECTED_TITLES_TABLE);
+            statement.execute(SELECTED_TITLES_DDL);
+        }
+        PGCopyOutputStream out = new PGCopyOutputStream(connection.unwrap(PGConnection.class), SELECTED_TITLES_COPY, COPY_BUFFER_SIZE);
+        try {
+            PgBinaryCopyWriter writer = new PgBinaryCopyWriter(out);
+            int rank = 0;
+            for (ImdbTitleSelector.SelectedTitle title : selection.titles()) {
+                writer.startRow(4);
+                writer.writeText(title.tconst());
+                writer.writeInteger(++rank);
+                if (Double.isNaN(title.rating())) {
+                    writer.writeNull();
+                } else {
+                    writer.writeDouble(title.rating());
+                }
+                if (title.votes() < 0) {
+                    writer.writeNull();
+                } else {
+                    writer.writeInteger(title.votes());
+                }
+            }
+            writer.finish();
+            out.endCopy();
+        } finally {
+            if (out.isActive()) {
+                out.cancelCopy();
+            }
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ANALYZE " + SELECTED_TITLES_TABLE);
+        }
+    }
+
+    private CopyCount copySelectedTitles(Connection connection, ImdbTitleSelector.Selection selection) throws Exception {
+        PGCopyOutputStream out = new PGCopyOutputStream(connection.unwrap(PGConnection.class), TITLE_BASICS_COPY, COPY_BUFFER_SIZE);
+        try {
+            PgBinaryCopyWriter writer = new PgBinaryCopyWriter(out);
+            ImdbTsvReader line = ImdbTsvReader.detached();
+            for (ImdbTitleSelector.SelectedTitle title : selection.titles()) {
+                line.reset(title.basicsLine());
+                writeTitleBasics(line, writer);
+            }
+            writer.finish();
+            long written = out.endCopy();
+            return new CopyCount(selection.scannedTitles(), written);
+        } finally {
+            if (out.isActive()) {
+                out.cancelCopy();
+            }
+        }
+    }
+
+    private CopyCount copyRows(Connection connection,
+                               Path source,
+                               String copySql,
+                               LineFilter filter,
+                               RowWriter rowWriter) throws Exception {
+        PGCopyOutputStream out = new PGCopyOutputStream(connection.unwrap(PGConnection.class), copySql, COPY_BUFFER_SIZE);
+        try (ImdbTsvReader reader = ImdbTsvReader.open(source)) {
+            PgBinaryCopyWriter writer = new PgBinaryCopyWriter(out);
+            while (reader.next()) {
+                if (filter.accept(reader)) {
+                    rowWriter.write(reader, writer);
+                }
+            }
+            writer.finish();
+            long written = out.endCopy();
+            return new CopyCount(reader.linesRead(), written);
+        } finally {
+            if (out.isActive()) {
+                out.cancelCopy();
+            }
+        }
+    }
+
+    private static void writeTitleBasics(ImdbTsvReader reader, PgBinaryCopyWriter out) throws IOException {
+        out.startRow(9);
+        reader.copyText(0, out);
+        reader.copyText(1, out);
+        reader.copyText(2, out);
+        reader.copyText(3, out);
+        writeFlag(reader, 4, out);
+        writeSmallint(reader.longValue(5), out);
+        writeSmallint(reader.longValue(6), out);
+        writeSmallint(reader.longValue(7), out);
+        reader.copyTextArray(8, (byte) ',', out);
+    }
+
+    private static void writeNameBasics(ImdbTsvReader reader, PgBinaryCopyWriter out) throws IOException {
+        out.startRow(6);
+        reader.copyText(0, out);
+        reader.copyText(1, out);
+        writeSmallint(reader.longValue(2), out);
+        writeSmallint(reader.longValue(3), out);
+        reader.copyText(4, out);
+        reader.copyText(5, out);
+    }
+
+    private static void writeTitlePrincipal(ImdbTsvReader reader, PgBinaryCopyWriter out) throws IOException {
+        out.startRow(6);
+        reader.copyText(0, out);
+        long ordering = reader.longValue(1);
+        writeInteger(ordering < 0 ? ImdbTsvReader.MISSING : ordering, out);
+        reader.copyText(2, out);
+        reader.copyText(3, out);
+        reader.copyText(4, out);
+        reader.copyText(5, out);
+    }
+
+    /** IMDb writes {@code 0}/{@code 1}; anything unrecognised becomes NULL. */
+    private static void writeFlag(ImdbTsvReader reader, int field, PgBinaryCopyWriter out) throws IOException {
+        if (reader.equalsIgnoreCase(field, "1") || reader.equalsIgnoreCase(field, "t") || reader.equalsIgnoreCase(field, "true")) {
+            out.writeBoolean(true);
+        } else if (reader.equalsIgnoreCase(field, "0") || reader.equalsIgnoreCase(field, "f") || reader.equalsIgnoreCase(field, "false")) {
+            out.writeBoolean(false);
+        } else {
+            out.writeNull();
+        }
+    }
+
+    /** Out-of-range values become NULL rather than failing the whole COPY. */
+    private static void writeSmallint(long value, PgBinaryCopyWriter out) throws IOException {
+        if (value == ImdbTsvReader.MISSING || value < Short.MIN_VALUE || value > Short.MAX_VALUE) {
+            out.writeNull();
+        } else {
+            out.writeSmallint((short) value);
+        }
+    }
+
+    private static void writeInteger(long value, PgBinaryCopyWriter out) throws IOException {
+        if (value == ImdbTsvReader.MISSING || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            out.writeNull();
+        } else {
+            out.writeInteger((int) value);
+        }
+    }
+
+    private static boolean isCreditCategory(ImdbTsvReader reader) {
+        for (String category : CREDIT_CATEGORIES) {
+            if (reader.equalsIgnoreCase(3, category)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @FunctionalInterface
+    private interface LineFilter {
+        boolean accept(ImdbTsvReader reader);
+    }
+
+    @FunctionalInterface
+    private interface RowWriter {
+        void write(ImdbTsvReader reader, PgBinaryCopyWriter out) throws IOException;
+    }
+}
@@ -0,0 +1,200 @@
+package com.gnemirko.imdbvec.importer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Picks the titles an import keeps without asking Postgres to sort title.basics. title.ratings is
+ * read into a primitive index first, then title.basics is streamed once and every movie/tvMovie
+ * row is offered to a bounded min-heap holding the current top {@code maxTitles}. Ordering matches
+ * the SQL ranking it replaces: rating desc (unrated = -1), votes desc (none = 0), tconst asc.
+ * The raw basics line of every kept title is retained so it can be staged without a second read.
+ */
+final class ImdbTitleSelector {
+
+    private static final List<String> RANKED_TITLE_TYPES = List.of("movie", "tvMovie");
+
+    /** Lowest-ranked first, i.e. the head of the heap is the next title to evict. */
+    private static final Comparator<SelectedTitle> WORST_FIRST = Comparator
+            .comparingDouble(SelectedTitle::rankRating)
+            .thenComparingInt(SelectedTitle::rankVotes)
+            .thenComparing(SelectedTitle::tconst, Comparator.reverseOrder());
+
+    private ImdbTitleSelector() {
+    }
+
+    /**
+     * A kept title in rank order. {@code rating} is {@code NaN} and {@code votes} is {@code -1} when
+     * title.ratings has no value for it.
+     */
+    record SelectedTitle(String tconst, double rating, int votes, byte[] basicsLine) {
+
+        double rankRating() {
+            return Double.isNaN(rating) ? -1 : rating;
+        }
+
+        int rankVotes() {
+            return Math.max(votes, 0);
+        }
+    }
+
+    record Selection(List<SelectedTitle> titles, ImdbIdSet ids, long scannedTitles, long ratedTitles) {}
+
+    static Selection select(Path titleBasics, Path titleRatings, int maxTitles) throws IOException {
+        RatingIndex ratings = RatingIndex.read(titleRatings);
+        boolean bounded = maxTitles > 0;
+        PriorityQueue<SelectedTitle> heap = new PriorityQueue<>(bounded ? maxTitles + 1 : 1 << 16, WORST_FIRST);
+
+        long scanned;
+        try (ImdbTsvReader reader = ImdbTsvReader.open(titleBasics)) {
+            while (reader.next()) {
+                if (!isRankedTitleType(reader)) {
+                    continue;
+                }
+                int id = reader.imdbId(0);
+                int slot = ratings.slot(id);
+                double rating = slot < 0 ? Double.NaN : ratings.rating(slot);
+                int votes = slot < 0 ? -1 : ratings.votes(slot);
+
+                if (bounded && heap.size() == maxTitles && !mayOutrank(heap.peek(), rating, votes)) {
+                    continue;
+                }
+                SelectedTitle candidate = new SelectedTitle(reader.text(0), rating, votes, reader.copyLine());
+                if (candidate.tconst() == null) {
+                    continue;
+                }
+                if (!bounded || heap.size() < maxTitles) {
+                    heap.add(candidate);
+                } else if (WORST_FIRST.compare(candidate, heap.peek()) > 0) {
+                    heap.poll();
+                    heap.add(candidate);
+                }
+            }
+            scanned = reader.linesRead();
+        }
+
+        List<SelectedTitle> titles = new ArrayList<>(heap);
+        titles.sort(WORST_FIRST.reversed());
+        ImdbIdSet ids = new ImdbIdSet(titles.size());
+        for (SelectedTitle title : titles) {
+            ids.add(ImdbIdSet.parse(title.tconst()));
+        }
+        return new Selection(titles, ids, scanned, ratings.size());
+    }
+
+    /** Cheap primitive pre-check so most rows are rejected before anything is allocated. */
+    private static boolean mayOutrank(SelectedTitle worst, double rating, int votes) {
+        double rankRating = Double.isNaN(rating) ? -1 : rating;
+        if (rankRating != worst.rankRating()) {
+            return rankRating > worst.rankRating();
+        }
+        return Math.max(votes, 0) >= worst.rankVotes();
+    }
+
+    static boolean isRankedTitleType(ImdbTsvReader reader) {
+        for (String type : RANKED_TITLE_TYPES) {
+            if (reader.equalsIgnoreCase(1, type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Open-addressing map from the numeric part of a tconst to its rating and vote count. */
+    private static final class RatingIndex {
+
+        private int[] keys;
+        private double[] ratings;
+        private int[] votes;
+        private int size;
+
+        private RatingIndex(int capacity) {
+            keys = new int[capacity];
+            ratings = new double[capacity];
+            votes = new int[capacity];
+        }
+
+        static RatingIndex read(Path titleRatings) throws IOException {
+            RatingIndex index = new RatingIndex(1 << 16);
+            try (ImdbTsvReader reader = ImdbTsvReader.open(titleRatings)) {
+                while (reader.next()) {
+                    long numVotes = reader.longValue(2);
+                    index.put(reader.imdbId(0), reader.doubleValue(1),
+                            numVotes < 0 || numVotes > Integer.MAX_VALUE ? -1 : (int) numVotes);
+                }
+            }
+            return index;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int slot(int id) {
+            if (id <= 0) {
+                return -1;
+            }
+            int mask = keys.length - 1;
+            int i = mix(id) & mask;
+            while (keys[i] != 0) {
+                if (keys[i] == id) {
+                    return i;
+                }
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        double rating(int slot) {
+            return ratings[slot];
+        }
+
+        int votes(int slot) {
+            return votes[slot];
+        }
+
+        private void put(int id, double rating, int voteCount) {
+            if (id <= 0) {
+                return;
+            }
+            if ((size + 1) * 4 > keys.length * 3) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int i = mix(id) & mask;
+            while (keys[i] != 0 && keys[i] != id) {
+                i = (i + 1) & mask;
+            }
+            if (keys[i] == 0) {
+                keys[i] = id;
+                size++;
+            }
+            ratings[i] = rating;
+            votes[i] = voteCount;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            double[] oldRatings = ratings;
+            int[] oldVotes = votes;
+            keys = new int[oldKeys.length << 1];
+            ratings = new double[keys.length];
+            votes = new int[keys.length];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    put(oldKeys[i], oldRatings[i], oldVotes[i]);
+                }
+            }
+        }
+
+        private static int mix(int id) {
+            int h = id * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.gnemirko.imdbvec.importer;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Forward-only reader over a gzipped IMDb TSV dump. Lines are kept as raw UTF-8 bytes and
+ * fields are only decoded on demand, so filters can reject rows without allocating strings.
+ * The header line is skipped on open.
+ */
+final class ImdbTsvReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_FIELDS = 16;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /** Returned by {@link #longValue(int)} for null, absent or non-numeric fields. */
+    static final long MISSING = Long.MIN_VALUE;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    private byte[] line = new byte[1024];
+    private int lineLength;
+    private final int[] fieldStarts = new int[MAX_FIELDS + 1];
+    private int fieldCount;
+    private long linesRead;
+
+    private ImdbTsvReader(InputStream in) {
+        this.in = in;
+    }
+
+    static ImdbTsvReader open(Path gzFile) throws IOException {
+        InputStream raw = new BufferedInputStream(Files.newInputStream(gzFile), BUFFER_SIZE);
+        ImdbTsvReader reader = new ImdbTsvReader(new GZIPInputStream(raw, BUFFER_SIZE));
+        try {
+            reader.readLine();
+        } catch (IOException ex) {
+            reader.close();
+            throw ex;
+        }
+        reader.linesRead = 0;
+        return reader;
+    }
+
+    /** A reader without a file, positioned on lines handed to {@link #reset(byte[])}. */
+    static ImdbTsvReader detached() {
+        return new ImdbTsvReader(InputStream.nullInputStream());
+    }
+
+    /** Re-parses a line previously captured with {@link #copyLine()}. */
+    void reset(byte[] bytes) {
+        line = bytes;
+        lineLength = bytes.length;
+        splitFields();
+    }
+
+    /** Advances to the next data line; returns {@code false} at end of file. */
+    boolean next() throws IOException {
+        if (!readLine()) {
+            return false;
+        }
+        splitFields();
+        linesRead++;
+        return true;
+    }
+
+    long linesRead() {
+        return linesRead;
+    }
+
+    int fieldCount() {
+        return fieldCount;
+    }
+
+    boolean isNull(int field) {
+        int start = start(field);
+        return end(field) - start == 2 && line[start] == '\\' && line[start + 1] == 'N';
+    }
+
+    /** {@code true} for IMDb's {@code \N} marker and for fields a short line does not have. */
+    boolean isMissing(int field) {
+        return field >= fieldCount || isNull(field);
+    }
+
+    /** Field decoded as UTF-8, or {@code null} for IMDb's {@code \N} marker. */
+    String text(int field) {
+        if (isMissing(field)) {
+            return null;
+        }
+        int start = start(field);
+        return new String(line, start, end(field) - start, StandardCharsets.UTF_8);
+    }
+
+    boolean equalsIgnoreCase(int field, String ascii) {
+        if (field >= fieldCount) {
+            return false;
+        }
+        int start = start(field);
+        int length = end(field) - start;
+        if (length != ascii.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            int b = line[start + i];
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            int c = ascii.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            if (b != c) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Numeric part of a {@code tt}/{@code nm} identifier field, or {@code -1}. */
+    int imdbId(int field) {
+        if (field >= fieldCount) {
+            return -1;
+        }
+        int start = start(field);
+        int end = end(field);
+        if (end - start < 3) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start + 2; i < end; i++) {
+            int b = line[i];
+            if (b < '0' || b > '9' || value > (Integer.MAX_VALUE - 9) / 10) {
+                return -1;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    /** Field parsed as a signed decimal integer, or {@link #MISSING} when absent or not a number. */
+    long longValue(int field) {
+        if (isMissing(field)) {
+            return MISSING;
+        }
+        int i = start(field);
+        int end = end(field);
+        boolean negative = i < end && line[i] == '-';
+        if (negative) {
+            i++;
+        }
+        if (i == end || end - i > 18) {
+            return MISSING;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int b = line[i];
+            if (b < '0' || b > '9') {
+                return MISSING;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Field parsed as a decimal number, or {@code NaN} when absent or not a number. Short plain
+     * decimals such as ratings are computed as {@code digits / 10^scale}, which is exact to the
+     * last bit; anything else goes through {@link Double#parseDouble}.
+     */
+    double doubleValue(int field) {
+        if (isMissing(field)) {
+            return Double.NaN;
+        }
+        int start = start(field);
+        int end = end(field);
+        long digits = 0;
+        int digitCount = 0;
+        int scale = -1;
+        for (int i = start; i < end; i++) {
+            int b = line[i];
+            if (b == '.' && scale < 0) {
+                scale = 0;
+            } else if (b >= '0' && b <= '9' && digitCount < 15) {
+                digits = digits * 10 + (b - '0');
+                digitCount++;
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else {
+                return parseDoubleSlow(start, end);
+            }
+        }
+        if (digitCount == 0) {
+            return Double.NaN;
+        }
+        return scale <= 0 ? digits : digits / POWERS_OF_TEN[scale];
+    }
+
+    /** The current line without its newline, detached from the reader's buffers. */
+    byte[] copyLine() {
+        return Arrays.copyOf(line, lineLength);
+    }
+
+    /** Copies the field's raw bytes as a binary COPY text value ({@code NULL} when missing). */
+    void copyText(int field, PgBinaryCopyWriter out) throws IOException {
+        if (isMissing(field)) {
+            out.writeNull();
+            return;
+        }
+        int start = start(field);
+        out.writeText(line, start, end(field) - start);
+    }
+
+    /** Copies the field as a {@code text[]} split on {@code separator} ({@code NULL} when missing). */
+    void copyTextArray(int field, byte separator, PgBinaryCopyWriter out) throws IOException {
+        if (isMissing(field)) {
+            out.writeNull();
+            return;
+        }
+        int start = start(field);
+        out.writeTextArray(line, start, end(field) - start, separator);
+    }
+
+    private double parseDoubleSlow(int start, int end) {
+        try {
+            return Double.parseDouble(new String(line, start, end - start, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException ex) {
+            return Double.NaN;
+        }
+    }
+
+    private int start(int field) {
+        return fieldStarts[field];
+    }
+
+    private int end(int field) {
+        return fieldStarts[field + 1] - 1;
+    }
+
+    private void splitFields() {
+        fieldCount = 0;
+        fieldStarts[0] = 0;
+        for (int i = 0; i < lineLength && fieldCount < MAX_FIELDS - 1; i++) {
+            if (line[i] == '\t') {
+                fieldStarts[++fieldCount] = i + 1;
+            }
+        }
+        fieldStarts[++fieldCount] = lineLength + 1;
+    }
+
+    private boolean readLine() throws IOException {
+        lineLength = 0;
+        boolean sawData = false;
+        while (true) {
+            if (position >= limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return sawData;
+                }
+            }
+            sawData = true;
+            int newline = -1;
+            for (int i = position; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    newline = i;
+                    break;
+                }
+            }
+            int chunkEnd = newline < 0 ? limit : newline;
+            append(position, chunkEnd - position);
+            if (newline >= 0) {
+                position = newline + 1;
+                if (lineLength > 0 && line[lineLength - 1] == '\r') {
+                    lineLength--;
+                }
+                return true;
+            }
+            position = limit;
+        }
+    }
+
+    private void append(int from, int length) {
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+        }
+        System.arraycopy(buffer, from, line, lineLength, length);
+        lineLength += length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
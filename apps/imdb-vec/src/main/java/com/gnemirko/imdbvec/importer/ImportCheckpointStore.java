@@ -0,0 +1,358 @@
+package com.gnemirko.imdbvec.importer;
+
+import com.gnemirko.imdbvec.config.ImdbImportProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Persists bootstrap runs and their per-stage state in {@code import_run} / {@code import_stage}.
+ * A stage that writes to the catalog runs in its own transaction and is marked completed inside
+ * that same transaction, so a crash can never leave it applied but unrecorded (or the reverse).
+ * Stage start and failure are written outside of it so they survive a rollback.
+ * <p>
+ * The staging tables have fixed names, so only one run may execute at a time: a run holds a
+ * session-level advisory lock on a connection of its own from {@link #resumeOrStart} until
+ * {@link #finish}. Postgres drops the lock with the session, so a crashed run never blocks the next.
+ */
+@Component
+public class ImportCheckpointStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ImportCheckpointStore.class);
+
+    static final String RUNNING = "RUNNING";
+    static final String COMPLETED = "COMPLETED";
+    static final String FAILED = "FAILED";
+    static final String ABANDONED = "ABANDONED";
+
+    private static final int MAX_ERROR_LENGTH = 2000;
+
+    /** Advisory lock key of the bootstrap pipeline ("imdbrun"). */
+    static final long RUN_LOCK_KEY = 0x69_6d_64_62_72_75_6eL;
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transactions;
+    private final DataSource dataSource;
+    private final Duration resumeMaxAge;
+    private final ConcurrentMap<Long, Connection> runLocks = new ConcurrentHashMap<>();
+
+    public ImportCheckpointStore(JdbcTemplate jdbc, PlatformTransactionManager transactionManager,
+                                 ImdbImportProperties properties) {
+        this.jdbc = jdbc;
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.dataSource = Objects.requireNonNull(jdbc.getDataSource(), "JdbcTemplate has no DataSource");
+        this.resumeMaxAge = properties.getResumeMaxAge();
+    }
+
+    public record Run(long id, String status, OffsetDateTime startedAt, OffsetDateTime finishedAt, String error) {}
+
+    public record StageRecord(ImportStage stage,
+                              String status,
+                              OffsetDateTime startedAt,
+                              OffsetDateTime finishedAt,
+                              Long durationMs,
+                              Long rows,
+                              String detail) {}
+
+    public record RunReport(Run run, List<StageRecord> stages, long totalDurationMs) {}
+
+    @FunctionalInterface
+    public interface StageWork {
+        ImportStageResult execute() throws Exception;
+    }
+
+    /**
+     * Takes the run lock, then returns the newest unfinished run when {@code resume} is set and the
+     * run made progress within {@code app.imdb.resumeMaxAge}; its staged downloads would be out of
+     * date after that. Otherwise (or when there is none) every unfinished run is marked abandoned
+     * and a new one opened. Holding the lock, a run still marked {@code RUNNING} is known to be dead.
+     *
+     * @throws CannotAcquireLockException while another run, in this or another process, is executing
+     */
+    public Run resumeOrStart(boolean resume) {
+        Connection lock = lockRuns();
+        try {
+            Run run = resumeOrStartLocked(resume);
+            runLocks.put(run.id(), lock);
+            return run;
+        } catch (RuntimeException ex) {
+            unlockRuns(lock);
+            throw ex;
+        }
+    }
+
+    private Run resumeOrStartLocked(boolean resume) {
+        if (resume && resumeMaxAge.isPositive()) {
+            Optional<Run> unfinished = jdbc.query("""
+                    SELECT r.id, r.status, r.started_at, r.finished_at, r.error
+                    FROM import_run r
+                    WHERE r.status IN ('RUNNING', 'FAILED')
+                      AND COALESCE((SELECT max(COALESCE(s.finished_at, s.started_at))
+                                    FROM import_stage s
+                                    WHERE s.run_id = r.id), r.started_at)
+                          >= clock_timestamp() - ? * interval '1 second'
+                    ORDER BY r.id DESC
+                    LIMIT 1
+                    """, RUN_MAPPER, resumeMaxAge.toSeconds()).stream().findFirst();
+            if (unfinished.isPresent()) {
+                Run run = unfinished.get();
+                jdbc.update("UPDATE import_run SET status = ?, finished_at = NULL, error = NULL WHERE id = ?", RUNNING, run.id());
+                log.info("Resuming import run {} (completed stages: {})", run.id(), completedStages(run.id()).keySet());
+                return run;
+            }
+        }
+        int abandoned = jdbc.update("UPDATE import_run SET status = ?, finished_at = clock_timestamp() WHERE status IN ('RUNNING', 'FAILED')", ABANDONED);
+        if (abandoned > 0) {
+            log.info("Abandoned {} unfinished import run(s){}", abandoned, resume ? " older than " + resumeMaxAge : "");
+        }
+        Run run = jdbc.queryForObject("""
+                INSERT INTO import_run (status) VALUES (?)
+                RETURNING id, status, started_at, finished_at, error
+                """, RUN_MAPPER, RUNNING);
+        log.info("Started import run {}", run.id());
+        return run;
+    }
+
+    /**
+     * Runs one stage unless it already completed in this run. With {@code transactional} the work
+     * and the completion record share a transaction.
+     *
+     * @return the stage record, either the one just written or the earlier checkpoint
+     */
+    public StageRecord run(Run run, ImportStage stage, boolean transactional, StageWork work) throws Exception {
+        StageRecord done = completedStages(run.id()).get(stage);
+        if (done != null) {
+            log.info("Import run {}: stage {} already completed ({} rows), skipping", run.id(), stage.code(), done.rows());
+            return done;
+        }
+
+        jdbc.update("""
+                INSERT INTO import_stage (run_id, stage, status, started_at)
+                VALUES (?, ?, ?, clock_timestamp())
+                ON CONFLICT (run_id, stage) DO UPDATE
+                  SET status = EXCLUDED.status,
+                      started_at = EXCLUDED.started_at,
+                      finished_at = NULL,
+                      duration_ms = NULL,
+                      rows = NULL,
+                      detail = NULL
+                """, run.id(), stage.code(), RUNNING);
+        log.info("Import run {}: stage {} started", run.id(), stage.code());
+
+        long start = System.nanoTime();
+        try {
+            ImportStageResult result;
+            if (transactional) {
+                result = transactions.execute(status -> {
+                    try {
+                        ImportStageResult produced = work.execute();
+                        markCompleted(run, stage, produced, start);
+                        return produced;
+                    } catch (RuntimeException ex) {
+                        throw ex;
+                    } catch (Exception ex) {
+                        throw new StageFailedException(ex);
+                    }
+                });
+            } else {
+                result = work.execute();
+                markCompleted(run, stage, result, start);
+            }
+            long millis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+            log.info("Import run {}: stage {} finished in {} ms ({} rows{})",
+                    run.id(), stage.code(), millis, result.rows(),
+                    result.detail() == null ? "" : ", " + result.detail());
+            return completedStages(run.id()).get(stage);
+        } catch (StageFailedException ex) {
+            markFailed(run, stage, ex.getCause(), start);
+            throw (Exception) ex.getCause();
+        } catch (Exception ex) {
+            markFailed(run, stage, ex, start);
+            throw ex;
+        }
+    }
+
+    /** Forgets {@code from} and every later stage so the next attempt runs them again. */
+    public void resetFrom(Run run, ImportStage from) {
+        List<String> codes = Arrays.stream(ImportStage.values())
+                .filter(stage -> stage.ordinal() >= from.ordinal())
+                .map(ImportStage::code)
+                .toList();
+        jdbc.update("DELETE FROM import_stage WHERE run_id = ? AND stage = ANY (?)",
+                run.id(), codes.toArray(String[]::new));
+        log.warn("Import run {}: checkpoints from stage {} onward were reset", run.id(), from.code());
+    }
+
+    /** Records the outcome and releases the run lock. */
+    public void finish(Run run, Throwable error) {
+        try {
+            jdbc.update("UPDATE import_run SET status = ?, finished_at = clock_timestamp(), error = ? WHERE id = ?",
+                    error == null ? COMPLETED : FAILED, error == null ? null : describe(error), run.id());
+        } finally {
+            Connection lock = runLocks.remove(run.id());
+            if (lock != null) {
+                unlockRuns(lock);
+            }
+        }
+    }
+
+    /** Stage timings and row counts for {@code runId}, or for the newest run when it is null. */
+    public Optional<RunReport> report(Long runId) {
+        Optional<Run> run = jdbc.query("""
+                SELECT id, status, started_at, finished_at, error
+                FROM import_run
+                WHERE (?::bigint IS NULL OR id = ?)
+                ORDER BY id DESC
+                LIMIT 1
+                """, RUN_MAPPER, runId, runId).stream().findFirst();
+        return run.map(r -> {
+            List<StageRecord> stages = jdbc.query("""
+                    SELECT stage, status, started_at, finished_at, duration_ms, rows, detail
+                    FROM import_stage
+                    WHERE run_id = ?
+                    """, STAGE_MAPPER, r.id()).stream()
+                    .sorted(Comparator.comparing(StageRecord::stage))
+                    .toList();
+            long total = stages.stream()
+                    .map(StageRecord::durationMs)
+                    .filter(Objects::nonNull)
+                    .mapToLong(Long::longValue)
+                    .sum();
+            return new RunReport(r, stages, total);
+        });
+    }
+
+    private Connection lockRuns() {
+        Connection connection;
+        try {
+            connection = dataSource.getConnection();
+        } catch (SQLException ex) {
+            throw new CannotAcquireLockException("Could not open a connection for the import run lock", ex);
+        }
+        boolean locked = false;
+        try (PreparedStatement statement = connection.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+            statement.setLong(1, RUN_LOCK_KEY);
+            try (ResultSet rs = statement.executeQuery()) {
+                locked = rs.next() && rs.getBoolean(1);
+            }
+        } catch (SQLException ex) {
+            close(connection);
+            throw new CannotAcquireLockException("Could not take the import run lock", ex);
+        }
+        if (!locked) {
+            close(connection);
+            throw new CannotAcquireLockException("Another import run is in progress");
+        }
+        return connection;
+    }
+
+    private void unlockRuns(Connection connection) {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT pg_advisory_unlock(?)")) {
+            statement.setLong(1, RUN_LOCK_KEY);
+            statement.execute();
+        } catch (SQLException ex) {
+            log.warn("Could not release the import run lock: {}", ex.getMessage());
+        } finally {
+            close(connection);
+        }
+    }
+
+    private static void close(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ex) {
+            log.warn("Could not close the import run lock connection: {}", ex.getMessage());
+        }
+    }
+
+    private Map<ImportStage, StageRecord> completedStages(long runId) {
+        Map<ImportStage, StageRecord> completed = new EnumMap<>(ImportStage.class);
+        jdbc.query("""
+                SELECT stage, status, started_at, finished_at, duration_ms, rows, detail
+                FROM import_stage
+                WHERE run_id = ? AND status = 'COMPLETED'
+                """, STAGE_MAPPER, runId).forEach(stage -> completed.put(stage.stage(), stage));
+        return completed;
+    }
+
+    private void markCompleted(Run run, ImportStage stage, ImportStageResult result, long startNanos) {
+        jdbc.update("""
+                UPDATE import_stage
+                SET status = ?, finished_at = clock_timestamp(), duration_ms = ?, rows = ?, detail = ?
+                WHERE run_id = ? AND stage = ?
+                """,
+                COMPLETED,
+                Duration.ofNanos(System.nanoTime() - startNanos).toMillis(),
+                result.rows(),
+                result.detail(),
+                run.id(),
+                stage.code());
+    }
+
+    private void markFailed(Run run, ImportStage stage, Throwable error, long startNanos) {
+        try {
+            jdbc.update("""
+                    UPDATE import_stage
+                    SET status = ?, finished_at = clock_timestamp(), duration_ms = ?, detail = ?
+                    WHERE run_id = ? AND stage = ?
+                    """,
+                    FAILED,
+                    Duration.ofNanos(System.nanoTime() - startNanos).toMillis(),
+                    describe(error),
+                    run.id(),
+                    stage.code());
+        } catch (RuntimeException ex) {
+            log.warn("Could not record failure of import stage {}: {}", stage.code(), ex.getMessage());
+        }
+    }
+
+    private static String describe(Throwable error) {
+        String text = error.getClass().getSimpleName() + (error.getMessage() == null ? "" : ": " + error.getMessage());
+        return text.length() > MAX_ERROR_LENGTH ? text.substring(0, MAX_ERROR_LENGTH) : text;
+    }
+
+    private static final RowMapper<Run> RUN_MAPPER = (rs, rowNum) -> new Run(
+            rs.getLong("id"),
+            rs.getString("status"),
+            rs.getObject("started_at", OffsetDateTime.class),
+            rs.getObject("finished_at", OffsetDateTime.class),
+            rs.getString("error"));
+
+    private static final RowMapper<StageRecord> STAGE_MAPPER = (rs, rowNum) -> new StageRecord(
+            ImportStage.fromCode(rs.getString("stage")),
+            rs.getString("status"),
+            rs.getObject("started_at", OffsetDateTime.class),
+            rs.getObject("finished_at", OffsetDateTime.class),
+            (Long) rs.getObject("duration_ms"),
+            (Long) rs.getObject("rows"),
+            rs.getString("detail"));
+
+    /** Carries a checked stage failure out of the transaction callback. */
+    private static final class StageFailedException extends RuntimeException {
+        StageFailedException(Exception cause) {
+            super(cause);
+        }
+    }
+}
@@ -4,14 +4,13 @@ import com.gnemirko.imdbvec.config.ImdbImportProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Instant;
-import java.util.Optional;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.Optional;
 
 @Service
 public class ImportService {
@@ -36,16 +35,20 @@ public class ImportService {
         this.metadataStore = metadataStore;
     }
 
-    @Transactional
-    public long runFullImport() throws Exception {
-        log.info("IMDb full import started at {}", Instant.now());
+    /**
+     * Download stage: fetches every configured dump, sending the stored validators so unchanged
+     * files are answered with 304.
+     */
+    public ImportStageResult download() throws Exception {
+        log.info("IMDb download started at {}", Instant.now());
 
-        Map<String, ImdbDownloader.DownloadResult> results = new HashMap<>();
         List<String> filesToFetch = properties.getFiles();
         if (filesToFetch.isEmpty()) {
             throw new IllegalStateException("No IMDb files configured (app.imdb.files is empty)");
         }
 
+        long downloaded = 0;
+        List<String> notModified = new ArrayList<>();
         for (String file : filesToFetch) {
             var url = properties.resolveDownloadUri(file);
             Path targetDir = properties.getDataDir();
@@ -61,31 +64,67 @@ public class ImportService {
                     etag,
                     lastMod
             );
-            if (!download.notModified()) {
+            if (download.notModified()) {
+                notModified.add(file);
+            } else {
                 metadataStore.store(targetDir, file, download.etag(), download.lastModified());
+                downloaded++;
             }
-            results.put(file, download);
         }
+        return new ImportStageResult(downloaded, notModified.isEmpty() ? null : "not modified: " + String.join(", ", notModified));
+    }
 
-        ImdbCopyLoader.ImdbFiles files = ImdbCopyLoader.ImdbFiles.builder()
-                .titleBasics(resolveOrThrow(results, TITLE_BASICS_FILE))
-                .titleRatings(resolveOrThrow(results, TITLE_RATINGS_FILE))
-                .nameBasics(resolveOrThrow(results, NAME_BASICS_FILE))
-                .titlePrincipals(resolveOrThrow(results, TITLE_PRINCIPALS_FILE))
-                .build();
-
+    /** Stage-load stage: title selection plus binary COPY of the dumps into the staging tables. */
+    public ImportStageResult stageLoad() throws Exception {
         Integer maxTitles = properties.getMaxTitles();
-        long inserted = loader.loadTopTitles(files, maxTitles == null ? -1 : maxTitles);
+        return loader.stage(files(), maxTitles == null ? -1 : maxTitles);
+    }
+
+    /** Select stage: ranks the staged titles and diffs them against the catalog. */
+    public ImportStageResult select() throws Exception {
+        return loader.select(!properties.isIncremental());
+    }
+
+    /** Upsert stage; expected to run inside the stage transaction. */
+    public ImportStageResult upsert() throws Exception {
+        return loader.upsert();
+    }
+
+    /** Principals stage; expected to run inside the stage transaction. */
+    public ImportStageResult syncPrincipals() throws Exception {
+        return loader.syncPrincipals();
+    }
+
+    /** Swap stage of a shadow refresh; expected to run inside the stage transaction. */
+    public ImportStageResult swap() throws Exception {
+        return loader.swap();
+    }
 
-        log.info("IMDb import finished. Upserted rows: {}", inserted);
-        return inserted;
+    public boolean isShadowRefresh() {
+        return loader.isShadowRefresh();
     }
 
-    private Path resolveOrThrow(Map<String, ImdbDownloader.DownloadResult> results, String fileName) {
-        ImdbDownloader.DownloadResult result = results.get(fileName);
-        if (result == null) {
+    /**
+     * The dumps a completed download stage left in {@code app.imdb.data-dir}. A resumed run whose
+     * files have disappeared since has to download them again.
+     */
+    ImdbCopyLoader.ImdbFiles files() {
+        return ImdbCopyLoader.ImdbFiles.builder()
+                .titleBasics(resolveOrThrow(TITLE_BASICS_FILE))
+                .titleRatings(resolveOrThrow(TITLE_RATINGS_FILE))
+                .nameBasics(resolveOrThrow(NAME_BASICS_FILE))
+                .titlePrincipals(resolveOrThrow(TITLE_PRINCIPALS_FILE))
+                .build();
+    }
+
+    private Path resolveOrThrow(String fileName) {
+        if (!properties.getFiles().contains(fileName)) {
             throw new IllegalStateException("Missing required IMDb file: " + fileName);
         }
-        return result.file();
+        Path file = properties.resolveDataPath(fileName);
+        if (!Files.isRegularFile(file)) {
+            throw new StaleStagingException(ImportStage.DOWNLOAD, "Downloaded IMDb file " + file + " is gone");
+        }
+        return file;
     }
 }
@@ -0,0 +1,40 @@
+package com.gnemirko.imdbvec.importer;
+
+/**
+ * Checkpointed steps of a bootstrap run, in execution order. A rerun after a failure skips every
+ * stage already recorded as completed for the unfinished run.
+ */
+public enum ImportStage {
+    DOWNLOAD("download"),
+    STAGE_LOAD("stage-load"),
+    SELECT("select"),
+    UPSERT("upsert"),
+    PRINCIPALS("principals"),
+    /** Only run with {@code app.imdb.refreshMode=shadow}. */
+    SWAP("swap"),
+    OVERVIEW("overview"),
+    EMBEDDINGS("embeddings"),
+    INDEX("index"),
+    /** Fills and switches to a new embedding model; a no-op while the configured model is active. */
+    EMBEDDING_MIGRATION("embedding-migration");
+
+    private final String code;
+
+    ImportStage(String code) {
+        this.code = code;
+    }
+
+    /** Name persisted in {@code import_stage.stage} and shown in the report. */
+    public String code() {
+        return code;
+    }
+
+    public static ImportStage fromCode(String code) {
+        for (ImportStage stage : values()) {
+            if (stage.code.equals(code)) {
+                return stage;
+            }
+        }
+        throw new IllegalArgumentException("Unknown import stage: " + code);
+    }
+}
@@ -0,0 +1,9 @@
+package com.gnemirko.imdbvec.importer;
+
+/** What a stage produced: the row count shown in the report plus a short human-readable detail. */
+public record ImportStageResult(long rows, String detail) {
+
+    public static ImportStageResult of(long rows) {
+        return new ImportStageResult(rows, null);
+    }
+}
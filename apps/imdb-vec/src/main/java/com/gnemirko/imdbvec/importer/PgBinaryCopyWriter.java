@@ -0,0 +1,163 @@
+package com.gnemirko.imdbvec.importer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes rows in PostgreSQL's binary COPY format ({@code COPY ... FROM STDIN WITH (FORMAT binary)}).
+ * Values are written already typed, so the server only has to copy them into the heap instead of
+ * parsing and casting text. Only the handful of types the IMDb staging tables use are supported.
+ */
+final class PgBinaryCopyWriter {
+
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    private static final int TEXT_OID = 25;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private long rows;
+
+    PgBinaryCopyWriter(OutputStream out) throws IOException {
+        this.out = out;
+        writeBytes(SIGNATURE, 0, SIGNATURE.length);
+        writeInt(0);
+        writeInt(0);
+    }
+
+    void startRow(int columns) throws IOException {
+        writeShort(columns);
+        rows++;
+    }
+
+    void writeNull() throws IOException {
+        writeInt(-1);
+    }
+
+    void writeText(String value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeText(bytes, 0, bytes.length);
+    }
+
+    /** Writes already UTF-8 encoded text, e.g. a field straight out of {@link ImdbTsvReader}. */
+    void writeText(byte[] bytes, int offset, int length) throws IOException {
+        writeInt(length);
+        writeBytes(bytes, offset, length);
+    }
+
+    void writeBoolean(boolean value) throws IOException {
+        writeInt(1);
+        ensure(1);
+        buffer[position++] = (byte) (value ? 1 : 0);
+    }
+
+    void writeSmallint(short value) throws IOException {
+        writeInt(2);
+        writeShort(value);
+    }
+
+    void writeInteger(int value) throws IOException {
+        writeInt(4);
+        writeInt(value);
+    }
+
+    void writeDouble(double value) throws IOException {
+        writeInt(8);
+        writeLong(Double.doubleToLongBits(value));
+    }
+
+    /**
+     * Writes a one-dimensional {@code text[]} whose elements are the {@code separator}-delimited
+     * parts of the given bytes, matching {@code string_to_array(value, separator)}.
+     */
+    void writeTextArray(byte[] bytes, int offset, int length, byte separator) throws IOException {
+        if (length == 0) {
+            writeInt(12);
+            writeInt(0);
+            writeInt(0);
+            writeInt(TEXT_OID);
+            return;
+        }
+        int end = offset + length;
+        int elements = 1;
+        for (int i = offset; i < end; i++) {
+            if (bytes[i] == separator) {
+                elements++;
+            }
+        }
+        writeInt(20 + elements * 4 + (length - (elements - 1)));
+        writeInt(1);
+        writeInt(0);
+        writeInt(TEXT_OID);
+        writeInt(elements);
+        writeInt(1);
+        int start = offset;
+        for (int i = offset; i <= end; i++) {
+            if (i == end || bytes[i] == separator) {
+                writeInt(i - start);
+                writeBytes(bytes, start, i - start);
+                start = i + 1;
+            }
+        }
+    }
+
+    long rows() {
+        return rows;
+    }
+
+    /** Writes the file trailer and hands everything buffered to the underlying stream. */
+    void finish() throws IOException {
+        writeShort(-1);
+        flush();
+    }
+
+    private void flush() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (position + bytes > buffer.length) {
+            flush();
+        }
+    }
+
+    private void writeShort(int value) throws IOException {
+        ensure(2);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeInt(int value) throws IOException {
+        ensure(4);
+        buffer[position++] = (byte) (value >>> 24);
+        buffer[position++] = (byte) (value >>> 16);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeLong(long value) throws IOException {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    private void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+        if (length > buffer.length - position) {
+            flush();
+            if (length > buffer.length) {
+                out.write(bytes, offset, length);
+                return;
+            }
+        }
+        System.arraycopy(bytes, offset, buffer, position, length);
+        position += length;
+    }
+}
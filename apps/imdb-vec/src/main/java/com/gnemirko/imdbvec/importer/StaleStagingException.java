@@ -0,0 +1,20 @@
+package com.gnemirko.imdbvec.importer;
+
+/**
+ * Raised when a resumed stage finds the input an earlier checkpoint left behind missing, e.g. the
+ * UNLOGGED staging tables were truncated by a Postgres crash or the downloaded dumps were removed.
+ * The run has to go back to {@link #restartFrom()} instead of acting on partial data.
+ */
+public class StaleStagingException extends IllegalStateException {
+
+    private final ImportStage restartFrom;
+
+    public StaleStagingException(ImportStage restartFrom, String message) {
+        super(message);
+        this.restartFrom = restartFrom;
+    }
+
+    public ImportStage restartFrom() {
+        return restartFrom;
+    }
+}
@@ -1,28 +1,87 @@
 package com.gnemirko.imdbvec.repo;
 
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
+import com.gnemirko.common.vector.VectorSearchPlanner;
+import com.gnemirko.imdbvec.config.VectorSearchProperties;
+import com.gnemirko.imdbvec.service.EmbeddingSlotStore;
+import com.gnemirko.imdbvec.service.HybridScorer;
+import com.pgvector.PGvector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
 
 /**
  * JDBC layer for vector search + hybrid ranking.
- * Uses NamedParameterJdbcTemplate (no manual substitution).
+ * Uses NamedParameterJdbcTemplate (no manual substitution). The nearest candidates are found by
+ * the plan {@link VectorSearchPlanner} picks for the filters and re-ranked by {@link HybridScorer}.
  */
 @Repository
 public class MovieJdbc {
 
-    private final JdbcTemplate jdbc;                 // for simple statements like SET
+    private static final Logger log = LoggerFactory.getLogger(MovieJdbc.class);
+
+    private static final String FILTER_SQL = """
+            m.%1$s IS NOT NULL
+            AND (:fromYear IS NULL OR m.start_year >= :fromYear)
+            AND (:toYear   IS NULL OR m.start_year <= :toYear)
+            AND (:runtimeMax IS NULL OR m.runtime_minutes <= :runtimeMax)
+            AND (:minRating IS NULL OR m.rating >= :minRating)
+            AND (
+                  COALESCE(:inc, ARRAY[]::text[]) = ARRAY[]::text[]
+                  OR EXISTS (SELECT 1 FROM unnest(:inc) g WHERE g = ANY(m.genres))
+                )
+            AND (
+                  COALESCE(:exc, ARRAY[]::text[]) = ARRAY[]::text[]
+                  OR NOT EXISTS (SELECT 1 FROM unnest(:exc) g WHERE g = ANY(m.genres))
+                )
+            AND (
+                  COALESCE(:actorNames, ARRAY[]::text[]) = ARRAY[]::text[]
+                  OR EXISTS (
+                      SELECT 1
+                      FROM movie_principal mp
+                      JOIN person p ON p.id = mp.person_id
+                      WHERE mp.movie_id = m.id
+                        AND mp.category IN ('actor','actress')
+                        AND LOWER(p.primary_name) = ANY(:actorNames)
+                  )
+                )
+            """;
+
+    /** The candidates {@link VectorSearchPlanner} selects ({@code %s}) with what the hybrid score needs. */
+    private static final String CANDIDATES_SQL = """
+            WITH nearest AS MATERIALIZED (
+            %s
+            )
+            SELECT m.id,
+                   m.tconst,
+                   m.primary_title,
+                   m.start_year,
+                   m.rating,
+                   m.votes,
+                   (1 - nearest.distance) AS sim,
+                   m.genres,
+                   m.plot,
+                   m.top_cast_names,
+                   m.top_cast_ids
+            FROM nearest
+            JOIN movie m ON m.id = nearest.id
+            """;
+
     private final NamedParameterJdbcTemplate np;     // for named-parameter SQL
-    private final int efSearch;
+    private final TransactionTemplate transactions;
+    private final VectorSearchPlanner planner;
+    private final VectorSearchProperties properties;
+    private final HybridScorer scorer;
 
     public record RecoRow(
             Long id,
@@ -38,168 +97,101 @@ public class MovieJdbc {
             List<String> actorIds
     ) {}
 
-    public MovieJdbc(JdbcTemplate jdbc,
-                     NamedParameterJdbcTemplate np,
-                     @Value("${app.recommend.efSearch:200}") int efSearch) {
-        this.jdbc = jdbc;
-        this.np = np;
-        this.efSearch = efSearch;
-    }
-
-    public int countCandidates(String[] includeGenres,
-                               String[] excludeGenres,
-                               Short fromYear,
-                               Short toYear,
-                               Integer runtimeMax,
-                               Double minRating) {
-
-        jdbc.execute("SET hnsw.ef_search = " + efSearch);
-
-        String sql = """
-            SELECT COUNT(*)
-            FROM movie m
-            WHERE (:fromYear IS NULL OR m.start_year >= :fromYear)
-              AND (:toYear   IS NULL OR m.start_year <= :toYear)
-              AND (:runtimeMax IS NULL OR m.runtime_minutes <= :runtimeMax)
-              AND (:minRating IS NULL OR m.rating >= :minRating)
-              AND (
-                    COALESCE(:inc, ARRAY[]::text[]) = ARRAY[]::text[]
-                    OR EXISTS (SELECT 1 FROM unnest(:inc) g WHERE g = ANY(m.genres))
-                  )
-              AND (
-                    COALESCE(:exc, ARRAY[]::text[]) = ARRAY[]::text[]
-                    OR NOT EXISTS (SELECT 1 FROM unnest(:exc) g WHERE g = ANY(m.genres))
-                  )
-            """;
-
-        MapSqlParameterSource p = new MapSqlParameterSource()
-                .addValue("fromYear", fromYear)
-                .addValue("toYear", toYear)
-                .addValue("runtimeMax", runtimeMax)
-                .addValue("minRating", minRating)
-                .addValue("inc", includeGenres == null ? new String[]{} : includeGenres)
-                .addValue("exc", excludeGenres == null ? new String[]{} : excludeGenres);
+    /** Search filters; {@code null} or empty values do not restrict. Actor names are lower-case. */
+    public record Filters(
+            String[] includeGenres,
+            String[] excludeGenres,
+            String[] actorNames,
+            Short fromYear,
+            Short toYear,
+            Integer runtimeMax,
+            Double minRating
+    ) {
+        boolean restricts() {
+            return isSet(includeGenres) || isSet(excludeGenres) || isSet(actorNames)
+                    || fromYear != null || toYear != null || runtimeMax != null || minRating != null;
+        }
 
-        return np.queryForObject(sql, p, Integer.class);
+        private static boolean isSet(String[] values) {
+            return values != null && values.length > 0;
+        }
     }
 
-    public List<RecoRow> topN(float[] queryVec,
-                              String[] includeGenres,
-                              String[] excludeGenres,
-                              String[] includeActorNames,
-                              Short fromYear,
-                              Short toYear,
-                              Integer runtimeMax,
-                              Double minRating,
-                              int limit) {
-
-        jdbc.execute("SET hnsw.ef_search = " + efSearch);
-
-        StringBuilder sb = new StringBuilder("[");
-        for (int i = 0; i < queryVec.length; i++) {
-            if (i > 0) sb.append(',');
-            sb.append(queryVec[i]);
-        }
-        sb.append(']');
-        String vec = sb.toString();
-
-        String sql = """
-            WITH filtered AS (
-              SELECT id, tconst, primary_title, start_year, rating, votes, genres, plot, embedding
-              FROM movie m
-              WHERE (:fromYear IS NULL OR m.start_year >= :fromYear)
-                AND (:toYear   IS NULL OR m.start_year <= :toYear)
-                AND (:runtimeMax IS NULL OR m.runtime_minutes <= :runtimeMax)
-                AND (:minRating IS NULL OR m.rating >= :minRating)
-                AND (
-                      COALESCE(:inc, ARRAY[]::text[]) = ARRAY[]::text[]
-                      OR EXISTS (SELECT 1 FROM unnest(:inc) g WHERE g = ANY(m.genres))
-                    )
-                AND (
-                      COALESCE(:exc, ARRAY[]::text[]) = ARRAY[]::text[]
-                      OR NOT EXISTS (SELECT 1 FROM unnest(:exc) g WHERE g = ANY(m.genres))
-                    )
-                AND (
-                      COALESCE(:actorNames, ARRAY[]::text[]) = ARRAY[]::text[]
-                      OR EXISTS (
-                          SELECT 1
-                          FROM movie_principal mp
-                          JOIN person p ON p.id = mp.person_id
-                          WHERE mp.movie_id = m.id
-                            AND mp.category IN ('actor','actress')
-                            AND LOWER(p.primary_name) = ANY(:actorNames)
-                      )
-                    )
-                AND m.embedding IS NOT NULL
-            )
-            SELECT filtered.id,
-                   filtered.tconst,
-                   filtered.primary_title,
-                   filtered.start_year,
-                   filtered.rating,
-                   filtered.votes,
-                   (1 - (embedding <=> CAST(:vec AS vector))) AS sim,
-                   (0.60*(1 - (embedding <=> CAST(:vec AS vector)))
-                    + 0.30*LEAST(COALESCE(rating,0)/10.0,1.0)
-                    + 0.10*LOG10(GREATEST(COALESCE(votes,0),1))) AS score,
-                   filtered.genres,
-                   filtered.plot,
-                   ap.actor_names,
-                   ap.actor_ids
-            FROM filtered
-            LEFT JOIN LATERAL (
-              SELECT
-                ARRAY(
-                  SELECT p.primary_name
-                  FROM movie_principal mp
-                  JOIN person p ON p.id = mp.person_id
-                  WHERE mp.movie_id = filtered.id AND mp.category IN ('actor','actress')
-                  ORDER BY mp.ordering NULLS LAST, p.primary_name
-                  LIMIT 5
-                ) AS actor_names,
-                ARRAY(
-                  SELECT p.nconst
-                  FROM movie_principal mp
-                  JOIN person p ON p.id = mp.person_id
-                  WHERE mp.movie_id = filtered.id AND mp.category IN ('actor','actress')
-                  ORDER BY mp.ordering NULLS LAST, p.primary_name
-                  LIMIT 5
-                ) AS actor_ids
-            ) ap ON TRUE
-            ORDER BY score DESC
-            LIMIT :limit
-            """;
+    public MovieJdbc(NamedParameterJdbcTemplate np,
+                     PlatformTransactionManager transactionManager,
+                     VectorSearchPlanner planner,
+                     VectorSearchProperties properties,
+                     HybridScorer scorer) {
+        this.np = np;
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.transactions.setReadOnly(true);
+        this.planner = planner;
+        this.properties = properties;
+        this.scorer = scorer;
+    }
 
-        MapSqlParameterSource p = new MapSqlParameterSource()
-                .addValue("fromYear", fromYear)
-                .addValue("toYear", toYear)
-                .addValue("runtimeMax", runtimeMax)
-                .addValue("minRating", minRating)
-                .addValue("inc", includeGenres == null ? new String[]{} : includeGenres)
-                .addValue("exc", excludeGenres == null ? new String[]{} : excludeGenres)
-                .addValue("actorNames", includeActorNames == null ? new String[]{} : includeActorNames)
-                .addValue("vec", vec)
-                .addValue("limit", limit);
-
-        RowMapper<RecoRow> mapper = new RowMapper<>() {
-            @Override public RecoRow mapRow(ResultSet rs, int rowNum) throws SQLException {
-                return new RecoRow(
-                        rs.getLong("id"),
-                        rs.getString("tconst"),
-                        rs.getString("primary_title"),
-                        rs.getObject("start_year", Short.class),
-                        rs.getObject("rating") == null ? null : rs.getDouble("rating"),
-                        rs.getObject("votes") == null ? null : rs.getInt("votes"),
-                        rs.getDouble("sim"),
-                        arrayToString(rs, "genres"),
-                        rs.getString("plot"),
-                        arrayToList(rs, "actor_names"),
-                        arrayToList(rs, "actor_ids")
-                );
+    /**
+     * Fetches the {@code limit * candidateFactor} movies nearest to {@code queryVec} and orders them
+     * by the hybrid score in Java. The cast comes from the movie row ({@code top_cast_*}).
+     *
+     * @param slot the embedding slot {@code queryVec} was embedded for (see {@code EmbeddingSlot})
+     */
+    public List<RecoRow> topN(EmbeddingSlotStore.SlotState slot, float[] queryVec, Filters filters, int limit) {
+        String where = FILTER_SQL.formatted(slot.slot().column());
+        int candidates = limit * Math.max(1, properties.getCandidateFactor());
+        return transactions.execute(status -> {
+            MapSqlParameterSource p = parameters(filters)
+                    .addValue("vec", new PGvector(queryVec));
+            VectorSearchPlanner.Strategy strategy = planner.choose(where, p, filters.restricts());
+            List<Candidate> nearest = nearest(strategy, slot, where, p, candidates);
+            if (strategy == VectorSearchPlanner.Strategy.INDEX && filters.restricts() && nearest.size() < limit) {
+                // The index scan gave up (max_scan_tuples) before enough rows passed the filter.
+                log.debug("Index search returned {} of {} rows; repeating it exactly", nearest.size(), limit);
+                nearest = nearest(VectorSearchPlanner.Strategy.EXACT, slot, where, p, candidates);
             }
-        };
+            return nearest.stream()
+                    .sorted(Comparator.comparingDouble(Candidate::score).reversed())
+                    .limit(limit)
+                    .map(Candidate::row)
+                    .toList();
+        });
+    }
+
+    private record Candidate(RecoRow row, double score) {}
+
+    private List<Candidate> nearest(VectorSearchPlanner.Strategy strategy, EmbeddingSlotStore.SlotState slot,
+                                    String where, MapSqlParameterSource p, int candidates) {
+        planner.prepare(strategy, slot, candidates);
+        String sql = CANDIDATES_SQL.formatted(planner.candidates(strategy, slot, where, p, candidates));
+        return np.query(sql, p, (rs, rowNum) -> {
+            double similarity = rs.getDouble("sim");
+            Double rating = rs.getObject("rating") == null ? null : rs.getDouble("rating");
+            Integer votes = rs.getObject("votes") == null ? null : rs.getInt("votes");
+            RecoRow row = new RecoRow(
+                    rs.getLong("id"),
+                    rs.getString("tconst"),
+                    rs.getString("primary_title"),
+                    rs.getObject("start_year", Short.class),
+                    rating,
+                    votes,
+                    similarity,
+                    arrayToString(rs, "genres"),
+                    rs.getString("plot"),
+                    arrayToList(rs, "top_cast_names"),
+                    arrayToList(rs, "top_cast_ids"));
+            return new Candidate(row, scorer.score(similarity, rating, votes));
+        });
+    }
 
-        return np.query(sql, p, mapper);
+    private static MapSqlParameterSource parameters(Filters filters) {
+        return new MapSqlParameterSource()
+                .addValue("fromYear", filters.fromYear())
+                .addValue("toYear", filters.toYear())
+                .addValue("runtimeMax", filters.runtimeMax())
+                .addValue("minRating", filters.minRating())
+                .addValue("inc", filters.includeGenres() == null ? new String[]{} : filters.includeGenres())
+                .addValue("exc", filters.excludeGenres() == null ? new String[]{} : filters.excludeGenres())
+                .addValue("actorNames", filters.actorNames() == null ? new String[]{} : filters.actorNames());
     }
 
     private static List<String> arrayToList(ResultSet rs, String column) throws SQLException {
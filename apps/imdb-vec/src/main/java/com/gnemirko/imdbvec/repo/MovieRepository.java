@@ -11,7 +11,15 @@ import java.util.Optional;
 public interface MovieRepository extends JpaRepository<Movie, Long> {
     Optional<Movie> findByTconst(String tconst);
 
-    List<Movie> findTop500ByEmbeddingModelIsNullOrderByIdAsc();
+    @Query(value = """
+            SELECT *
+            FROM movie
+            WHERE (CASE WHEN :slot = 'b' THEN embedding_b_model ELSE embedding_model END) IS NULL
+              AND id > :afterId
+            ORDER BY id ASC
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<Movie> findBatchMissingEmbedding(@Param("slot") String slot, @Param("afterId") long afterId, @Param("limit") int limit);
 
     @Query(value = """
             SELECT *
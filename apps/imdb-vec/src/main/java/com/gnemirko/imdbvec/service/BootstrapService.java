@@ -1,12 +1,19 @@
 package com.gnemirko.imdbvec.service;
 
+import com.gnemirko.imdbvec.importer.ImportCheckpointStore;
 import com.gnemirko.imdbvec.importer.ImportService;
+import com.gnemirko.imdbvec.importer.ImportStage;
+import com.gnemirko.imdbvec.importer.ImportStageResult;
+import com.gnemirko.imdbvec.importer.StaleStagingException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.CannotAcquireLockException;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
 @Service
@@ -14,52 +21,172 @@ public class BootstrapService {
 
     private static final Logger log = LoggerFactory.getLogger(BootstrapService.class);
 
+    /** A stale checkpoint can cascade (swap -> upsert -> stage-load); more than that is a real failure. */
+    private static final int MAX_STAGE_RESTARTS = 3;
+
     private final ImportService importer;
     private final EmbeddingService embeddings;
     private final VectorIndexService indexer;
+    private final EmbeddingMigrationService migrations;
     private final MovieOverviewService overviewService;
+    private final ImportCheckpointStore checkpoints;
     private final boolean skipEmbeddingsOnError;
 
     public BootstrapService(ImportService importer,
                             MovieOverviewService overviewService,
                             EmbeddingService embeddings,
                             VectorIndexService indexer,
+                            EmbeddingMigrationService migrations,
+                            ImportCheckpointStore checkpoints,
                             @Value("${app.bootstrap.skipEmbeddingsOnError:true}") boolean skipEmbeddingsOnError) {
         this.importer = importer;
+        this.checkpoints = checkpoints;
         this.overviewService = overviewService;
         this.embeddings = embeddings;
         this.indexer = indexer;
+        this.migrations = migrations;
         this.skipEmbeddingsOnError = skipEmbeddingsOnError;
     }
 
 
+    /**
+     * Runs the checkpointed pipeline. With {@code resume} an earlier run that did not finish is
+     * continued from its first incomplete stage; otherwise a fresh run starts from the download.
+     */
     @Async
-    public CompletableFuture<Void> runFullBootstrap(boolean rebuildIndex) {
+    public CompletableFuture<Void> runFullBootstrap(boolean rebuildIndex, boolean resume) {
         var future = new CompletableFuture<Void>();
+        ImportCheckpointStore.Run run = null;
         try {
-            log.info("Bootstrap job started (rebuildIndex={})", rebuildIndex);
-            importer.runFullImport();
-            try {
-                overviewService.backfillOverviews();
-            } catch (Exception ex) {
-                log.warn("TMDB overview backfill failed: {}", ex.getMessage());
-            }
-            try {
-                embeddings.backfillEmbeddings();
-            } catch (Exception ex) {
-                if (skipEmbeddingsOnError) {
-                    log.error("Embedding backfill failed; continuing without embeddings (set app.bootstrap.skipEmbeddingsOnError=false to fail).", ex);
-                } else {
-                    throw ex;
+            log.info("Bootstrap job started (rebuildIndex={}, resume={})", rebuildIndex, resume);
+            run = checkpoints.resumeOrStart(resume);
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    runStages(run, rebuildIndex);
+                    break;
+                } catch (StaleStagingException ex) {
+                    if (attempt >= MAX_STAGE_RESTARTS) {
+                        throw ex;
+                    }
+                    log.warn("Import run {}: {}; restarting from stage {}", run.id(), ex.getMessage(), ex.restartFrom().code());
+                    checkpoints.resetFrom(run, ex.restartFrom());
                 }
             }
-            if (rebuildIndex) {
-                indexer.ensureHnswIndex();
-            }
+            checkpoints.finish(run, null);
+            logReport(run);
             log.info("Bootstrap job finished successfully");
             future.complete(null);
         } catch (Exception ex) {
-            log.error("Bootstrap job failed", ex);
+            if (run == null && ex instanceof CannotAcquireLockException) {
+                log.warn("Bootstrap job not started: {}", ex.getMessage());
+            } else {
+                log.error("Bootstrap job failed", ex);
+            }
+            if (run != null) {
+                checkpoints.finish(run, ex);
+            }
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    public Optional<ImportCheckpointStore.RunReport> report(Long runId) {
+        return checkpoints.report(runId);
+    }
+
+    private void runStages(ImportCheckpointStore.Run run, boolean rebuildIndex) throws Exception {
+        checkpoints.run(run, ImportStage.DOWNLOAD, false, importer::download);
+        checkpoints.run(run, ImportStage.STAGE_LOAD, false, importer::stageLoad);
+        checkpoints.run(run, ImportStage.SELECT, true, importer::select);
+        checkpoints.run(run, ImportStage.UPSERT, true, importer::upsert);
+        checkpoints.run(run, ImportStage.PRINCIPALS, true, importer::syncPrincipals);
+        if (importer.isShadowRefresh()) {
+            checkpoints.run(run, ImportStage.SWAP, true, importer::swap);
+        }
+        try {
+            checkpoints.run(run, ImportStage.OVERVIEW, false,
+                    () -> ImportStageResult.of(overviewService.backfillOverviews()));
+        } catch (Exception ex) {
+            log.warn("TMDB overview backfill failed: {}", ex.getMessage());
+        }
+        try {
+            checkpoints.run(run, ImportStage.EMBEDDINGS, false, () -> {
+                boolean deferred = indexer.deferForBulkLoad();
+                return new ImportStageResult(embeddings.backfillEmbeddings(),
+                        deferred ? "vector index deferred for bulk build" : null);
+            });
+        } catch (Exception ex) {
+            if (skipEmbeddingsOnError) {
+                log.error("Embedding backfill failed; continuing without embeddings (set app.bootstrap.skipEmbeddingsOnError=false to fail).", ex);
+            } else {
+                try {
+                    if (!indexer.indexExists()) {
+                        indexer.ensureHnswIndex();
+                    }
+                } catch (RuntimeException indexEx) {
+                    ex.addSuppressed(indexEx);
+                }
+                throw ex;
+            }
+        }
+        // A deferred index has to come back even when the caller did not ask for a rebuild.
+        if (rebuildIndex || !indexer.indexExists()) {
+            checkpoints.run(run, ImportStage.INDEX, false, () -> {
+                VectorIndexService.IndexBuild build = indexer.ensureHnswIndex();
+                return new ImportStageResult(build.vectors(), build.describe());
+            });
+        }
+        // The active slot keeps serving whatever happens here.
+        try {
+            checkpoints.run(run, ImportStage.EMBEDDING_MIGRATION, false, () -> {
+                EmbeddingMigrationService.Migration migration = migrations.migrate();
+                return new ImportStageResult(migration.embedded(), migration.describe());
+            });
+        } catch (Exception ex) {
+            log.warn("Embedding model migration failed: {}", ex.getMessage());
+        }
+    }
+
+    private void logReport(ImportCheckpointStore.Run run) {
+        checkpoints.report(run.id()).ifPresent(report -> {
+            for (ImportCheckpointStore.StageRecord stage : report.stages()) {
+                log.info("Import run {} stage {}: {} in {} ms, {} rows{}",
+                        run.id(),
+                        stage.stage().code(),
+                        stage.status(),
+                        stage.durationMs(),
+                        stage.rows(),
+                        stage.detail() == null ? "" : " (" + stage.detail() + ")");
+            }
+            log.info("Import run {} total stage time: {} ms", run.id(), report.totalDurationMs());
+        });
+    }
+
+    @Async
+    public CompletableFuture<EmbeddingMigrationService.Migration> runEmbeddingMigration() {
+        var future = new CompletableFuture<EmbeddingMigrationService.Migration>();
+        try {
+            log.info("Embedding model migration job started");
+            EmbeddingMigrationService.Migration migration = migrations.migrate();
+            log.info("Embedding model migration job finished: {}", migration.describe());
+            future.complete(migration);
+        } catch (Exception ex) {
+            log.error("Embedding model migration job failed", ex);
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    @Async
+    public CompletableFuture<List<VectorIndexService.IndexBuild>> runQuantizationComparison() {
+        var future = new CompletableFuture<List<VectorIndexService.IndexBuild>>();
+        try {
+            log.info("Vector index quantization comparison started");
+            List<VectorIndexService.IndexBuild> results = indexer.compareQuantizations();
+            log.info("Vector index quantization comparison finished for {} quantizations", results.size());
+            future.complete(results);
+        } catch (Exception ex) {
+            log.error("Vector index quantization comparison failed", ex);
             future.completeExceptionally(ex);
         }
         return future;
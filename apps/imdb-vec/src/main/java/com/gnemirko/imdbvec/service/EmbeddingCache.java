@@ -0,0 +1,172 @@
+package com.gnemirko.imdbvec.service;
+
+import com.gnemirko.imdbvec.config.EmbeddingCacheProperties;
+import com.pgvector.PGvector;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Content-addressed store of computed embeddings in {@code embedding_cache}, keyed by model and
+ * the SHA-256 of the exact text that was embedded. A movie whose plot was refreshed to the same
+ * text, or a catalog rebuilt from scratch, is served from here instead of the model. Lookups only
+ * read; a hit refreshes {@code last_used_at} in a separate update, and only once the stamp is older
+ * than {@code app.embedding-cache.touchInterval}, so re-embedding a catalog of cached texts does not
+ * rewrite (and bloat) the whole table. {@link #evict()} trims the table back to the configured size
+ * by dropping the least recently used entries, which is therefore only exact to that interval.
+ */
+@Component
+public class EmbeddingCache {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingCache.class);
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final JdbcTemplate jdbc;
+    private final EmbeddingCacheProperties properties;
+    private final Counter hits;
+    private final Counter misses;
+
+    public EmbeddingCache(JdbcTemplate jdbc, EmbeddingCacheProperties properties, MeterRegistry meterRegistry) {
+        this.jdbc = jdbc;
+        this.properties = properties;
+        this.hits = Counter.builder("imdb.embedding.cache.requests")
+                .description("Embedding texts looked up in the embedding cache")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("imdb.embedding.cache.requests")
+                .description("Embedding texts looked up in the embedding cache")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Returns one slot per text: the cached vector, or {@code null} when the text still has to be
+     * embedded. The returned list is mutable so callers can fill in the misses.
+     */
+    public List<float[]> lookup(String model, List<String> texts) {
+        List<float[]> vectors = new ArrayList<>(Collections.nCopies(texts.size(), null));
+        if (texts.isEmpty()) {
+            return vectors;
+        }
+        List<byte[]> keys = texts.stream().map(EmbeddingCache::key).toList();
+        Map<String, float[]> found = new HashMap<>(texts.size() * 2);
+        List<String> stale = new ArrayList<>();
+        jdbc.query("""
+                        SELECT text_sha256, embedding, last_used_at < now() - ? * interval '1 second' AS stale
+                        FROM embedding_cache
+                        WHERE model = ? AND text_sha256 = ANY (?::bytea[])
+                        """,
+                (RowCallbackHandler) rs -> {
+                    String key = HEX.formatHex(rs.getBytes(1));
+                    found.put(key, ((PGvector) rs.getObject(2)).toArray());
+                    if (rs.getBoolean(3)) {
+                        stale.add("\\x" + key);
+                    }
+                },
+                touchSeconds(),
+                model,
+                keys.stream().map(key -> "\\x" + HEX.formatHex(key)).toArray(String[]::new));
+        if (!stale.isEmpty()) {
+            jdbc.update("""
+                            UPDATE embedding_cache
+                            SET last_used_at = now()
+                            WHERE model = ? AND text_sha256 = ANY (?::bytea[])
+                            """,
+                    model,
+                    stale.toArray(String[]::new));
+        }
+
+        int hitCount = 0;
+        for (int i = 0; i < texts.size(); i++) {
+            float[] vector = found.get(HEX.formatHex(keys.get(i)));
+            if (vector != null) {
+                vectors.set(i, vector);
+                hitCount++;
+            }
+        }
+        hits.increment(hitCount);
+        misses.increment(texts.size() - hitCount);
+        return vectors;
+    }
+
+    /** Remembers freshly computed vectors; {@code texts} and {@code vectors} line up by index. */
+    public void store(String model, List<String> texts, List<float[]> vectors) {
+        if (texts.isEmpty()) {
+            return;
+        }
+        List<Integer> slots = new ArrayList<>(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            slots.add(i);
+        }
+        jdbc.batchUpdate("""
+                        INSERT INTO embedding_cache (model, text_sha256, embedding)
+                        VALUES (?, ?, ?)
+                        ON CONFLICT (model, text_sha256) DO UPDATE
+                          SET embedding = EXCLUDED.embedding,
+                              last_used_at = now()
+                        """,
+                slots,
+                100,
+                (ps, i) -> {
+                    ps.setString(1, model);
+                    ps.setBytes(2, key(texts.get(i)));
+                    ps.setObject(3, new PGvector(vectors.get(i)));
+                });
+    }
+
+    /**
+     * Deletes the least recently used entries beyond {@code maxEntries}.
+     *
+     * @return number of entries removed
+     */
+    public int evict() {
+        long maxEntries = properties.getMaxEntries();
+        if (!isEnabled() || maxEntries <= 0) {
+            return 0;
+        }
+        int evicted = jdbc.update("""
+                DELETE FROM embedding_cache c
+                USING (
+                    SELECT model, text_sha256
+                    FROM embedding_cache
+                    ORDER BY last_used_at DESC
+                    OFFSET ?
+                ) stale
+                WHERE c.model = stale.model AND c.text_sha256 = stale.text_sha256
+                """, maxEntries);
+        if (evicted > 0) {
+            log.info("Evicted {} least recently used embedding cache entries (maxEntries={})", evicted, maxEntries);
+        }
+        return evicted;
+    }
+
+    private long touchSeconds() {
+        return Math.max(0, properties.getTouchInterval().toSeconds());
+    }
+
+    static byte[] key(String text) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+}
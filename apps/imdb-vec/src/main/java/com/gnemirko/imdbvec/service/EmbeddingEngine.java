@@ -0,0 +1,18 @@
+package com.gnemirko.imdbvec.service;
+
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Computes the vectors {@link EmbeddingService} stores and searches with. {@code app.embedding.engine}
+ * selects {@link OllamaEmbeddingEngine} ({@code ollama}, the default) or {@link OnnxEmbeddingEngine}
+ * ({@code onnx}).
+ */
+public interface EmbeddingEngine {
+
+    float[] embed(String text, String model);
+
+    /** One vector per text, in input order. */
+    Mono<List<float[]>> embedBatch(List<String> texts, String model);
+}
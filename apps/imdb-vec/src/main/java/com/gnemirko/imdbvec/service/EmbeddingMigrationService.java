@@ -0,0 +1,73 @@
+package com.gnemirko.imdbvec.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+
+/**
+ * Moves searches to {@code app.ollama.embeddingModel} when it differs from the model of the active
+ * slot. The idle slot is filled with the new model while the active one keeps serving; once every
+ * movie has a new vector the slot's HNSW index is built in bulk and searches are cut over. A run
+ * that ends with movies still missing leaves the slot filling, and the next run continues it.
+ */
+@Service
+public class EmbeddingMigrationService {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingMigrationService.class);
+
+    private final EmbeddingSlotStore slots;
+    private final EmbeddingService embeddings;
+    private final VectorIndexService indexer;
+    private final String targetModel;
+    private final int targetDims;
+
+    public EmbeddingMigrationService(EmbeddingSlotStore slots,
+                                     EmbeddingService embeddings,
+                                     VectorIndexService indexer,
+                                     @Value("${app.ollama.embeddingModel:nomic-embed-text}") String targetModel,
+                                     @Value("${app.ollama.embeddingDims:768}") int targetDims) {
+        this.slots = slots;
+        this.embeddings = embeddings;
+        this.indexer = indexer;
+        this.targetModel = targetModel;
+        this.targetDims = targetDims;
+    }
+
+    /** Outcome of {@link #migrate()}; {@code slot} is null when no migration was needed. */
+    public record Migration(String model, EmbeddingSlot slot, long embedded, long missing, boolean cutOver, String index) {
+
+        public String describe() {
+            if (slot == null) {
+                return "active model " + model + " is current";
+            }
+            return cutOver
+                    ? "cut over to %s in slot %s, index %s".formatted(model, slot.code(), index)
+                    : "%d movies still without a %s vector; slot %s keeps filling".formatted(missing, model, slot.code());
+        }
+    }
+
+    public Migration migrate() {
+        Optional<EmbeddingSlotStore.SlotState> prepared = slots.prepareMigration(targetModel, targetDims);
+        if (prepared.isEmpty()) {
+            return new Migration(targetModel, null, 0, 0, false, null);
+        }
+        EmbeddingSlotStore.SlotState filling = prepared.get();
+        log.info("Filling embedding slot {} with {} while {} keeps serving searches",
+                filling.slot().code(), filling.model(), slots.active().model());
+
+        long embedded = embeddings.backfillEmbeddings(filling);
+        long missing = slots.missing(filling);
+        if (missing > 0) {
+            Migration migration = new Migration(targetModel, filling.slot(), embedded, missing, false, null);
+            log.warn("Embedding migration not finished: {}", migration.describe());
+            return migration;
+        }
+
+        VectorIndexService.IndexBuild build = indexer.ensureHnswIndex(filling);
+        slots.cutOver(filling);
+        return new Migration(targetModel, filling.slot(), embedded, 0, true, build.describe());
+    }
+}
@@ -2,142 +2,240 @@ package com.gnemirko.imdbvec.service;
 
 import com.gnemirko.imdbvec.model.Movie;
 import com.gnemirko.imdbvec.repo.MovieRepository;
+import com.pgvector.PGvector;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.Data;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.http.MediaType;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.reactive.function.client.WebClient;
-import org.springframework.web.reactive.function.client.WebClientRequestException;
-import org.springframework.web.reactive.function.client.WebClientResponseException;
-import reactor.util.retry.Retry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SynchronousSink;
+import reactor.core.scheduler.Schedulers;
 
 import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.util.*;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 /**
- * EmbeddingService implemented via the local Ollama Embeddings API.
+ * Query and catalog embeddings. The vectors come from an {@link EmbeddingEngine}: Ollama over HTTP
+ * by default, or an in-process ONNX model with {@code app.embedding.engine=onnx}.
  * Public API stays the same: float[] embed(String text)
  *
- * Requires Ollama running locally and an embedding model pulled, e.g.:
- *   ollama pull nomic-embed-text
- * API ref: https://docs.ollama.com/api  (see /api/embeddings)
+ * The catalog backfill embeds movies in batches of {@code app.ollama.embeddingBatchSize}, up to
+ * {@code app.ollama.embeddingConcurrency} batches are in flight at once, and finished batches are
+ * written while later ones are still being embedded.
+ *
+ * Vectors go to an {@link EmbeddingSlot}: by default the active one, whose model is also used for
+ * query embeddings, or the slot an {@link EmbeddingMigrationService} is filling with a new model.
  */
 @Service
 public class EmbeddingService {
 
     private static final Logger log = LoggerFactory.getLogger(EmbeddingService.class);
+    private static final Duration PROGRESS_INTERVAL = Duration.ofSeconds(10);
 
-    private final WebClient web;
-    private final String model;
-    private final String baseUrl;
     private final MovieRepository movies;
     private final JdbcTemplate jdbc;
-    private final int maxRetries;
-    private final Duration retryDelay;
+    private final EmbeddingCache cache;
+    private final EmbeddingSlotStore slots;
+    private final EmbeddingEngine engine;
+    private final int batchSize;
+    private final int concurrency;
+    private final int pageSize;
+    private final Counter embeddedTitles;
+    private final Timer batchLatency;
+    private volatile double titlesPerSecond;
 
     public EmbeddingService(
-            @Value("${app.ollama.baseUrl:http://localhost:11434}") String baseUrl,
-            @Value("${app.ollama.embeddingModel:nomic-embed-text}") String model,
-            @Value("${app.ollama.embeddingMaxRetries:3}") int maxRetries,
-            @Value("${app.ollama.embeddingRetryDelay:PT5S}") Duration retryDelay,
+            @Value("${app.ollama.embeddingBatchSize:32}") int batchSize,
+            @Value("${app.ollama.embeddingConcurrency:4}") int concurrency,
+            @Value("${app.ollama.embeddingPageSize:512}") int pageSize,
             MovieRepository movies,
-            JdbcTemplate jdbc
+            JdbcTemplate jdbc,
+            EmbeddingCache cache,
+            EmbeddingSlotStore slots,
+            EmbeddingEngine engine,
+            MeterRegistry meterRegistry
     ) {
-        this.baseUrl = baseUrl;
-        this.web = WebClient.builder()
-                .baseUrl(baseUrl)
-                .codecs(c -> c.defaultCodecs().maxInMemorySize(32 * 1024 * 1024))
-                .build();
-        this.model = model;
         this.movies = movies;
         this.jdbc = jdbc;
-        this.maxRetries = Math.max(1, maxRetries);
-        this.retryDelay = retryDelay.isNegative() ? Duration.ZERO : retryDelay;
+        this.cache = cache;
+        this.slots = slots;
+        this.engine = engine;
+        this.batchSize = Math.max(1, batchSize);
+        this.concurrency = Math.max(1, concurrency);
+        this.pageSize = Math.max(this.batchSize, pageSize);
+        this.embeddedTitles = Counter.builder("imdb.embedding.backfill.titles")
+                .description("Movies embedded by the catalog backfill")
+                .register(meterRegistry);
+        this.batchLatency = Timer.builder("imdb.embedding.batch.latency")
+                .description("Round trip of one embedding batch")
+                .register(meterRegistry);
+        Gauge.builder("imdb.embedding.backfill.throughput", this, service -> service.titlesPerSecond)
+                .description("Titles per second of the running (or last) backfill")
+                .baseUnit("titles/s")
+                .register(meterRegistry);
     }
 
-    /** Compute a single embedding vector for the given text. */
+    /** Compute a single embedding vector for the given text with the model of the active slot. */
     public float[] embed(String text) {
-        Map<String, Object> request = Map.of(
-                "model", model,
-                "prompt", text == null ? "" : text,
-                "stream", false
-        );
-        Duration backoff = retryDelay.isZero() ? Duration.ofMillis(250) : retryDelay;
-        int attempts = Math.max(1, maxRetries);
-        Retry retrySpec = Retry.backoff(Math.max(1, attempts), backoff)
-                .filter(this::isRetryableException)
-                .doBeforeRetry(signal -> log.warn(
-                        "Embedding retry {}/{} after {} due to {}",
-                        signal.totalRetries() + 1,
-                        attempts,
-                        backoff,
-                        signal.failure() == null ? "unknown error" : signal.failure().getMessage()))
-                .onRetryExhaustedThrow((spec, signal) ->
-                        signal.failure() != null ? signal.failure() : new IllegalStateException("Embedding retries exhausted"));
+        return embed(text, slots.active().model());
+    }
 
-        try {
-            Map<String, Object> response = web.post()
-                    .uri("/api/embeddings")
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .bodyValue(request)
-                    .retrieve()
-                    .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {})
-                    .retryWhen(retrySpec)
-                    .block();
+    public float[] embed(String text, String model) {
+        return engine.embed(text, model);
+    }
 
-            if (response == null || !response.containsKey("embedding")) {
-                throw new IllegalStateException("Ollama embeddings API returned no 'embedding'. " +
-                        "Check that Ollama is running and the model is pulled: " + model);
+    /** Embeddings of several texts in one engine call, in input order. */
+    public Mono<List<float[]>> embedBatch(List<String> texts, String model) {
+        return engine.embedBatch(texts, model)
+                .elapsed()
+                .map(timed -> {
+                    batchLatency.record(Duration.ofMillis(timed.getT1()));
+                    return timed.getT2();
+                });
+    }
+
+    /** Backfill the active slot. */
+    public long backfillEmbeddings() {
+        return backfillEmbeddings(slots.active());
+    }
+
+    /**
+     * Backfill embeddings of the slot's model for movies without a vector in that slot.
+     * Pages through the catalog by id so rows still in flight are never fetched twice.
+     *
+     * @return number of movies that were embedded
+     */
+    public long backfillEmbeddings(EmbeddingSlotStore.SlotState target) {
+        String model = target.model();
+        long start = System.nanoTime();
+        AtomicLong embedded = new AtomicLong();
+        AtomicLong lastReport = new AtomicLong(start);
+        titlesPerSecond = 0;
+
+        Flux<List<Movie>> pages = Flux.generate(() -> 0L, (Long cursor, SynchronousSink<List<Movie>> sink) -> {
+            List<Movie> page = movies.findBatchMissingEmbedding(target.slot().code(), cursor, pageSize);
+            if (page.isEmpty()) {
+                sink.complete();
+                return cursor;
             }
+            sink.next(page);
+            return page.get(page.size() - 1).getId();
+        });
 
-            @SuppressWarnings("unchecked")
-            List<Number> v = (List<Number>) response.get("embedding");
-            float[] out = new float[v.size()];
-            for (int i = 0; i < v.size(); i++) out[i] = v.get(i).floatValue();
-            return out;
-        } catch (WebClientResponseException.NotFound nf) {
-            throw new IllegalStateException("Ollama returned 404 for embeddings. Ensure the embedding model '" + model + "' is pulled and that " + baseUrl + "/api/embeddings is reachable.", nf);
-        } catch (RuntimeException ex) {
-            throw new IllegalStateException("Failed to fetch embedding after " + attempts + " attempts", ex);
-        }
+        Long total = pages
+                .concatMapIterable(this::partition)
+                .map(batch -> new PendingBatch(batch, buildEmbeddingTexts(batch)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(pending -> embedCached(pending.texts(), model).map(vectors -> pending.attach(vectors, model)), concurrency, 1)
+                .concatMap(batch -> Mono.fromCallable(() -> {
+                    persistBatch(batch, target);
+                    return (long) batch.size();
+                }).subscribeOn(Schedulers.boundedElastic()), 1)
+                .doOnNext(count -> {
+                    embeddedTitles.increment(count);
+                    long done = embedded.addAndGet(count);
+                    long now = System.nanoTime();
+                    titlesPerSecond = done / Math.max(1e-3, (now - start) / 1e9);
+                    long previous = lastReport.get();
+                    if (now - previous >= PROGRESS_INTERVAL.toNanos() && lastReport.compareAndSet(previous, now)) {
+                        log.info("Embedding backfill: {} movies embedded ({} titles/s)",
+                                done, String.format(Locale.ROOT, "%.1f", titlesPerSecond));
+                    }
+                })
+                .reduce(0L, Long::sum)
+                .block();
 
+        long count = total == null ? 0 : total;
+        cache.evict();
+        log.info("Embedding backfill of slot {} ({}) complete; {} movies embedded in {} ms ({} titles/s, batchSize={}, concurrency={}).",
+                target.slot().code(),
+                model,
+                count,
+                Duration.ofNanos(System.nanoTime() - start).toMillis(),
+                String.format(Locale.ROOT, "%.1f", titlesPerSecond),
+                batchSize,
+                concurrency);
+        return count;
     }
+
     /**
-     * Backfill embeddings for movies without a vector.
-     * Processes records in bounded batches to avoid loading the entire catalog.
+     * Serves what it can from the {@link EmbeddingCache} and sends only the remaining texts to
+     * the engine; their vectors are cached before the batch moves on.
      */
-    public void backfillEmbeddings() {
-        while (true) {
-            List<Movie> batch = movies.findTop500ByEmbeddingModelIsNullOrderByIdAsc();
-            if (batch.isEmpty()) {
-                log.info("Embedding backfill complete; all records processed.");
-                return;
-            }
+    private Mono<List<float[]>> embedCached(List<String> texts, String model) {
+        if (!cache.isEnabled()) {
+            return embedBatch(texts, model);
+        }
+        return Mono.fromCallable(() -> cache.lookup(model, texts))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(vectors -> {
+                    List<Integer> missing = new ArrayList<>();
+                    for (int i = 0; i < vectors.size(); i++) {
+                        if (vectors.get(i) == null) {
+                            missing.add(i);
+                        }
+                    }
+                    if (missing.isEmpty()) {
+                        return Mono.just(vectors);
+                    }
+                    List<String> missingTexts = missing.stream().map(texts::get).toList();
+                    return embedBatch(missingTexts, model)
+                            .publishOn(Schedulers.boundedElastic())
+                            .map(computed -> {
+                                cache.store(model, missingTexts, computed);
+                                for (int i = 0; i < missing.size(); i++) {
+                                    vectors.set(missing.get(i), computed.get(i));
+                                }
+                                return vectors;
+                            });
+                });
+    }
+
+    private record PendingBatch(List<Movie> movies, List<String> texts) {
 
-            List<Movie> toSave = new ArrayList<>(batch.size());
-            log.info("Embedding backfill processing {} movies", batch.size());
-            for (Movie movie : batch) {
-                String text = buildEmbeddingText(movie);
-                float[] vector = embed(text);
-                movie.setEmbedding(vector);
+        List<Movie> attach(List<float[]> vectors, String model) {
+            OffsetDateTime now = OffsetDateTime.now();
+            for (int i = 0; i < movies.size(); i++) {
+                Movie movie = movies.get(i);
+                movie.setEmbedding(vectors.get(i));
                 movie.setEmbeddingModel(model);
-                movie.setEmbeddingUpdatedAt(OffsetDateTime.now());
-                toSave.add(movie);
+                movie.setEmbeddingUpdatedAt(now);
             }
+            return movies;
+        }
+    }
 
-            persistBatch(toSave);
+    private List<List<Movie>> partition(List<Movie> page) {
+        List<List<Movie>> batches = new ArrayList<>((page.size() + batchSize - 1) / batchSize);
+        for (int from = 0; from < page.size(); from += batchSize) {
+            batches.add(page.subList(from, Math.min(page.size(), from + batchSize)));
         }
+        return batches;
     }
 
-    private String buildEmbeddingText(Movie movie) {
+    /** Builds the texts of a whole batch; the top actors of all its movies come from one query. */
+    private List<String> buildEmbeddingTexts(List<Movie> batch) {
+        Map<Long, List<String>> actors = fetchTopActors(batch);
+        List<String> texts = new ArrayList<>(batch.size());
+        for (Movie movie : batch) {
+            texts.add(buildEmbeddingText(movie, actors.getOrDefault(movie.getId(), List.of())));
+        }
+        return texts;
+    }
+
+    private String buildEmbeddingText(Movie movie, List<String> actors) {
         StringBuilder sb = new StringBuilder();
         String title = firstNonBlank(movie.getPrimaryTitle(), movie.getOriginalTitle(), movie.getTconst());
         sb.append(title);
@@ -172,7 +270,6 @@ public class EmbeddingService {
             sb.append("\n").append(String.join("; ", details));
         }
 
-        List<String> actors = fetchTopActors(movie.getId());
         if (!actors.isEmpty()) {
             sb.append("\nActors: ").append(String.join(", ", actors));
         }
@@ -184,17 +281,25 @@ public class EmbeddingService {
     }
 
     @Transactional
-    void persistBatch(List<Movie> batch) {
+    void persistBatch(List<Movie> batch, EmbeddingSlotStore.SlotState target) {
+        EmbeddingSlot slot = target.slot();
+        for (Movie movie : batch) {
+            float[] embedding = movie.getEmbedding();
+            if (embedding != null && target.dims() != null && embedding.length != target.dims()) {
+                throw new IllegalStateException("Model %s returned %d-dimensional vectors but slot %s expects %d (app.ollama.embeddingDims)"
+                        .formatted(target.model(), embedding.length, slot.code(), target.dims()));
+            }
+        }
         jdbc.batchUpdate(
-                "UPDATE movie SET embedding = CAST(? AS vector), embedding_model = ?, embedding_updated_at = ? WHERE id = ?",
+                "UPDATE movie SET %s = ?, %s = ?, %s = ? WHERE id = ?"
+                        .formatted(slot.column(), slot.modelColumn(), slot.updatedAtColumn()),
                 batch,
                 100,
                 (ps, movie) -> {
-                    String literal = toVectorLiteral(movie.getEmbedding());
-                    if (literal == null) {
+                    if (movie.getEmbedding() == null) {
                         ps.setNull(1, java.sql.Types.OTHER);
                     } else {
-                        ps.setString(1, literal);
+                        ps.setObject(1, new PGvector(movie.getEmbedding()));
                     }
                     ps.setString(2, movie.getEmbeddingModel());
                     ps.setObject(3, movie.getEmbeddingUpdatedAt());
@@ -203,18 +308,6 @@ public class EmbeddingService {
         );
     }
 
-    private String toVectorLiteral(float[] embedding) {
-        if (embedding == null) return null;
-        StringBuilder sb = new StringBuilder(embedding.length * 8);
-        sb.append('[');
-        for (int i = 0; i < embedding.length; i++) {
-            if (i > 0) sb.append(',');
-            sb.append(embedding[i]);
-        }
-        sb.append(']');
-        return sb.toString();
-    }
-
     private String describeYears(Short startYear, Short endYear) {
         if (startYear == null && endYear == null) {
             return "";
@@ -241,29 +334,32 @@ public class EmbeddingService {
         return "";
     }
 
-    private boolean isRetryableException(Throwable throwable) {
-        if (throwable instanceof WebClientResponseException response) {
-            return response.getStatusCode().is5xxServerError();
-        }
-        return throwable instanceof WebClientRequestException || throwable instanceof TimeoutException;
-    }
-
-    private List<String> fetchTopActors(Long movieId) {
-        if (movieId == null) {
-            return List.of();
+    /** Up to five actors per movie, in billing order, keyed by movie id. */
+    private Map<Long, List<String>> fetchTopActors(List<Movie> batch) {
+        Long[] ids = batch.stream().map(Movie::getId).filter(Objects::nonNull).toArray(Long[]::new);
+        Map<Long, List<String>> actors = new HashMap<>(ids.length * 2);
+        if (ids.length == 0) {
+            return actors;
         }
-        return jdbc.query(
+        jdbc.query(
                 """
-                        SELECT p.primary_name
-                        FROM movie_principal mp
-                        JOIN person p ON p.id = mp.person_id
-                        WHERE mp.movie_id = ? AND mp.category IN ('actor','actress')
-                        ORDER BY mp.ordering NULLS LAST, p.primary_name
-                        LIMIT 5
+                        SELECT ranked.movie_id, ranked.primary_name
+                        FROM (
+                            SELECT mp.movie_id,
+                                   p.primary_name,
+                                   row_number() OVER (PARTITION BY mp.movie_id
+                                                      ORDER BY mp.ordering NULLS LAST, p.primary_name) AS rank
+                            FROM movie_principal mp
+                            JOIN person p ON p.id = mp.person_id
+                            WHERE mp.movie_id = ANY (?) AND mp.category IN ('actor','actress')
+                        ) ranked
+                        WHERE ranked.rank <= 5
+                        ORDER BY ranked.movie_id, ranked.rank
                         """,
-                (rs, rowNum) -> rs.getString(1),
-                movieId
+                (RowCallbackHandler) rs -> actors.computeIfAbsent(rs.getLong(1), id -> new ArrayList<>(5)).add(rs.getString(2)),
+                (Object) ids
         );
+        return actors;
     }
 
     private String normalizePlot(String plot) {
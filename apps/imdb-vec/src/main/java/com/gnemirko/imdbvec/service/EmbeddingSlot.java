@@ -0,0 +1,58 @@
+package com.gnemirko.imdbvec.service;
+
+/**
+ * The two sets of embedding columns on {@code movie}. One slot serves searches while the other
+ * can be filled with a different model; see {@link EmbeddingSlotStore}.
+ */
+public enum EmbeddingSlot {
+    A("a", "embedding", "embedding_model", "embedding_updated_at", "idx_movie_embedding_hnsw"),
+    B("b", "embedding_b", "embedding_b_model", "embedding_b_updated_at", "idx_movie_embedding_b_hnsw");
+
+    private final String code;
+    private final String column;
+    private final String modelColumn;
+    private final String updatedAtColumn;
+    private final String indexName;
+
+    EmbeddingSlot(String code, String column, String modelColumn, String updatedAtColumn, String indexName) {
+        this.code = code;
+        this.column = column;
+        this.modelColumn = modelColumn;
+        this.updatedAtColumn = updatedAtColumn;
+        this.indexName = indexName;
+    }
+
+    /** Value of {@code embedding_model_state.slot}. */
+    public String code() {
+        return code;
+    }
+
+    public String column() {
+        return column;
+    }
+
+    public String modelColumn() {
+        return modelColumn;
+    }
+
+    public String updatedAtColumn() {
+        return updatedAtColumn;
+    }
+
+    public String indexName() {
+        return indexName;
+    }
+
+    public EmbeddingSlot other() {
+        return this == A ? B : A;
+    }
+
+    public static EmbeddingSlot fromCode(String code) {
+        for (EmbeddingSlot slot : values()) {
+            if (slot.code.equals(code)) {
+                return slot;
+            }
+        }
+        throw new IllegalArgumentException("Unknown embedding slot: " + code);
+    }
+}
@@ -0,0 +1,188 @@
+package com.gnemirko.imdbvec.service;
+
+import com.gnemirko.common.vector.VectorQuantization;
+import com.gnemirko.common.vector.VectorSlot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Which embedding slot serves searches and which (if any) is being filled with another model, as
+ * recorded in {@code embedding_model_state}. A cut-over only flips the state rows; the retired slot
+ * keeps its vectors until the next migration claims it, so a reader that still holds the old state
+ * for a moment gets consistent results.
+ */
+@Component
+public class EmbeddingSlotStore {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingSlotStore.class);
+
+    static final String ACTIVE = "ACTIVE";
+    static final String FILLING = "FILLING";
+    static final String RETIRED = "RETIRED";
+    static final String EMPTY = "EMPTY";
+
+    private static final Duration ACTIVE_TTL = Duration.ofSeconds(30);
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transactions;
+    private final String configuredModel;
+
+    private volatile SlotState cachedActive;
+    private volatile long cachedAtNanos;
+
+    public EmbeddingSlotStore(JdbcTemplate jdbc,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${app.ollama.embeddingModel:nomic-embed-text}") String configuredModel) {
+        this.jdbc = jdbc;
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.configuredModel = configuredModel;
+    }
+
+    /** {@code quantization} is how the slot's HNSW index was last built. */
+    public record SlotState(EmbeddingSlot slot, String model, Integer dims, String status, VectorQuantization quantization)
+            implements VectorSlot {
+
+        public SlotState(EmbeddingSlot slot, String model, Integer dims, String status) {
+            this(slot, model, dims, status, VectorQuantization.NONE);
+        }
+
+        @Override
+        public String column(String alias) {
+            return alias == null ? slot.column() : alias + "." + slot.column();
+        }
+
+        /** The expression an index with {@code quantization} is built on for this slot. */
+        public String indexExpression(VectorQuantization quantization, String alias) {
+            return quantization.indexExpression(column(alias), dims);
+        }
+
+        public SlotState withQuantization(VectorQuantization quantization) {
+            return new SlotState(slot, model, dims, status, quantization);
+        }
+    }
+
+    /**
+     * The slot searches read and the model their queries have to be embedded with. Cached for a
+     * few seconds; a catalog that was never embedded adopts {@code app.ollama.embeddingModel}.
+     */
+    public SlotState active() {
+        SlotState cached = cachedActive;
+        if (cached != null && System.nanoTime() - cachedAtNanos < ACTIVE_TTL.toNanos()) {
+            return cached;
+        }
+        SlotState state = find(ACTIVE).orElseThrow(() ->
+                new IllegalStateException("embedding_model_state has no ACTIVE slot"));
+        if (state.model() == null) {
+            jdbc.update("UPDATE embedding_model_state SET model = ?, updated_at = now() WHERE slot = ? AND model IS NULL",
+                    configuredModel, state.slot().code());
+            state = new SlotState(state.slot(), configuredModel, state.dims(), state.status(), state.quantization());
+        }
+        cachedActive = state;
+        cachedAtNanos = System.nanoTime();
+        return state;
+    }
+
+    public Optional<SlotState> filling() {
+        return find(FILLING);
+    }
+
+    /**
+     * Makes sure the idle slot is being filled with {@code model} when the active slot uses a
+     * different one. Claiming the slot drops its index and clears its columns; a filling slot for
+     * another model is abandoned. Nothing here locks {@code movie} beyond its rows.
+     *
+     * @return the slot to fill, or empty when the active slot already uses {@code model}
+     */
+    public Optional<SlotState> prepareMigration(String model, int dims) {
+        invalidate();
+        SlotState active = active();
+        Optional<SlotState> filling = filling();
+        if (model.equals(active.model())) {
+            filling.ifPresent(abandoned -> {
+                setStatus(abandoned.slot(), EMPTY);
+                log.info("Abandoned migration to embedding model {} in slot {}; {} is active again",
+                        abandoned.model(), abandoned.slot().code(), model);
+            });
+            return Optional.empty();
+        }
+        if (filling.isPresent() && model.equals(filling.get().model()) && Integer.valueOf(dims).equals(filling.get().dims())) {
+            return filling;
+        }
+
+        EmbeddingSlot target = active.slot().other();
+        transactions.executeWithoutResult(status -> {
+            jdbc.execute("DROP INDEX IF EXISTS " + target.indexName());
+            jdbc.update("""
+                    UPDATE movie
+                    SET %1$s = NULL, %2$s = NULL, %3$s = NULL
+                    WHERE %1$s IS NOT NULL OR %2$s IS NOT NULL
+                    """.formatted(target.column(), target.modelColumn(), target.updatedAtColumn()));
+            jdbc.update("""
+                    UPDATE embedding_model_state
+                    SET model = ?, dims = ?, status = ?, updated_at = now()
+                    WHERE slot = ?
+                    """, model, dims, FILLING, target.code());
+        });
+        log.info("Embedding slot {} claimed for model {} ({} dims); slot {} keeps serving {}",
+                target.code(), model, dims, active.slot().code(), active.model());
+        return Optional.of(new SlotState(target, model, dims, FILLING));
+    }
+
+    /** Movies of the catalog that have no vector of {@code state}'s model yet. */
+    public long missing(SlotState state) {
+        Long missing = jdbc.queryForObject(
+                "SELECT COUNT(*) FROM movie WHERE %s IS DISTINCT FROM ?".formatted(state.slot().modelColumn()),
+                Long.class, state.model());
+        return missing == null ? 0 : missing;
+    }
+
+    /** Makes {@code filling} the slot searches read; the previous one is retired. */
+    public void cutOver(SlotState filling) {
+        transactions.executeWithoutResult(status -> {
+            jdbc.update("UPDATE embedding_model_state SET status = ?, updated_at = now() WHERE status = ?", RETIRED, ACTIVE);
+            int updated = jdbc.update("UPDATE embedding_model_state SET status = ?, updated_at = now() WHERE slot = ? AND status = ?",
+                    ACTIVE, filling.slot().code(), FILLING);
+            if (updated != 1) {
+                throw new IllegalStateException("Embedding slot " + filling.slot().code() + " is no longer being filled");
+            }
+        });
+        invalidate();
+        log.info("Embedding slot {} with model {} is now active", filling.slot().code(), filling.model());
+    }
+
+    /** Records how the slot's HNSW index is quantized, once it has been (re)built. */
+    public void recordQuantization(EmbeddingSlot slot, VectorQuantization quantization) {
+        jdbc.update("UPDATE embedding_model_state SET index_quantization = ?, updated_at = now() WHERE slot = ?",
+                quantization.code(), slot.code());
+        invalidate();
+    }
+
+    void invalidate() {
+        cachedActive = null;
+    }
+
+    private void setStatus(EmbeddingSlot slot, String status) {
+        jdbc.update("UPDATE embedding_model_state SET status = ?, updated_at = now() WHERE slot = ?", status, slot.code());
+    }
+
+    private Optional<SlotState> find(String status) {
+        return jdbc.query("SELECT slot, model, dims, status, index_quantization FROM embedding_model_state WHERE status = ?",
+                STATE_MAPPER, status).stream().findFirst();
+    }
+
+    private static final RowMapper<SlotState> STATE_MAPPER = (rs, rowNum) -> new SlotState(
+            EmbeddingSlot.fromCode(rs.getString("slot")),
+            rs.getString("model"),
+            (Integer) rs.getObject("dims"),
+            rs.getString("status"),
+            VectorQuantization.fromCode(rs.getString("index_quantization")));
+}
@@ -0,0 +1,29 @@
+package com.gnemirko.imdbvec.service;
+
+import com.gnemirko.imdbvec.config.RecommendProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hybrid relevance of a search candidate: its vector similarity blended with how well rated and
+ * how widely voted the title is, weighted by {@code app.recommend.*Weight}. Scoring happens in
+ * Java over the nearest candidates only, so the database can order by distance through the index.
+ */
+@Component
+public class HybridScorer {
+
+    private final double similarityWeight;
+    private final double ratingWeight;
+    private final double votesWeight;
+
+    public HybridScorer(RecommendProperties properties) {
+        this.similarityWeight = properties.getSimilarityWeight();
+        this.ratingWeight = properties.getRatingWeight();
+        this.votesWeight = properties.getVotesWeight();
+    }
+
+    public double score(double similarity, Double rating, Integer votes) {
+        double ratingPart = rating == null ? 0 : Math.min(Math.max(rating, 0) / 10.0, 1.0);
+        double votesPart = Math.log10(Math.max(votes == null ? 0 : votes, 1));
+        return similarityWeight * similarity + ratingWeight * ratingPart + votesWeight * votesPart;
+    }
+}
@@ -34,14 +34,17 @@ public class MovieOverviewService {
         this.properties = properties;
     }
 
-    public void backfillOverviews() {
-        backfillOverviews(null, null);
+    public long backfillOverviews() {
+        return backfillOverviews(null, null);
     }
 
-    public void backfillOverviews(Long maxUpdatesOverride, Integer batchSizeOverride) {
+    /**
+     * @return number of movie plots that were updated
+     */
+    public long backfillOverviews(Long maxUpdatesOverride, Integer batchSizeOverride) {
         if (!tmdbClient.isEnabled()) {
             log.info("TMDB overview import disabled or API key missing; skipping plot backfill.");
-            return;
+            return 0;
         }
         long appliedMaxUpdates = maxUpdatesOverride != null && maxUpdatesOverride > 0 ? maxUpdatesOverride : Math.max(0, properties.getMaxUpdates());
         int appliedBatchSize = batchSizeOverride != null && batchSizeOverride > 0 ? batchSizeOverride : Math.max(1, properties.getBatchSize());
@@ -92,12 +95,19 @@ public class MovieOverviewService {
             }
         }
         log.info("TMDB overview backfill finished. Movies updated: {}", totalUpdated);
+        return totalUpdated;
     }
 
     @Transactional
     void persistPlots(List<Movie> movies) {
         jdbcTemplate.batchUpdate(
-                "UPDATE movie SET plot = ?, embedding = NULL, embedding_model = NULL, embedding_updated_at = ? WHERE id = ?",
+                """
+                        UPDATE movie
+                        SET plot = ?,
+                            embedding = NULL, embedding_model = NULL, embedding_updated_at = ?,
+                            embedding_b = NULL, embedding_b_model = NULL, embedding_b_updated_at = NULL
+                        WHERE id = ?
+                        """,
                 movies,
                 100,
                 (ps, movie) -> {
@@ -0,0 +1,96 @@
+package com.gnemirko.imdbvec.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streams the vectors out of Ollama embedding responses straight into {@code float[]}s. Binding the
+ * body to {@code Map<String, Object>} first boxed every component as a {@code Double} inside a
+ * {@code List}, which during a backfill was most of the garbage the importer produced.
+ * Fields other than the vectors are skipped without being materialized.
+ */
+final class OllamaEmbeddingDecoder {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final int dimsHint;
+
+    /** {@code dimsHint} sizes the buffer of each vector up front; longer vectors still grow it. */
+    OllamaEmbeddingDecoder(int dimsHint) {
+        this.dimsHint = Math.max(0, dimsHint);
+    }
+
+    /** The {@code embedding} of an /api/embeddings response, or {@code null} if it has none. */
+    float[] readEmbedding(InputStream body) throws IOException {
+        try (JsonParser parser = JSON.createParser(body)) {
+            float[] embedding = null;
+            for (JsonToken value = enterField(parser); value != null; value = nextField(parser)) {
+                if (value == JsonToken.START_ARRAY && "embedding".equals(parser.currentName())) {
+                    embedding = readVector(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return embedding;
+        }
+    }
+
+    /** The {@code embeddings} of an /api/embed response in input order, or {@code null} if it has none. */
+    List<float[]> readEmbeddings(InputStream body) throws IOException {
+        try (JsonParser parser = JSON.createParser(body)) {
+            List<float[]> embeddings = null;
+            for (JsonToken value = enterField(parser); value != null; value = nextField(parser)) {
+                if (value == JsonToken.START_ARRAY && "embeddings".equals(parser.currentName())) {
+                    embeddings = new ArrayList<>();
+                    JsonToken token;
+                    while ((token = parser.nextToken()) == JsonToken.START_ARRAY) {
+                        embeddings.add(readVector(parser));
+                    }
+                    if (token != JsonToken.END_ARRAY) {
+                        throw new JsonParseException(parser, "Expected an array of vectors in 'embeddings', got " + token);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return embeddings;
+        }
+    }
+
+    private static JsonToken enterField(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected a JSON object from Ollama, got " + token);
+        }
+        return nextField(parser);
+    }
+
+    /** Moves to the value of the next top-level field, or returns {@code null} at the end of the object. */
+    private static JsonToken nextField(JsonParser parser) throws IOException {
+        return parser.nextToken() == JsonToken.FIELD_NAME ? parser.nextToken() : null;
+    }
+
+    private float[] readVector(JsonParser parser) throws IOException {
+        float[] values = new float[dimsHint];
+        int size = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == null || !token.isNumeric()) {
+                throw new JsonParseException(parser, "Expected a number in an embedding, got " + token);
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.max(64, size * 2));
+            }
+            values[size++] = parser.getFloatValue();
+        }
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+}
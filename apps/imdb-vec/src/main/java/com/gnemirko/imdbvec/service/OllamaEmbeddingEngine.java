@@ -0,0 +1,163 @@
+package com.gnemirko.imdbvec.service;
+
+import com.gnemirko.common.ollama.OllamaConcurrencyLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Embeds through the local Ollama Embeddings API.
+ *
+ * Requires Ollama running locally and an embedding model pulled, e.g.:
+ *   ollama pull nomic-embed-text
+ * API ref: https://docs.ollama.com/api  (see /api/embeddings and /api/embed)
+ *
+ * Every request goes through the shared {@link OllamaConcurrencyLimiter} and is retried on
+ * timeouts, connection errors and 5xx responses. Response bodies are joined into one buffer and
+ * streamed through {@link OllamaEmbeddingDecoder}, so no boxed JSON tree is built per vector.
+ */
+@Component
+@ConditionalOnProperty(name = "app.embedding.engine", havingValue = "ollama", matchIfMissing = true)
+public class OllamaEmbeddingEngine implements EmbeddingEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(OllamaEmbeddingEngine.class);
+    private static final int MAX_RESPONSE_BYTES = 32 * 1024 * 1024;
+
+    private final WebClient web;
+    private final String baseUrl;
+    private final OllamaConcurrencyLimiter limiter;
+    private final OllamaEmbeddingDecoder decoder;
+    private final int maxRetries;
+    private final Duration retryDelay;
+
+    public OllamaEmbeddingEngine(
+            @Value("${app.ollama.baseUrl:http://localhost:11434}") String baseUrl,
+            @Value("${app.ollama.embeddingMaxRetries:3}") int maxRetries,
+            @Value("${app.ollama.embeddingRetryDelay:PT5S}") Duration retryDelay,
+            @Value("${app.ollama.embeddingDims:768}") int embeddingDims,
+            OllamaConcurrencyLimiter limiter
+    ) {
+        this.baseUrl = baseUrl;
+        this.web = WebClient.builder()
+                .baseUrl(baseUrl)
+                .build();
+        this.limiter = limiter;
+        this.decoder = new OllamaEmbeddingDecoder(embeddingDims);
+        this.maxRetries = Math.max(1, maxRetries);
+        this.retryDelay = retryDelay.isNegative() ? Duration.ZERO : retryDelay;
+    }
+
+    @Override
+    public float[] embed(String text, String model) {
+        Map<String, Object> request = Map.of(
+                "model", model,
+                "prompt", text == null ? "" : text,
+                "stream", false
+        );
+        int attempts = Math.max(1, maxRetries);
+        Retry retrySpec = retrySpec();
+
+        try {
+            float[] embedding = post("/api/embeddings", request, decoder::readEmbedding)
+                    .transform(call -> limiter.limit("/api/embeddings", call))
+                    .retryWhen(retrySpec)
+                    .block();
+
+            if (embedding == null) {
+                throw new IllegalStateException("Ollama embeddings API returned no 'embedding'. " +
+                        "Check that Ollama is running and the model is pulled: " + model);
+            }
+            return embedding;
+        } catch (WebClientResponseException.NotFound nf) {
+            throw new IllegalStateException("Ollama returned 404 for embeddings. Ensure the embedding model '" + model + "' is pulled and that " + baseUrl + "/api/embeddings is reachable.", nf);
+        } catch (RuntimeException ex) {
+            throw new IllegalStateException("Failed to fetch embedding after " + attempts + " attempts", ex);
+        }
+    }
+
+    /** One request to the multi-input /api/embed endpoint; the vectors come back in input order. */
+    @Override
+    public Mono<List<float[]>> embedBatch(List<String> texts, String model) {
+        Map<String, Object> request = Map.of(
+                "model", model,
+                "input", texts
+        );
+        return post("/api/embed", request, decoder::readEmbeddings)
+                .transform(call -> limiter.limit("/api/embed", call))
+                .retryWhen(retrySpec())
+                .defaultIfEmpty(List.of())
+                .map(vectors -> {
+                    if (vectors.size() != texts.size()) {
+                        throw new IllegalStateException("Ollama /api/embed returned " + vectors.size()
+                                + " embeddings for " + texts.size() + " inputs (model " + model + ")");
+                    }
+                    return vectors;
+                })
+                .onErrorMap(WebClientResponseException.NotFound.class, nf -> new IllegalStateException(
+                        "Ollama returned 404 for embeddings. Ensure the embedding model '" + model + "' is pulled and that "
+                                + baseUrl + "/api/embed is reachable (Ollama 0.3.4 or newer).", nf));
+    }
+
+    private Retry retrySpec() {
+        Duration backoff = retryDelay.isZero() ? Duration.ofMillis(250) : retryDelay;
+        int attempts = Math.max(1, maxRetries);
+        return Retry.backoff(attempts, backoff)
+                .filter(this::isRetryableException)
+                .doBeforeRetry(signal -> log.warn(
+                        "Embedding retry {}/{} after {} due to {}",
+                        signal.totalRetries() + 1,
+                        attempts,
+                        backoff,
+                        signal.failure() == null ? "unknown error" : signal.failure().getMessage()))
+                .onRetryExhaustedThrow((spec, signal) ->
+                        signal.failure() != null ? signal.failure() : new IllegalStateException("Embedding retries exhausted"));
+    }
+
+    /** Posts {@code request} and decodes the joined response body; empty when Ollama sends no body. */
+    private <T> Mono<T> post(String uri, Map<String, Object> request, BodyReader<T> reader) {
+        return web.post()
+                .uri(uri)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(request)
+                .retrieve()
+                .bodyToFlux(DataBuffer.class)
+                .as(body -> DataBufferUtils.join(body, MAX_RESPONSE_BYTES))
+                .mapNotNull(buffer -> {
+                    try (InputStream in = buffer.asInputStream(true)) {
+                        return reader.read(in);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException("Unreadable response from Ollama " + uri, ex);
+                    }
+                });
+    }
+
+    @FunctionalInterface
+    private interface BodyReader<T> {
+        T read(InputStream body) throws IOException;
+    }
+
+    private boolean isRetryableException(Throwable throwable) {
+        if (throwable instanceof WebClientResponseException response) {
+            return response.getStatusCode().is5xxServerError();
+        }
+        return throwable instanceof WebClientRequestException || throwable instanceof TimeoutException;
+    }
+}
@@ -0,0 +1,64 @@
+package com.gnemirko.imdbvec.service;
+
+import ai.onnxruntime.OrtException;
+import com.gnemirko.common.onnx.OnnxSentenceEncoder;
+import com.gnemirko.imdbvec.config.OnnxEmbeddingProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Embeds through an in-process {@link OnnxSentenceEncoder}, so neither queries nor the backfill
+ * need Ollama. The MCP server embeds its queries with the same encoder, which keeps query and
+ * catalog vectors comparable.
+ */
+@Component
+@ConditionalOnProperty(name = "app.embedding.engine", havingValue = "onnx")
+public class OnnxEmbeddingEngine implements EmbeddingEngine, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(OnnxEmbeddingEngine.class);
+
+    private final OnnxSentenceEncoder encoder;
+
+    public OnnxEmbeddingEngine(OnnxEmbeddingProperties properties) throws IOException, OrtException {
+        if (!StringUtils.hasText(properties.getModelPath()) || !StringUtils.hasText(properties.getTokenizerPath())) {
+            throw new IllegalStateException("app.embedding.engine=onnx needs app.embedding.onnx.modelPath and tokenizerPath");
+        }
+        this.encoder = new OnnxSentenceEncoder(properties.getModel(), properties.getModelPath(),
+                properties.getTokenizerPath(), properties.getOutputName(), properties.getMaxSequenceLength(),
+                properties.getIntraOpThreads());
+        log.info("Loaded ONNX embedding model {} from {} (inputs {})", encoder.model(), properties.getModelPath(),
+                encoder.inputNames());
+    }
+
+    @Override
+    public float[] embed(String text, String model) {
+        return run(List.of(text == null ? "" : text), model).getFirst();
+    }
+
+    @Override
+    public Mono<List<float[]>> embedBatch(List<String> texts, String model) {
+        return Mono.fromCallable(() -> run(texts, model)).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private List<float[]> run(List<String> texts, String requestedModel) {
+        String model = encoder.model();
+        if (!model.equals(requestedModel)) {
+            throw new IllegalStateException("The ONNX embedding engine serves " + model + ", not " + requestedModel
+                    + "; set app.embedding.onnx.model or migrate the embeddings to " + model);
+        }
+        return encoder.encode(texts);
+    }
+
+    @Override
+    public void close() throws OrtException {
+        encoder.close();
+    }
+}
@@ -1,38 +1,291 @@
 package com.gnemirko.imdbvec.service;
 
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.PersistenceContext;
+import com.gnemirko.common.vector.VectorQuantization;
+import com.gnemirko.imdbvec.config.VectorIndexProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Owns the HNSW indexes of the embedding slots (see {@link EmbeddingSlot}). Incremental inserts
+ * into an HNSW graph are slow and leave it less well connected than a bulk build, so a large
+ * embedding backfill can drop the index first ({@link #deferForBulkLoad()}) and have it rebuilt
+ * afterwards with the tuned build parameters. Every build is followed by a recall and latency check
+ * against exact float32 search. The index can be built on half-precision or binary-quantized
+ * vectors ({@code app.vector-index.quantization}); an index of another quantization is rebuilt
+ * next to the old one and swapped in. The no-argument methods work on the active slot.
+ */
 @Service
 public class VectorIndexService {
-    @PersistenceContext
-    private EntityManager em;
-
-    @Transactional
-    public void ensureHnswIndex() {
-        em.createNativeQuery("CREATE EXTENSION IF NOT EXISTS vector").executeUpdate();
-        em.createNativeQuery("""
-                
-                  DO $$
-                
-                  BEGIN
-                
-                    IF NOT EXISTS (
-                
-                      SELECT 1 FROM pg_class c JOIN pg_namespace n ON n.oid=c.relnamespace
-                
-                      WHERE c.relname='movie_embedding_hnsw' AND n.nspname=current_schema()
-                
-                    ) THEN
-                
-                      EXECUTE 'CREATE INDEX movie_embedding_hnsw ON movie USING hnsw (embedding vector_cosine_ops)';
-                
-                    END IF;
-                
-                  END$$;
-                
-                """).executeUpdate();
+
+    private static final Logger log = LoggerFactory.getLogger(VectorIndexService.class);
+
+    /** Throwaway index built by {@link #compareQuantizations()}. */
+    private static final String COMPARISON_INDEX = "idx_movie_embedding_quantization_cmp";
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transactions;
+    private final VectorIndexProperties properties;
+    private final EmbeddingSlotStore slots;
+    private final int efSearch;
+
+    public VectorIndexService(JdbcTemplate jdbc,
+                              PlatformTransactionManager transactionManager,
+                              VectorIndexProperties properties,
+                              EmbeddingSlotStore slots,
+                              @Value("${app.recommend.efSearch:200}") int efSearch) {
+        this.jdbc = jdbc;
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.properties = properties;
+        this.slots = slots;
+        this.efSearch = efSearch;
+    }
+
+    /**
+     * Outcome of {@link #ensureHnswIndex()}. {@code recall} is the mean recall@{@code k} of the
+     * index over {@code queries} held-out queries, or {@code NaN} when it was not measured;
+     * {@code indexMillis} and {@code exactMillis} are the mean latencies of the same queries with
+     * the index and with exact float32 search.
+     */
+    public record IndexBuild(VectorQuantization quantization, boolean built, long vectors, long buildMillis, long indexBytes,
+                             double recall, int k, int queries, double indexMillis, double exactMillis) {
+
+        public String describe() {
+            String recallText = Double.isNaN(recall)
+                    ? "recall not measured"
+                    : String.format(Locale.ROOT, "recall@%d=%.3f over %d queries, %.2f ms/query vs %.2f ms exact",
+                            k, recall, queries, indexMillis, exactMillis);
+            String sizeText = "%s, %d MB".formatted(quantization.code(), indexBytes / (1024 * 1024));
+            return built
+                    ? "built in %d ms (%s), %s".formatted(buildMillis, sizeText, recallText)
+                    : "already present (%s), %s".formatted(sizeText, recallText);
+        }
+    }
+
+    public boolean indexExists() {
+        return indexExists(slots.active().slot());
+    }
+
+    public boolean indexExists(EmbeddingSlot slot) {
+        return indexExists(slot.indexName());
+    }
+
+    private boolean indexExists(String indexName) {
+        Boolean exists = jdbc.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, indexName);
+        return Boolean.TRUE.equals(exists);
+    }
+
+    /**
+     * Drops the index when bulk loading is enabled and enough movies are waiting for an embedding
+     * that rebuilding beats inserting one by one.
+     *
+     * @return whether the index was dropped (and has to be rebuilt by {@link #ensureHnswIndex()})
+     */
+    public boolean deferForBulkLoad() {
+        return deferForBulkLoad(slots.active());
+    }
+
+    public boolean deferForBulkLoad(EmbeddingSlotStore.SlotState state) {
+        EmbeddingSlot slot = state.slot();
+        if (!properties.isBulkLoad() || !indexExists(slot)) {
+            return false;
+        }
+        Long pending = jdbc.queryForObject("SELECT COUNT(*) FROM movie WHERE %s IS NULL".formatted(slot.modelColumn()), Long.class);
+        if (pending == null || pending < properties.getBulkLoadThreshold()) {
+            return false;
+        }
+        jdbc.execute("DROP INDEX IF EXISTS " + slot.indexName());
+        log.info("Dropped {} for the backfill of {} embeddings; it is rebuilt in bulk afterwards", slot.indexName(), pending);
+        return true;
+    }
+
+    public IndexBuild ensureHnswIndex() {
+        return ensureHnswIndex(slots.active());
+    }
+
+    /**
+     * Builds the slot's index in bulk when it is missing or quantized differently from
+     * {@code app.vector-index.quantization}; either way reports its recall.
+     */
+    public IndexBuild ensureHnswIndex(EmbeddingSlotStore.SlotState state) {
+        EmbeddingSlot slot = state.slot();
+        VectorQuantization quantization = properties.getQuantization();
+        long buildMillis = 0;
+        boolean built = false;
+        if (!indexExists(slot)) {
+            buildMillis = build(state, quantization, slot.indexName());
+            built = true;
+        } else if (state.quantization() != quantization) {
+            buildMillis = rebuild(state, quantization);
+            built = true;
+        }
+        if (built) {
+            slots.recordQuantization(slot, quantization);
+        }
+        IndexBuild result = measure(state, quantization, slot.indexName(), built, countVectors(state), buildMillis);
+        log.info("HNSW index {} over {} vectors: {}", slot.indexName(), result.vectors(), result.describe());
+        return result;
+    }
+
+    /**
+     * Builds a throwaway index of every quantization on the active slot (reusing the live index for
+     * its own quantization) and measures each against exact float32 search. Each build takes as
+     * long as a regular one and blocks writes to {@code movie} meanwhile.
+     */
+    public List<IndexBuild> compareQuantizations() {
+        EmbeddingSlotStore.SlotState state = slots.active();
+        long vectors = countVectors(state);
+        List<IndexBuild> results = new ArrayList<>();
+        for (VectorQuantization quantization : VectorQuantization.values()) {
+            if (state.quantization() == quantization && indexExists(state.slot())) {
+                results.add(measure(state, quantization, state.slot().indexName(), false, vectors, 0));
+                continue;
+            }
+            jdbc.execute("DROP INDEX IF EXISTS " + COMPARISON_INDEX);
+            try {
+                long buildMillis = build(state, quantization, COMPARISON_INDEX);
+                results.add(measure(state, quantization, COMPARISON_INDEX, true, vectors, buildMillis));
+            } finally {
+                jdbc.execute("DROP INDEX IF EXISTS " + COMPARISON_INDEX);
+            }
+        }
+        results.forEach(result -> log.info("Slot {} with {} index: {}",
+                state.slot().code(), result.quantization().code(), result.describe()));
+        return results;
+    }
+
+    private long countVectors(EmbeddingSlotStore.SlotState state) {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM movie WHERE %s IS NOT NULL".formatted(state.slot().column()), Long.class);
+    }
+
+    /**
+     * Replaces the slot's index by one of another quantization. The new index is built under a
+     * temporary name first, so searches keep their index until the rename.
+     */
+    private long rebuild(EmbeddingSlotStore.SlotState state, VectorQuantization quantization) {
+        String indexName = state.slot().indexName();
+        String next = indexName + "_next";
+        jdbc.execute("DROP INDEX IF EXISTS " + next);
+        long millis = build(state, quantization, next);
+        transactions.executeWithoutResult(status -> {
+            jdbc.execute("DROP INDEX IF EXISTS " + indexName);
+            jdbc.execute("ALTER INDEX %s RENAME TO %s".formatted(next, indexName));
+        });
+        log.info("Replaced {} ({}) with a {} index", indexName, state.quantization().code(), quantization.code());
+        return millis;
+    }
+
+    private long build(EmbeddingSlotStore.SlotState state, VectorQuantization quantization, String indexName) {
+        long start = System.nanoTime();
+        transactions.executeWithoutResult(status -> {
+            jdbc.execute("CREATE EXTENSION IF NOT EXISTS vector");
+            jdbc.execute("SET LOCAL maintenance_work_mem = '%dkB'".formatted(properties.getMaintenanceWorkMem().toKilobytes()));
+            jdbc.execute("SET LOCAL max_parallel_maintenance_workers = " + Math.max(0, properties.getParallelWorkers()));
+            jdbc.execute("""
+                    CREATE INDEX IF NOT EXISTS %s ON movie
+                      USING hnsw (%s %s)
+                      WITH (m = %d, ef_construction = %d)
+                    """.formatted(indexName, state.indexExpression(quantization, null), quantization.operatorClass(),
+                    properties.getM(), properties.getEfConstruction()));
+        });
+        long millis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+        log.info("Built {} ({}, m={}, ef_construction={}, maintenance_work_mem={}) in {} ms",
+                indexName, quantization.code(), properties.getM(), properties.getEfConstruction(),
+                properties.getMaintenanceWorkMem(), millis);
+        return millis;
+    }
+
+    /**
+     * Compares index search (at the serving {@code hnsw.ef_search}) with exact float32 search for
+     * a fixed pseudo-random sample of catalog vectors. Each query movie is excluded from its own
+     * results, so the sample acts as a held-out query set.
+     */
+    private IndexBuild measure(EmbeddingSlotStore.SlotState state, VectorQuantization quantization, String indexName,
+                               boolean built, long vectors, long buildMillis) {
+        Long size = jdbc.queryForObject("SELECT COALESCE(pg_relation_size(to_regclass(?)), 0)", Long.class, indexName);
+        long indexBytes = size == null ? 0 : size;
+        int k = Math.max(1, properties.getRecallK());
+        if (properties.getRecallQueries() <= 0 || vectors <= k) {
+            return new IndexBuild(quantization, built, vectors, buildMillis, indexBytes, Double.NaN, k, 0, Double.NaN, Double.NaN);
+        }
+        return transactions.execute(status -> {
+            List<Long> queries = jdbc.queryForList("""
+                    SELECT id FROM movie
+                    WHERE %s IS NOT NULL
+                    ORDER BY md5(id::text)
+                    LIMIT ?
+                    """.formatted(state.slot().column()), Long.class, properties.getRecallQueries());
+
+            jdbc.execute("SET LOCAL hnsw.ef_search = " + efSearch);
+            long start = System.nanoTime();
+            List<List<Long>> approximate = queries.stream()
+                    .map(id -> nearest(state, quantization, id, k))
+                    .toList();
+            double indexMillis = millisPerQuery(start, queries.size());
+
+            jdbc.execute("SET LOCAL enable_indexscan = off");
+            start = System.nanoTime();
+            List<List<Long>> exact = queries.stream()
+                    .map(id -> nearest(state, VectorQuantization.NONE, id, k))
+                    .toList();
+            double exactMillis = millisPerQuery(start, queries.size());
+
+            double total = 0;
+            for (int i = 0; i < queries.size(); i++) {
+                Set<Long> expected = new HashSet<>(exact.get(i));
+                long hits = approximate.get(i).stream().filter(expected::contains).count();
+                total += expected.isEmpty() ? 1.0 : (double) hits / expected.size();
+            }
+            return new IndexBuild(quantization, built, vectors, buildMillis, indexBytes,
+                    total / queries.size(), k, queries.size(), indexMillis, exactMillis);
+        });
+    }
+
+    /**
+     * The {@code k} nearest neighbours of movie {@code id} as an index on {@code quantization}
+     * finds them. Binary-quantized candidates are over-fetched by {@code rerankFactor} and
+     * re-ranked by float32 cosine distance.
+     */
+    private List<Long> nearest(EmbeddingSlotStore.SlotState state, VectorQuantization quantization, long id, int k) {
+        String column = state.slot().column();
+        String query = "SELECT q.%s FROM movie q WHERE q.id = ?".formatted(column);
+        if (!quantization.reranks()) {
+            String sql = """
+                    SELECT m.id FROM movie m
+                    WHERE m.id <> ? AND m.%s IS NOT NULL
+                    ORDER BY %s
+                    LIMIT ?
+                    """.formatted(column, quantization.distance(state.column("m"), query, state.dims()));
+            return jdbc.queryForList(sql, Long.class, id, id, k);
+        }
+        String sql = """
+                SELECT c.id FROM (
+                    SELECT m.id, m.%1$s AS v FROM movie m
+                    WHERE m.id <> ? AND m.%1$s IS NOT NULL
+                    ORDER BY %2$s
+                    LIMIT ?
+                ) c
+                ORDER BY %3$s
+                LIMIT ?
+                """.formatted(column,
+                quantization.distance(state.column("m"), query, state.dims()),
+                VectorQuantization.NONE.distance("c.v", query, state.dims()));
+        int candidates = k * Math.max(1, properties.getRerankFactor());
+        return jdbc.queryForList(sql, Long.class, id, id, candidates, id, k);
+    }
+
+    private static double millisPerQuery(long startNanos, int queries) {
+        return (System.nanoTime() - startNanos) / 1_000_000.0 / queries;
     }
 }
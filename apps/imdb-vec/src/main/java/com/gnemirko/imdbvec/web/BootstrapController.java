@@ -4,6 +4,7 @@ import com.gnemirko.imdbvec.service.BootstrapService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -25,14 +26,58 @@ public class BootstrapController {
 
     @PostMapping
     public ResponseEntity<String> triggerBootstrap(@RequestParam(name = "rebuildIndex", defaultValue = "true") boolean rebuildIndex,
+                                                   @RequestParam(name = "resume", defaultValue = "true") boolean resume,
                                                    @RequestHeader(value = "X-Bootstrap-Token", required = false) String token) {
-        if (expectedToken != null && !expectedToken.isBlank()) {
-            if (token == null || !expectedToken.equals(token)) {
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid bootstrap token");
-            }
+        if (!isAuthorized(token)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid bootstrap token");
         }
 
-        bootstrapService.runFullBootstrap(rebuildIndex);
+        bootstrapService.runFullBootstrap(rebuildIndex, resume);
         return ResponseEntity.accepted().body("Bootstrap started");
     }
+
+    /**
+     * Fills the idle embedding slot with {@code app.ollama.embeddingModel} in the background and
+     * switches searches to it once every movie is covered.
+     */
+    @PostMapping("/embedding-migration")
+    public ResponseEntity<String> migrateEmbeddings(@RequestHeader(value = "X-Bootstrap-Token", required = false) String token) {
+        if (!isAuthorized(token)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid bootstrap token");
+        }
+        bootstrapService.runEmbeddingMigration();
+        return ResponseEntity.accepted().body("Embedding migration started");
+    }
+
+    /**
+     * Builds a throwaway HNSW index per {@code app.vector-index.quantization} option on the active
+     * slot and logs size, recall and latency of each against exact float32 search.
+     */
+    @PostMapping("/vector-index/comparison")
+    public ResponseEntity<String> compareQuantizations(@RequestHeader(value = "X-Bootstrap-Token", required = false) String token) {
+        if (!isAuthorized(token)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid bootstrap token");
+        }
+        bootstrapService.runQuantizationComparison();
+        return ResponseEntity.accepted().body("Vector index comparison started");
+    }
+
+    /** Per-stage status, duration and row count of the given run, or of the newest one. */
+    @GetMapping("/report")
+    public ResponseEntity<?> report(@RequestParam(name = "runId", required = false) Long runId,
+                                    @RequestHeader(value = "X-Bootstrap-Token", required = false) String token) {
+        if (!isAuthorized(token)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid bootstrap token");
+        }
+        return bootstrapService.report(runId)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    private boolean isAuthorized(String token) {
+        if (expectedToken != null && !expectedToken.isBlank()) {
+            return token != null && expectedToken.equals(token);
+        }
+        return true;
+    }
 }
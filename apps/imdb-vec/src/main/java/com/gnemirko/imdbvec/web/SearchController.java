@@ -1,6 +1,7 @@
 package com.gnemirko.imdbvec.web;
 
 import com.gnemirko.imdbvec.service.EmbeddingService;
+import com.gnemirko.imdbvec.service.EmbeddingSlotStore;
 import com.gnemirko.imdbvec.repo.MovieJdbc;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
@@ -19,10 +20,12 @@ public class SearchController {
 
     private final EmbeddingService es;
     private final MovieJdbc movieJdbc;
+    private final EmbeddingSlotStore slots;
 
-    public SearchController(EmbeddingService es, MovieJdbc movieJdbc) {
+    public SearchController(EmbeddingService es, MovieJdbc movieJdbc, EmbeddingSlotStore slots) {
         this.es = es;
         this.movieJdbc = movieJdbc;
+        this.slots = slots;
     }
 
     // keep your existing endpoint shape but fix varargs
@@ -31,17 +34,18 @@ public class SearchController {
                                   @RequestParam(defaultValue = "10") int k,
                                   @RequestParam(name = "actors", required = false) List<String> actorNames) throws Exception {
         String joined = String.join(". ", q);
-        float[] v = es.embed(joined);
+        // Query vector and searched column have to come from the same slot state.
+        EmbeddingSlotStore.SlotState active = slots.active();
+        float[] v = es.embed(joined, active.model());
 
-        var rows = movieJdbc.topN(
-                v,
+        var filters = new MovieJdbc.Filters(
                 new String[] {},  // includeGenres (keep empty for now)
                 new String[] {},  // excludeGenres
                 toActorArray(actorNames),
                 null, null,       // fromYear/toYear
-                null, null,       // runtimeMax/minRating
-                k
+                null, null        // runtimeMax/minRating
         );
+        var rows = movieJdbc.topN(active, v, filters, k);
 
         return rows.stream()
                 .map(r -> new ResultDto(
@@ -0,0 +1,33 @@
+-- Two embedding slots: a new model is filled into the idle slot while the active one keeps serving
+-- searches, then embedding_model_state flips which slot is active. The slot columns are untyped so
+-- a slot can take a model of another size without a table rewrite; their HNSW indexes are built on
+-- (column::vector(dims)) instead.
+DROP INDEX IF EXISTS idx_movie_embedding_hnsw;
+ALTER TABLE movie ALTER COLUMN embedding TYPE vector;
+CREATE INDEX IF NOT EXISTS idx_movie_embedding_hnsw ON movie
+    USING hnsw ((embedding::vector(768)) vector_cosine_ops);
+
+ALTER TABLE movie
+    ADD COLUMN IF NOT EXISTS embedding_b            vector,
+    ADD COLUMN IF NOT EXISTS embedding_b_model      text,
+    ADD COLUMN IF NOT EXISTS embedding_b_updated_at timestamptz;
+
+CREATE TABLE IF NOT EXISTS embedding_model_state (
+    slot             text        PRIMARY KEY CHECK (slot IN ('a', 'b')),
+    embedding_column text        NOT NULL UNIQUE,
+    model            text,
+    dims             integer,
+    status           text        NOT NULL CHECK (status IN ('ACTIVE', 'FILLING', 'RETIRED', 'EMPTY')),
+    updated_at       timestamptz NOT NULL DEFAULT now()
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS ux_embedding_model_state_active
+    ON embedding_model_state (status) WHERE status = 'ACTIVE';
+
+INSERT INTO embedding_model_state (slot, embedding_column, model, dims, status)
+VALUES ('a', 'embedding',
+        (SELECT embedding_model FROM movie WHERE embedding_model IS NOT NULL
+         GROUP BY embedding_model ORDER BY COUNT(*) DESC LIMIT 1),
+        768, 'ACTIVE'),
+       ('b', 'embedding_b', NULL, NULL, 'EMPTY')
+ON CONFLICT (slot) DO NOTHING;
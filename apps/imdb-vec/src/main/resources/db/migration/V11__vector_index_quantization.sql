@@ -0,0 +1,5 @@
+-- How each slot's HNSW index quantizes its vectors. The slot columns stay float32; a halfvec or
+-- binary index is just another expression over them, so switching only rebuilds the index.
+ALTER TABLE embedding_model_state
+    ADD COLUMN IF NOT EXISTS index_quantization text NOT NULL DEFAULT 'none'
+        CHECK (index_quantization IN ('none', 'halfvec', 'binary'));
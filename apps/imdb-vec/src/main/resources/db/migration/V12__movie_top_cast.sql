@@ -0,0 +1,27 @@
+-- Top five actors of each movie in billing order, kept in step with movie_principal by the
+-- importer so searches read the cast from the movie row instead of joining principals per result.
+ALTER TABLE movie
+    ADD COLUMN IF NOT EXISTS top_cast_names text[] NOT NULL DEFAULT '{}',
+    ADD COLUMN IF NOT EXISTS top_cast_ids   text[] NOT NULL DEFAULT '{}';
+
+UPDATE movie m
+SET top_cast_names = c.names,
+    top_cast_ids   = c.ids
+FROM (
+    SELECT ranked.movie_id,
+           array_agg(ranked.primary_name ORDER BY ranked.rank) AS names,
+           array_agg(ranked.nconst ORDER BY ranked.rank)       AS ids
+    FROM (
+        SELECT mp.movie_id,
+               p.primary_name,
+               p.nconst,
+               row_number() OVER (PARTITION BY mp.movie_id
+                                  ORDER BY mp.ordering NULLS LAST, p.primary_name) AS rank
+        FROM movie_principal mp
+        JOIN person p ON p.id = mp.person_id
+        WHERE mp.category IN ('actor', 'actress')
+    ) ranked
+    WHERE ranked.rank <= 5
+    GROUP BY ranked.movie_id
+) c
+WHERE c.movie_id = m.id;
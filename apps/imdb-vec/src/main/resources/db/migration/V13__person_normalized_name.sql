@@ -0,0 +1,15 @@
+-- Actor filters match user input against names reduced to lower-case letters and digits. The
+-- importer fills normalized_name next to primary_name; the trigram index serves the substring
+-- and similarity lookups that resolve a requested actor to person ids.
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+ALTER TABLE person ADD COLUMN IF NOT EXISTS normalized_name text;
+
+UPDATE person
+SET normalized_name = regexp_replace(LOWER(primary_name), '[^a-z0-9]', '', 'g')
+WHERE normalized_name IS NULL;
+
+ALTER TABLE person ALTER COLUMN normalized_name SET NOT NULL;
+
+CREATE INDEX IF NOT EXISTS idx_person_normalized_name_trgm
+    ON person USING gin (normalized_name gin_trgm_ops);
@@ -0,0 +1,3 @@
+ALTER TABLE movie
+    ADD COLUMN IF NOT EXISTS content_hash text,
+    ADD COLUMN IF NOT EXISTS principals_hash text;
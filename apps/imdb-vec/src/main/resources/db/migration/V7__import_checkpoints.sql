@@ -0,0 +1,21 @@
+CREATE TABLE IF NOT EXISTS import_run (
+    id          bigserial PRIMARY KEY,
+    status      text        NOT NULL,
+    started_at  timestamptz NOT NULL DEFAULT now(),
+    finished_at timestamptz,
+    error       text
+);
+
+CREATE TABLE IF NOT EXISTS import_stage (
+    run_id      bigint NOT NULL REFERENCES import_run(id) ON DELETE CASCADE,
+    stage       text   NOT NULL,
+    status      text   NOT NULL,
+    started_at  timestamptz,
+    finished_at timestamptz,
+    duration_ms bigint,
+    rows        bigint,
+    detail      text,
+    CONSTRAINT import_stage_pk PRIMARY KEY (run_id, stage)
+);
+
+CREATE INDEX IF NOT EXISTS idx_import_run_status ON import_run (status, id DESC);
@@ -0,0 +1,2 @@
+-- VectorIndexService used to add a second HNSW index next to the one V1 creates; keep only V1's.
+DROP INDEX IF EXISTS movie_embedding_hnsw;
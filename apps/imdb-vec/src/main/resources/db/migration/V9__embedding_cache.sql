@@ -0,0 +1,12 @@
+-- Embeddings by (model, SHA-256 of the embedding text), so unchanged texts are never sent to the model twice.
+-- The column has no fixed dimension: entries of different models may differ in size.
+CREATE TABLE IF NOT EXISTS embedding_cache (
+    model        text        NOT NULL,
+    text_sha256  bytea       NOT NULL,
+    embedding    vector      NOT NULL,
+    created_at   timestamptz NOT NULL DEFAULT now(),
+    last_used_at timestamptz NOT NULL DEFAULT now(),
+    CONSTRAINT embedding_cache_pk PRIMARY KEY (model, text_sha256)
+);
+
+CREATE INDEX IF NOT EXISTS idx_embedding_cache_last_used ON embedding_cache (last_used_at);
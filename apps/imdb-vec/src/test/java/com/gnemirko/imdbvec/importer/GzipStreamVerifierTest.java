@@ -0,0 +1,98 @@
+package com.gnemirko.imdbvec.importer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GzipStreamVerifierTest {
+
+    @Test
+    void acceptsMultiMemberStreamFedInArbitraryChunks() throws Exception {
+        byte[] first = gzip(text(5_000));
+        byte[] second = gzip(text(3_000));
+        byte[] stream = concat(first, second);
+
+        GzipStreamVerifier verifier = new GzipStreamVerifier(true);
+        Random random = new Random(42);
+        int offset = 0;
+        while (offset < stream.length) {
+            int length = Math.min(stream.length - offset, 1 + random.nextInt(700));
+            verifier.update(ByteBuffer.wrap(stream, offset, length));
+            offset += length;
+        }
+        verifier.finish();
+
+        assertThat(verifier.members()).isEqualTo(2);
+        assertThat(verifier.compressedBytes()).isEqualTo(stream.length);
+        assertThat(verifier.uncompressedBytes()).isEqualTo(text(5_000).length + text(3_000).length);
+        assertThat(verifier.md5Hex()).contains(HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(stream)));
+    }
+
+    @Test
+    void rejectsTruncatedStreamOnFinish() throws Exception {
+        byte[] stream = gzip(text(2_000));
+
+        GzipStreamVerifier verifier = new GzipStreamVerifier(false);
+        verifier.update(stream, 0, stream.length - 3);
+
+        assertThatThrownBy(verifier::finish).isInstanceOf(EOFException.class);
+    }
+
+    @Test
+    void rejectsCrcMismatchInTrailer() throws Exception {
+        byte[] stream = gzip(text(2_000));
+        stream[stream.length - 8] ^= 0x01;
+
+        GzipStreamVerifier verifier = new GzipStreamVerifier(false);
+
+        assertThatThrownBy(() -> verifier.update(stream, 0, stream.length))
+                .isInstanceOf(ZipException.class)
+                .hasMessageContaining("CRC mismatch");
+    }
+
+    @Test
+    void rejectsDataThatIsNotGzip() {
+        byte[] plain = "tconst\tprimaryTitle\n".getBytes(StandardCharsets.UTF_8);
+
+        GzipStreamVerifier verifier = new GzipStreamVerifier(false);
+
+        assertThatThrownBy(() -> verifier.update(plain, 0, plain.length))
+                .isInstanceOf(ZipException.class)
+                .hasMessageContaining("Not in GZIP format");
+    }
+
+    private static byte[] text(int rows) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            sb.append("tt").append(100_000 + i).append("\tmovie\tTitle ").append(i).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(byte[] raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(raw);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] out = new byte[a.length + b.length];
+        System.arraycopy(a, 0, out, 0, a.length);
+        System.arraycopy(b, 0, out, a.length, b.length);
+        return out;
+    }
+}
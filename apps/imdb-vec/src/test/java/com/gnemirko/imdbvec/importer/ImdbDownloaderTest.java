@@ -0,0 +1,224 @@
+package com.gnemirko.imdbvec.importer;
+
+import com.gnemirko.imdbvec.config.ImdbImportProperties;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ImdbDownloaderTest {
+
+    private static final String FILE = "title.principals.tsv.gz";
+    private static final String LAST_MODIFIED = "Sat, 17 Oct 2026 10:00:00 GMT";
+
+    @TempDir
+    Path dataDir;
+
+    private final ImdbDownloadMetadataStore metadataStore = new ImdbDownloadMetadataStore();
+    private final ImdbImportProperties properties = new ImdbImportProperties();
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+    private final AtomicInteger truncatedResponses = new AtomicInteger();
+
+    private HttpServer server;
+    private byte[] payload;
+    private String etag;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        payload = gzip(tsv(20_000));
+        etag = "\"" + md5(payload) + "\"";
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/" + FILE, this::serve);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void resumesInterruptedTransferWithRangeRequest() throws Exception {
+        truncatedResponses.set(1);
+
+        ImdbDownloader.DownloadResult result = downloader().downloadGzAtomically(uri(), dataDir, FILE, Optional.empty(), Optional.empty());
+
+        assertThat(result.notModified()).isFalse();
+        assertThat(result.etag()).contains(etag);
+        assertThat(Files.readAllBytes(result.file())).isEqualTo(payload);
+        assertThat(ranges).hasSize(2);
+        assertThat(ranges.get(0)).isNull();
+        assertThat(ranges.get(1)).isEqualTo("bytes=" + payload.length / 2 + "-");
+        assertThat(dataDir.resolve(FILE + ".part")).doesNotExist();
+        assertThat(dataDir.resolve(FILE + ".part.meta")).doesNotExist();
+    }
+
+    @Test
+    void resumesPartialFileLeftByEarlierRun() throws Exception {
+        properties.setDownloadRetries(0);
+        truncatedResponses.set(1);
+
+        assertThatThrownBy(() -> downloader().downloadGzAtomically(uri(), dataDir, FILE, Optional.empty(), Optional.empty()))
+                .isInstanceOf(IOException.class);
+        assertThat(dataDir.resolve(FILE + ".part")).hasSize(payload.length / 2);
+
+        ImdbDownloader.DownloadResult result = downloader().downloadGzAtomically(uri(), dataDir, FILE, Optional.empty(), Optional.empty());
+
+        assertThat(Files.readAllBytes(result.file())).isEqualTo(payload);
+        assertThat(ranges).containsExactly(null, "bytes=" + payload.length / 2 + "-");
+    }
+
+    @Test
+    void restartsFromZeroWhenRemoteFileChanged() throws Exception {
+        Files.write(dataDir.resolve(FILE + ".part"), Arrays.copyOf(payload, 3));
+        metadataStore.store(dataDir, FILE + ".part", Optional.of("\"older\""), Optional.empty(), Optional.of(99L));
+
+        ImdbDownloader.DownloadResult result = downloader().downloadGzAtomically(uri(), dataDir, FILE, Optional.empty(), Optional.empty());
+
+        assertThat(ranges).containsExactly("bytes=3-");
+        assertThat(Files.readAllBytes(result.file())).isEqualTo(payload);
+    }
+
+    @Test
+    void downloadsLargeFilesInParallelSegments() throws Exception {
+        properties.setDownloadSegments(4);
+        properties.setDownloadSegmentMinSize(DataSize.ofBytes(1));
+
+        ImdbDownloader.DownloadResult result = downloader().downloadGzAtomically(uri(), dataDir, FILE, Optional.empty(), Optional.empty());
+
+        assertThat(Files.readAllBytes(result.file())).isEqualTo(payload);
+        assertThat(ranges).hasSize(4).allMatch(range -> range != null && range.matches("bytes=\\d+-\\d+"));
+        try (var leftovers = Files.list(dataDir)) {
+            assertThat(leftovers.map(path -> path.getFileName().toString())).containsExactly(FILE);
+        }
+    }
+
+    @Test
+    void rejectsPayloadThatFailsGzipVerification() throws Exception {
+        properties.setDownloadRetries(1);
+        payload[payload.length / 2] ^= 0x55;
+        etag = "\"opaque-etag\"";
+
+        assertThatThrownBy(() -> downloader().downloadGzAtomically(uri(), dataDir, FILE, Optional.empty(), Optional.empty()))
+                .isInstanceOf(ImdbDownloader.CorruptDownloadException.class);
+        assertThat(ranges).containsExactly(null, null);
+        try (var leftovers = Files.list(dataDir)) {
+            assertThat(leftovers).isEmpty();
+        }
+    }
+
+    @Test
+    void rejectsPayloadWhoseDigestDoesNotMatchEtag() throws Exception {
+        properties.setDownloadRetries(0);
+        etag = "\"" + "0".repeat(32) + "\"";
+
+        assertThatThrownBy(() -> downloader().downloadGzAtomically(uri(), dataDir, FILE, Optional.empty(), Optional.empty()))
+                .isInstanceOf(ImdbDownloader.CorruptDownloadException.class)
+                .hasMessageContaining("does not match ETag");
+        assertThat(dataDir.resolve(FILE)).doesNotExist();
+    }
+
+    @Test
+    void reportsNotModifiedForCurrentFile() throws Exception {
+        Files.write(dataDir.resolve(FILE), payload);
+
+        ImdbDownloader.DownloadResult result = downloader().downloadGzAtomically(uri(), dataDir, FILE, Optional.of(etag), Optional.empty());
+
+        assertThat(result.notModified()).isTrue();
+    }
+
+    private ImdbDownloader downloader() {
+        return new ImdbDownloader(WebClient.builder(), metadataStore, properties);
+    }
+
+    private URI uri() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/" + FILE);
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            var headers = exchange.getResponseHeaders();
+            headers.set("ETag", etag);
+            headers.set("Last-Modified", LAST_MODIFIED);
+            headers.set("Accept-Ranges", "bytes");
+
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                headers.set("Content-Length", Long.toString(payload.length));
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            ranges.add(range);
+            String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            if (range != null && (ifRange == null || ifRange.equals(etag))) {
+                String[] bounds = range.substring("bytes=".length()).split("-", -1);
+                int from = Integer.parseInt(bounds[0]);
+                int to = bounds[1].isEmpty() ? payload.length - 1 : Integer.parseInt(bounds[1]);
+                headers.set("Content-Range", "bytes " + from + "-" + to + "/" + payload.length);
+                exchange.sendResponseHeaders(206, to - from + 1);
+                exchange.getResponseBody().write(payload, from, to - from + 1);
+                return;
+            }
+
+            exchange.sendResponseHeaders(200, payload.length);
+            OutputStream body = exchange.getResponseBody();
+            if (truncatedResponses.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                body.write(payload, 0, payload.length / 2);
+                body.flush();
+                throw new IOException("simulated connection drop");
+            }
+            body.write(payload);
+        }
+    }
+
+    private static byte[] tsv(int rows) {
+        StringBuilder sb = new StringBuilder("tconst\tordering\tnconst\tcategory\tjob\tcharacters\n");
+        for (int i = 0; i < rows; i++) {
+            sb.append("tt").append(1_000_000 + i * 7).append('\t').append(i % 10)
+                    .append("\tnm").append(2_000_000 + i * 13).append("\tactor\t\\N\t[\"Role ").append(i).append("\"]\n");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(byte[] raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(raw);
+        }
+        return out.toByteArray();
+    }
+
+    private static String md5(byte[] bytes) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(bytes));
+    }
+}
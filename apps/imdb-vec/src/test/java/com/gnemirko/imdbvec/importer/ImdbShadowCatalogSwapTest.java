@@ -0,0 +1,119 @@
+package com.gnemirko.imdbvec.importer;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the shadow swap against the migrated schema in a pgvector Postgres; skipped where Docker is
+ * not available.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class ImdbShadowCatalogSwapTest {
+
+    private static final List<String> TABLES = List.of(
+            ImdbShadowCatalog.MOVIE, ImdbShadowCatalog.PERSON, ImdbShadowCatalog.MOVIE_PRINCIPAL);
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>(
+            DockerImageName.parse("pgvector/pgvector:pg16").asCompatibleSubstituteFor("postgres"));
+
+    @BeforeAll
+    static void migrate() {
+        Flyway.configure()
+                .dataSource(POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword())
+                .load()
+                .migrate();
+    }
+
+    @Test
+    void keepsIndexesForeignKeysSequenceOwnersAndRows() throws SQLException {
+        try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+            statement.execute("""
+                    INSERT INTO movie (tconst, primary_title) VALUES ('tt0000001', 'Heat'), ('tt0000002', 'Alien');
+                    INSERT INTO person (nconst, primary_name, normalized_name)
+                        VALUES ('nm0000001', 'Al Pacino', 'alpacino'), ('nm0000002', 'Sigourney Weaver', 'sigourneyweaver');
+                    INSERT INTO movie_principal (movie_id, person_id, category, ordering)
+                        SELECT m.id, p.id, 'actor', 1 FROM movie m JOIN person p ON p.nconst = 'nm0000001' WHERE m.tconst = 'tt0000001';
+                    INSERT INTO movie_principal (movie_id, person_id, category, ordering)
+                        SELECT m.id, p.id, 'actress', 1 FROM movie m JOIN person p ON p.nconst = 'nm0000002' WHERE m.tconst = 'tt0000002';
+                    """);
+            Map<String, List<String>> before = catalog(statement);
+
+            connection.setAutoCommit(false);
+            ImdbShadowCatalog.dropShadows(statement);
+            for (String table : TABLES) {
+                ImdbShadowCatalog.create(statement, table);
+                statement.execute("INSERT INTO %s SELECT * FROM %s".formatted(ImdbShadowCatalog.shadowOf(table), table));
+            }
+            ImdbShadowCatalog.swap(statement, Duration.ofSeconds(5));
+            connection.commit();
+            connection.setAutoCommit(true);
+
+            assertThat(catalog(statement)).isEqualTo(before);
+            assertThat(single(statement, "SELECT to_regclass('movie_shadow') IS NULL")).isEqualTo("t");
+
+            // The sequence survived the drop of the old table and keeps numbering after the copied ids.
+            assertThat(Long.parseLong(single(statement, "INSERT INTO movie (tconst) VALUES ('tt0000003') RETURNING id")))
+                    .isGreaterThan(Long.parseLong(single(statement, "SELECT max(id) FROM movie WHERE tconst <> 'tt0000003'")));
+            // The foreign keys point at the swapped-in tables and still cascade.
+            statement.execute("DELETE FROM movie WHERE tconst = 'tt0000001'");
+            assertThat(single(statement, "SELECT COUNT(*) FROM movie_principal")).isEqualTo("1");
+        }
+    }
+
+    /** Indexes, constraints, sequence owners and row counts of the catalog tables, by name. */
+    private static Map<String, List<String>> catalog(Statement statement) throws SQLException {
+        Map<String, List<String>> catalog = new LinkedHashMap<>();
+        for (String table : TABLES) {
+            catalog.put(table + " indexes", rows(statement, """
+                    SELECT indexname || ' ' || indexdef FROM pg_indexes
+                    WHERE schemaname = 'public' AND tablename = '%s' ORDER BY indexname
+                    """.formatted(table)));
+            catalog.put(table + " constraints", rows(statement, """
+                    SELECT conname || ' ' || pg_get_constraintdef(oid) FROM pg_constraint
+                    WHERE conrelid = '%s'::regclass ORDER BY conname
+                    """.formatted(table)));
+            catalog.put(table + " rows", rows(statement, "SELECT COUNT(*) FROM " + table));
+        }
+        for (String table : List.of(ImdbShadowCatalog.MOVIE, ImdbShadowCatalog.PERSON)) {
+            catalog.put(table + " sequence", rows(statement, "SELECT pg_get_serial_sequence('%s', 'id')".formatted(table)));
+        }
+        return catalog;
+    }
+
+    private static String single(Statement statement, String sql) throws SQLException {
+        return rows(statement, sql).getFirst();
+    }
+
+    private static List<String> rows(Statement statement, String sql) throws SQLException {
+        List<String> rows = new ArrayList<>();
+        try (ResultSet rs = statement.executeQuery(sql)) {
+            while (rs.next()) {
+                rows.add(rs.getString(1));
+            }
+        }
+        return rows;
+    }
+
+    private static Connection connect() throws SQLException {
+        return DriverManager.getConnection(POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword());
+    }
+}
@@ -0,0 +1,36 @@
+package com.gnemirko.imdbvec.importer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ImdbShadowCatalogTest {
+
+    @Test
+    void clonesIndexDefinitionsOntoTheShadowTable() {
+        assertThat(ImdbShadowCatalog.cloneIndex(
+                "CREATE INDEX idx_movie_embedding_hnsw ON public.movie USING hnsw (embedding vector_cosine_ops) WITH (m='16')",
+                "movie", "idx_movie_embedding_hnsw_shadow", "movie_shadow"))
+                .isEqualTo("CREATE INDEX idx_movie_embedding_hnsw_shadow ON public.movie_shadow USING hnsw (embedding vector_cosine_ops) WITH (m='16')");
+
+        assertThatThrownBy(() -> ImdbShadowCatalog.cloneIndex(
+                "CREATE INDEX idx_movie_principal_person ON public.movie_principal USING btree (person_id)",
+                "movie", "x_shadow", "movie_shadow"))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void pointsCatalogForeignKeysAtShadows() {
+        assertThat(ImdbShadowCatalog.pointAtShadows("FOREIGN KEY (movie_id) REFERENCES movie(id) ON DELETE CASCADE"))
+                .isEqualTo("FOREIGN KEY (movie_id) REFERENCES movie_shadow(id) ON DELETE CASCADE");
+        assertThat(ImdbShadowCatalog.pointAtShadows("FOREIGN KEY (run_id) REFERENCES public.import_run(id)"))
+                .isEqualTo("FOREIGN KEY (run_id) REFERENCES public.import_run(id)");
+    }
+
+    @Test
+    void keepsShadowNamesWithinTheIdentifierLimit() {
+        assertThat(ImdbShadowCatalog.shadowOf("movie_pkey")).isEqualTo("movie_pkey_shadow");
+        assertThat(ImdbShadowCatalog.shadowOf("x".repeat(63))).hasSize(63).endsWith("_shadow");
+    }
+}
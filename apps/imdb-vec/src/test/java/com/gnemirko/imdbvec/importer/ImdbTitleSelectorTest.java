@@ -0,0 +1,70 @@
+package com.gnemirko.imdbvec.importer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImdbTitleSelectorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void keepsTopTitlesInSqlRankingOrder() throws Exception {
+        Path basics = gzip("title.basics.tsv.gz", """
+                tconst\ttitleType\tprimaryTitle\toriginalTitle\tisAdult\tstartYear\tendYear\truntimeMinutes\tgenres
+                tt0000001\tmovie\tOne\tOne\t0\t1994\t\\N\t142\tDrama
+                tt0000002\tshort\tShort\tShort\t0\t1994\t\\N\t10\tDrama
+                tt0000003\tmovie\tThree\tThree\t0\t1972\t\\N\t175\tCrime,Drama
+                tt0000004\ttvMovie\tFour\tFour\t0\t2001\t\\N\t90\tComedy
+                tt10000005\tmovie\tFive\tFive\t0\t2020\t\\N\t100\t\\N
+                tt0000006\tmovie\tSix\tSix\t0\t2020\t\\N\t100\t\\N
+                tt0000007\tmovie\tSeven\tSeven\t0\t2021\t\\N\t100\t\\N
+                """);
+        Path ratings = gzip("title.ratings.tsv.gz", """
+                tconst\taverageRating\tnumVotes
+                tt0000001\t9.3\t2000
+                tt0000002\t9.9\t10
+                tt0000003\t9.2\t1500
+                tt0000004\t9.3\t2000
+                tt10000005\t7.0\t50
+                """);
+
+        ImdbTitleSelector.Selection top = ImdbTitleSelector.select(basics, ratings, 4);
+
+        assertThat(top.titles()).extracting(ImdbTitleSelector.SelectedTitle::tconst)
+                .containsExactly("tt0000001", "tt0000004", "tt0000003", "tt10000005");
+        assertThat(top.titles().getFirst().rating()).isEqualTo(9.3);
+        assertThat(top.titles().getFirst().votes()).isEqualTo(2000);
+        assertThat(top.ids().contains(ImdbIdSet.parse("tt10000005"))).isTrue();
+        assertThat(top.scannedTitles()).isEqualTo(7);
+        assertThat(top.ratedTitles()).isEqualTo(5);
+
+        ImdbTsvReader line = ImdbTsvReader.detached();
+        line.reset(top.titles().get(2).basicsLine());
+        assertThat(line.text(2)).isEqualTo("Three");
+        assertThat(line.text(8)).isEqualTo("Crime,Drama");
+
+        ImdbTitleSelector.Selection all = ImdbTitleSelector.select(basics, ratings, -1);
+
+        assertThat(all.titles()).extracting(ImdbTitleSelector.SelectedTitle::tconst)
+                .containsExactly("tt0000001", "tt0000004", "tt0000003", "tt10000005", "tt0000006", "tt0000007");
+        assertThat(all.titles().get(4).rating()).isNaN();
+        assertThat(all.titles().get(4).votes()).isEqualTo(-1);
+    }
+
+    private Path gzip(String name, String content) throws Exception {
+        Path file = tempDir.resolve(name);
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+}
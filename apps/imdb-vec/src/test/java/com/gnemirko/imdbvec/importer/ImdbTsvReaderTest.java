@@ -0,0 +1,93 @@
+package com.gnemirko.imdbvec.importer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImdbTsvReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void skipsHeaderAndExposesFields() throws Exception {
+        Path file = gzip("""
+                tconst\tordering\tnconst\tcategory\tjob\tcharacters
+                tt0111161\t1\tnm0000209\tACTOR\t\\N\t["Andy Dufresne"]
+                tt0068646\t2\tnm0000008\tdirector\t\\N\t\\N
+                """);
+
+        try (ImdbTsvReader reader = ImdbTsvReader.open(file)) {
+            assertThat(reader.next()).isTrue();
+            assertThat(reader.fieldCount()).isEqualTo(6);
+            assertThat(reader.imdbId(0)).isEqualTo(111161);
+            assertThat(reader.imdbId(2)).isEqualTo(209);
+            assertThat(reader.equalsIgnoreCase(3, "actor")).isTrue();
+            assertThat(reader.isNull(4)).isTrue();
+            assertThat(reader.text(4)).isNull();
+            assertThat(reader.text(5)).isEqualTo("[\"Andy Dufresne\"]");
+            assertThat(reader.longValue(1)).isEqualTo(1);
+            assertThat(reader.longValue(4)).isEqualTo(ImdbTsvReader.MISSING);
+            assertThat(reader.isMissing(6)).isTrue();
+
+            assertThat(reader.next()).isTrue();
+            assertThat(reader.equalsIgnoreCase(3, "actor")).isFalse();
+            assertThat(reader.next()).isFalse();
+            assertThat(reader.linesRead()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void parsesNumericFields() throws Exception {
+        Path file = gzip("""
+                tconst\taverageRating\tnumVotes
+                tt0000001\t8.3\t2171
+                tt0000002\t10.0\t-7
+                tt0000003\t7.25e0\tabc
+                tt0000004\t\\N\t99999999999999999999
+                """);
+
+        try (ImdbTsvReader reader = ImdbTsvReader.open(file)) {
+            reader.next();
+            assertThat(reader.doubleValue(1)).isEqualTo(Double.parseDouble("8.3"));
+            assertThat(reader.longValue(2)).isEqualTo(2171);
+            reader.next();
+            assertThat(reader.doubleValue(1)).isEqualTo(10.0);
+            assertThat(reader.longValue(2)).isEqualTo(-7);
+            reader.next();
+            assertThat(reader.doubleValue(1)).isEqualTo(7.25);
+            assertThat(reader.longValue(2)).isEqualTo(ImdbTsvReader.MISSING);
+            reader.next();
+            assertThat(reader.doubleValue(1)).isNaN();
+            assertThat(reader.longValue(2)).isEqualTo(ImdbTsvReader.MISSING);
+        }
+    }
+
+    @Test
+    void idSetTracksParsedIdentifiers() {
+        ImdbIdSet set = new ImdbIdSet(2);
+        for (int i = 1; i <= 10_000; i++) {
+            set.add(i * 7);
+        }
+
+        assertThat(set.size()).isEqualTo(10_000);
+        assertThat(set.contains(ImdbIdSet.parse("tt0000007"))).isTrue();
+        assertThat(set.contains(ImdbIdSet.parse("tt0000008"))).isFalse();
+        assertThat(ImdbIdSet.parse("\\N")).isEqualTo(-1);
+    }
+
+    private Path gzip(String content) throws Exception {
+        Path file = tempDir.resolve("sample.tsv.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+}
@@ -0,0 +1,160 @@
+package com.gnemirko.imdbvec.importer;
+
+import com.gnemirko.imdbvec.config.ImdbImportProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ImportCheckpointStoreTest {
+
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final DataSource dataSource = mock(DataSource.class);
+    private final Connection lockConnection = mock(Connection.class);
+    private final PreparedStatement lockStatement = mock(PreparedStatement.class);
+    private final ResultSet lockResult = mock(ResultSet.class);
+
+    private final ImdbImportProperties properties = new ImdbImportProperties();
+    private ImportCheckpointStore store;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(jdbc.getDataSource()).thenReturn(dataSource);
+        when(dataSource.getConnection()).thenReturn(lockConnection);
+        when(lockConnection.prepareStatement(anyString())).thenReturn(lockStatement);
+        when(lockStatement.executeQuery()).thenReturn(lockResult);
+        when(lockResult.next()).thenReturn(true);
+        when(lockResult.getBoolean(1)).thenReturn(true);
+        store = new ImportCheckpointStore(jdbc, mock(PlatformTransactionManager.class), properties);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void resumesTheNewestUnfinishedRun() {
+        ImportCheckpointStore.Run failed = run(7, ImportCheckpointStore.FAILED);
+        when(jdbc.query(contains("r.status IN ('RUNNING', 'FAILED')"), any(RowMapper.class), eq(86_400L)))
+                .thenReturn(List.of(failed));
+
+        ImportCheckpointStore.Run run = store.resumeOrStart(true);
+
+        assertThat(run.id()).isEqualTo(7);
+        verify(jdbc).update(contains("SET status = ?, finished_at = NULL"), eq(ImportCheckpointStore.RUNNING), eq(7L));
+        verify(jdbc, never()).update(contains("SET status = ?, finished_at = clock_timestamp() WHERE status IN"), any(Object[].class));
+        verify(jdbc, never()).queryForObject(contains("INSERT INTO import_run"), any(RowMapper.class), any(Object[].class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void freshRunAbandonsUnfinishedOnes() {
+        when(jdbc.queryForObject(contains("INSERT INTO import_run"), any(RowMapper.class), eq(ImportCheckpointStore.RUNNING)))
+                .thenReturn(run(8, ImportCheckpointStore.RUNNING));
+
+        ImportCheckpointStore.Run run = store.resumeOrStart(false);
+
+        assertThat(run.id()).isEqualTo(8);
+        verify(jdbc).update(contains("WHERE status IN ('RUNNING', 'FAILED')"), eq(ImportCheckpointStore.ABANDONED));
+        verify(jdbc, never()).query(anyString(), any(RowMapper.class), any(Object[].class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void abandonsUnfinishedRunsOlderThanTheResumeAge() {
+        when(jdbc.query(contains("r.status IN ('RUNNING', 'FAILED')"), any(RowMapper.class), eq(86_400L)))
+                .thenReturn(List.of());
+        when(jdbc.queryForObject(contains("INSERT INTO import_run"), any(RowMapper.class), eq(ImportCheckpointStore.RUNNING)))
+                .thenReturn(run(8, ImportCheckpointStore.RUNNING));
+
+        ImportCheckpointStore.Run run = store.resumeOrStart(true);
+
+        assertThat(run.id()).isEqualTo(8);
+        verify(jdbc).update(contains("WHERE status IN ('RUNNING', 'FAILED')"), eq(ImportCheckpointStore.ABANDONED));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void aZeroResumeAgeNeverResumes() {
+        properties.setResumeMaxAge(Duration.ZERO);
+        when(jdbc.queryForObject(contains("INSERT INTO import_run"), any(RowMapper.class), eq(ImportCheckpointStore.RUNNING)))
+                .thenReturn(run(8, ImportCheckpointStore.RUNNING));
+
+        assertThat(new ImportCheckpointStore(jdbc, mock(PlatformTransactionManager.class), properties).resumeOrStart(true).id())
+                .isEqualTo(8);
+        verify(jdbc, never()).query(anyString(), any(RowMapper.class), any(Object[].class));
+    }
+
+    @Test
+    void refusesToStartWhileAnotherRunHoldsTheLock() throws Exception {
+        when(lockResult.getBoolean(1)).thenReturn(false);
+
+        assertThatThrownBy(() -> store.resumeOrStart(true))
+                .isInstanceOf(CannotAcquireLockException.class)
+                .hasMessageContaining("in progress");
+
+        verify(lockConnection).close();
+        verify(jdbc, never()).update(anyString(), any(Object[].class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void finishReleasesTheRunLock() throws Exception {
+        when(jdbc.queryForObject(contains("INSERT INTO import_run"), any(RowMapper.class), eq(ImportCheckpointStore.RUNNING)))
+                .thenReturn(run(9, ImportCheckpointStore.RUNNING));
+        ImportCheckpointStore.Run run = store.resumeOrStart(false);
+
+        verify(lockConnection).prepareStatement("SELECT pg_try_advisory_lock(?)");
+        verify(lockConnection, never()).close();
+
+        store.finish(run, null);
+
+        verify(jdbc).update(contains("UPDATE import_run SET status = ?"), eq(ImportCheckpointStore.COMPLETED), eq(null), eq(9L));
+        verify(lockConnection).prepareStatement("SELECT pg_advisory_unlock(?)");
+        verify(lockStatement, times(2)).setLong(1, ImportCheckpointStore.RUN_LOCK_KEY);
+        verify(lockConnection).close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void skipsStagesTheRunAlreadyCompleted() throws Exception {
+        ImportCheckpointStore.StageRecord select = new ImportCheckpointStore.StageRecord(ImportStage.SELECT,
+                ImportCheckpointStore.COMPLETED, OffsetDateTime.now(), OffsetDateTime.now(), 12L, 100L, null);
+        when(jdbc.query(contains("status = 'COMPLETED'"), any(RowMapper.class), eq(7L))).thenReturn(List.of(select));
+        AtomicBoolean executed = new AtomicBoolean();
+
+        ImportCheckpointStore.StageRecord record = store.run(run(7, ImportCheckpointStore.RUNNING), ImportStage.SELECT, true,
+                () -> {
+                    executed.set(true);
+                    return ImportStageResult.of(1);
+                });
+
+        assertThat(record).isSameAs(select);
+        assertThat(executed).isFalse();
+        verify(jdbc, never()).update(contains("INSERT INTO import_stage"), any(Object[].class));
+    }
+
+    private static ImportCheckpointStore.Run run(long id, String status) {
+        return new ImportCheckpointStore.Run(id, status, OffsetDateTime.now(), null, null);
+    }
+}
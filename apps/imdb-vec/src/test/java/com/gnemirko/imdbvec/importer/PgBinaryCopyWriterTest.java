@@ -0,0 +1,63 @@
+package com.gnemirko.imdbvec.importer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PgBinaryCopyWriterTest {
+
+    @Test
+    void writesHeaderTypedFieldsAndTrailer() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PgBinaryCopyWriter writer = new PgBinaryCopyWriter(bytes);
+        byte[] genres = "Crime,Drama".getBytes(StandardCharsets.UTF_8);
+
+        writer.startRow(5);
+        writer.writeText("tt0111161");
+        writer.writeNull();
+        writer.writeSmallint((short) 142);
+        writer.writeDouble(9.3);
+        writer.writeTextArray(genres, 0, genres.length, (byte) ',');
+        writer.finish();
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        byte[] signature = new byte[11];
+        in.readFully(signature);
+        assertThat(signature).isEqualTo(new byte[]{'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0});
+        assertThat(in.readInt()).isZero();
+        assertThat(in.readInt()).isZero();
+
+        assertThat(in.readShort()).isEqualTo((short) 5);
+        assertThat(readText(in)).isEqualTo("tt0111161");
+        assertThat(in.readInt()).isEqualTo(-1);
+        assertThat(in.readInt()).isEqualTo(2);
+        assertThat(in.readShort()).isEqualTo((short) 142);
+        assertThat(in.readInt()).isEqualTo(8);
+        assertThat(in.readDouble()).isEqualTo(9.3);
+
+        int arrayLength = in.readInt();
+        assertThat(arrayLength).isEqualTo(20 + 4 + 5 + 4 + 5);
+        assertThat(in.readInt()).isEqualTo(1);
+        assertThat(in.readInt()).isZero();
+        assertThat(in.readInt()).isEqualTo(25);
+        assertThat(in.readInt()).isEqualTo(2);
+        assertThat(in.readInt()).isEqualTo(1);
+        assertThat(readText(in)).isEqualTo("Crime");
+        assertThat(readText(in)).isEqualTo("Drama");
+
+        assertThat(in.readShort()).isEqualTo((short) -1);
+        assertThat(in.available()).isZero();
+        assertThat(writer.rows()).isEqualTo(1);
+    }
+
+    private static String readText(DataInputStream in) throws Exception {
+        byte[] value = new byte[in.readInt()];
+        in.readFully(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,72 @@
+package com.gnemirko.imdbvec.repo;
+
+import com.gnemirko.common.vector.VectorSearchPlanner;
+import com.gnemirko.imdbvec.config.VectorSearchProperties;
+import com.gnemirko.imdbvec.service.EmbeddingSlot;
+import com.gnemirko.imdbvec.service.EmbeddingSlotStore;
+import com.gnemirko.imdbvec.service.HybridScorer;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MovieJdbcTest {
+
+    private static final EmbeddingSlotStore.SlotState SLOT =
+            new EmbeddingSlotStore.SlotState(EmbeddingSlot.A, "nomic-embed-text", 768, "ACTIVE");
+
+    private final NamedParameterJdbcTemplate np = mock(NamedParameterJdbcTemplate.class);
+    private final VectorSearchPlanner planner = mock(VectorSearchPlanner.class);
+    private final MovieJdbc movies = new MovieJdbc(np, mock(PlatformTransactionManager.class), planner,
+            new VectorSearchProperties(), mock(HybridScorer.class));
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void repeatsAFilteredIndexSearchExactlyWhenItComesUpShort() {
+        when(planner.choose(anyString(), any(MapSqlParameterSource.class), anyBoolean()))
+                .thenReturn(VectorSearchPlanner.Strategy.INDEX);
+        when(planner.candidates(any(), eq(SLOT), anyString(), any(MapSqlParameterSource.class), anyInt()))
+                .thenReturn("SELECT 1 AS id, 0.0 AS distance");
+        when(np.query(anyString(), any(MapSqlParameterSource.class), any(RowMapper.class))).thenReturn(List.of());
+
+        movies.topN(SLOT, new float[768], filters((short) 1999), 5);
+
+        verify(planner).prepare(VectorSearchPlanner.Strategy.INDEX, SLOT, 20);
+        verify(planner).prepare(VectorSearchPlanner.Strategy.EXACT, SLOT, 20);
+        verify(np, times(2)).query(anyString(), any(MapSqlParameterSource.class), any(RowMapper.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void unfilteredIndexSearchesAreNotRepeated() {
+        when(planner.choose(anyString(), any(MapSqlParameterSource.class), anyBoolean()))
+                .thenReturn(VectorSearchPlanner.Strategy.INDEX);
+        when(planner.candidates(any(), eq(SLOT), anyString(), any(MapSqlParameterSource.class), anyInt()))
+                .thenReturn("SELECT 1 AS id, 0.0 AS distance");
+        when(np.query(anyString(), any(MapSqlParameterSource.class), any(RowMapper.class))).thenReturn(List.of());
+
+        assertThat(movies.topN(SLOT, new float[768], filters(null), 5)).isEmpty();
+
+        verify(planner, never()).prepare(eq(VectorSearchPlanner.Strategy.EXACT), any(), anyInt());
+        verify(np, times(1)).query(anyString(), any(MapSqlParameterSource.class), any(RowMapper.class));
+    }
+
+    private static MovieJdbc.Filters filters(Short fromYear) {
+        return new MovieJdbc.Filters(null, null, null, fromYear, null, null, null);
+    }
+}
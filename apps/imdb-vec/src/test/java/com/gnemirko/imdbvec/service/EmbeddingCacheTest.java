@@ -0,0 +1,108 @@
+package com.gnemirko.imdbvec.service;
+
+import com.gnemirko.imdbvec.config.EmbeddingCacheProperties;
+import com.pgvector.PGvector;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EmbeddingCacheTest {
+
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final EmbeddingCacheProperties properties = new EmbeddingCacheProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final EmbeddingCache cache = new EmbeddingCache(jdbc, properties, meterRegistry);
+
+    @Test
+    void keysTextsByTheirSha256() {
+        assertThat(HexFormat.of().formatHex(EmbeddingCache.key("abc")))
+                .isEqualTo("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad");
+    }
+
+    @Test
+    void returnsHitsInTheOrderOfTheTextsAndCountsHitsAndMisses() throws Exception {
+        cached(new Row("heist", new float[]{3}, false), new Row("alien", new float[]{1}, false));
+
+        List<float[]> vectors = cache.lookup("nomic-embed-text", List.of("alien", "western", "heist"));
+
+        assertThat(vectors).hasSize(3);
+        assertThat(vectors.get(0)).containsExactly(1f);
+        assertThat(vectors.get(1)).isNull();
+        assertThat(vectors.get(2)).containsExactly(3f);
+        assertThat(meterRegistry.get("imdb.embedding.cache.requests").tag("result", "hit").counter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("imdb.embedding.cache.requests").tag("result", "miss").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void readsWithoutWritingWhileTheEntriesAreFresh() throws Exception {
+        cached(new Row("alien", new float[]{1}, false));
+
+        cache.lookup("nomic-embed-text", List.of("alien"));
+
+        verify(jdbc).query(contains("SELECT text_sha256"), any(RowCallbackHandler.class), eq(86_400L),
+                eq("nomic-embed-text"), any(String[].class));
+        verify(jdbc, never()).update(anyString(), any(Object[].class));
+    }
+
+    @Test
+    void touchesOnlyTheHitsThatWentStale() throws Exception {
+        cached(new Row("alien", new float[]{1}, true), new Row("heist", new float[]{3}, false));
+
+        cache.lookup("nomic-embed-text", List.of("alien", "heist"));
+
+        verify(jdbc).update(contains("SET last_used_at = now()"), eq("nomic-embed-text"),
+                eq(new String[]{"\\x" + HexFormat.of().formatHex(EmbeddingCache.key("alien"))}));
+    }
+
+    @Test
+    void evictsEverythingBeyondTheNewestMaxEntries() {
+        properties.setMaxEntries(1000);
+        when(jdbc.update(contains("OFFSET ?"), eq(1000L))).thenReturn(7);
+
+        assertThat(cache.evict()).isEqualTo(7);
+
+        verify(jdbc).update(contains("ORDER BY last_used_at DESC"), eq(1000L));
+    }
+
+    @Test
+    void keepsEverythingWhenUnbounded() {
+        properties.setMaxEntries(0);
+
+        assertThat(cache.evict()).isZero();
+
+        verify(jdbc, never()).update(anyString(), any(Object[].class));
+    }
+
+    private record Row(String text, float[] vector, boolean stale) {
+    }
+
+    private void cached(Row... rows) throws Exception {
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (Row cached : rows) {
+                ResultSet row = mock(ResultSet.class);
+                when(row.getBytes(1)).thenReturn(EmbeddingCache.key(cached.text()));
+                when(row.getObject(2)).thenReturn(new PGvector(cached.vector()));
+                when(row.getBoolean(3)).thenReturn(cached.stale());
+                handler.processRow(row);
+            }
+            return null;
+        }).when(jdbc).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+    }
+}
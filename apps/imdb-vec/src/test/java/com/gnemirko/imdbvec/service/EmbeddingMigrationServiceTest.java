@@ -0,0 +1,77 @@
+package com.gnemirko.imdbvec.service;
+
+import com.gnemirko.common.vector.VectorQuantization;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EmbeddingMigrationServiceTest {
+
+    private static final EmbeddingSlotStore.SlotState ACTIVE =
+            new EmbeddingSlotStore.SlotState(EmbeddingSlot.A, "nomic-embed-text", 768, EmbeddingSlotStore.ACTIVE);
+    private static final EmbeddingSlotStore.SlotState FILLING =
+            new EmbeddingSlotStore.SlotState(EmbeddingSlot.B, "mxbai-embed-large", 1024, EmbeddingSlotStore.FILLING);
+
+    private final EmbeddingSlotStore slots = mock(EmbeddingSlotStore.class);
+    private final EmbeddingService embeddings = mock(EmbeddingService.class);
+    private final VectorIndexService indexer = mock(VectorIndexService.class);
+    private final EmbeddingMigrationService service =
+            new EmbeddingMigrationService(slots, embeddings, indexer, "mxbai-embed-large", 1024);
+
+    @Test
+    void keepsTheActiveSlotWhileMoviesAreMissing() {
+        when(slots.prepareMigration("mxbai-embed-large", 1024)).thenReturn(Optional.of(FILLING));
+        when(slots.active()).thenReturn(ACTIVE);
+        when(embeddings.backfillEmbeddings(FILLING)).thenReturn(90L);
+        when(slots.missing(FILLING)).thenReturn(10L);
+
+        EmbeddingMigrationService.Migration migration = service.migrate();
+
+        assertThat(migration.cutOver()).isFalse();
+        assertThat(migration.missing()).isEqualTo(10);
+        assertThat(migration.embedded()).isEqualTo(90);
+        verify(indexer, never()).ensureHnswIndex(any(EmbeddingSlotStore.SlotState.class));
+        verify(slots, never()).cutOver(any());
+    }
+
+    @Test
+    void buildsTheIndexThenCutsOverOnceEveryMovieIsEmbedded() {
+        when(slots.prepareMigration("mxbai-embed-large", 1024)).thenReturn(Optional.of(FILLING));
+        when(slots.active()).thenReturn(ACTIVE);
+        when(embeddings.backfillEmbeddings(FILLING)).thenReturn(100L);
+        when(slots.missing(FILLING)).thenReturn(0L);
+        when(indexer.ensureHnswIndex(FILLING)).thenReturn(new VectorIndexService.IndexBuild(
+                VectorQuantization.HALFVEC, true, 100, 5, 0, Double.NaN, 0, 0, 0, 0));
+
+        EmbeddingMigrationService.Migration migration = service.migrate();
+
+        assertThat(migration.cutOver()).isTrue();
+        assertThat(migration.slot()).isEqualTo(EmbeddingSlot.B);
+        InOrder order = inOrder(embeddings, slots, indexer);
+        order.verify(embeddings).backfillEmbeddings(FILLING);
+        order.verify(slots).missing(FILLING);
+        order.verify(indexer).ensureHnswIndex(FILLING);
+        order.verify(slots).cutOver(FILLING);
+    }
+
+    @Test
+    void doesNothingWhenTheTargetModelIsAlreadyActive() {
+        when(slots.prepareMigration("mxbai-embed-large", 1024)).thenReturn(Optional.empty());
+
+        EmbeddingMigrationService.Migration migration = service.migrate();
+
+        assertThat(migration.slot()).isNull();
+        assertThat(migration.describe()).isEqualTo("active model mxbai-embed-large is current");
+        verify(embeddings, never()).backfillEmbeddings(any(EmbeddingSlotStore.SlotState.class));
+        verify(slots, never()).cutOver(any());
+    }
+}
@@ -0,0 +1,207 @@
+package com.gnemirko.imdbvec.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gnemirko.common.ollama.OllamaConcurrencyLimiter;
+import com.gnemirko.common.ollama.OllamaLimiterProperties;
+import com.gnemirko.imdbvec.model.Movie;
+import com.gnemirko.imdbvec.repo.MovieRepository;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EmbeddingServiceTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<String> texts = new CopyOnWriteArrayList<>();
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    private HttpServer server;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/api/embed", this::embed);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void backfillSendsBoundedConcurrentBatchesWithOneActorQueryPerBatch() {
+        MovieRepository movies = mock(MovieRepository.class);
+        List<Movie> catalog = LongStream.rangeClosed(1, 10).mapToObj(this::movie).toList();
+        when(movies.findBatchMissingEmbedding("a", 0L, 8)).thenReturn(new ArrayList<>(catalog.subList(0, 8)));
+        when(movies.findBatchMissingEmbedding("a", 8L, 8)).thenReturn(new ArrayList<>(catalog.subList(8, 10)));
+        when(movies.findBatchMissingEmbedding("a", 10L, 8)).thenReturn(List.of());
+
+        JdbcTemplate jdbc = mock(JdbcTemplate.class);
+        List<Movie> persisted = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            Collection<Movie> batch = invocation.getArgument(1);
+            persisted.addAll(batch);
+            return new int[0][];
+        }).when(jdbc).batchUpdate(anyString(), any(Collection.class), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+
+        AtomicInteger actorQueries = new AtomicInteger();
+        doAnswer(invocation -> {
+            actorQueries.incrementAndGet();
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (Object id : (Object[]) invocation.getArgument(2)) {
+                ResultSet row = mock(ResultSet.class);
+                when(row.getLong(1)).thenReturn((Long) id);
+                when(row.getString(2)).thenReturn("Actor " + id);
+                handler.processRow(row);
+            }
+            return null;
+        }).when(jdbc).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        EmbeddingService service = new EmbeddingService(
+                4, 2, 8, movies, jdbc, mock(EmbeddingCache.class), activeSlot(), ollama(registry), registry);
+
+        long embedded = service.backfillEmbeddings();
+
+        assertThat(embedded).isEqualTo(10);
+        assertThat(batchSizes).containsExactlyInAnyOrder(4, 4, 2);
+        assertThat(actorQueries).hasValue(3);
+        assertThat(texts).hasSize(10).allSatisfy(text -> assertThat(text).containsPattern("\nActors: Actor \\d+"));
+        assertThat(maxInFlight.get()).isBetween(1, 2);
+        assertThat(persisted).extracting(Movie::getId).containsExactlyInAnyOrderElementsOf(
+                catalog.stream().map(Movie::getId).toList());
+        assertThat(persisted).allSatisfy(movie -> {
+            assertThat(movie.getEmbeddingModel()).isEqualTo("test-model");
+            assertThat(movie.getEmbedding()).hasSize(2);
+            assertThat(movie.getEmbedding()[0]).isEqualTo((float) movie.getPrimaryTitle().length());
+        });
+        assertThat(registry.get("imdb.embedding.backfill.titles").counter().count()).isEqualTo(10);
+        assertThat(registry.get("imdb.embedding.batch.latency").timer().count()).isEqualTo(3);
+    }
+
+    @Test
+    void cachedTextsAreServedWithoutCallingOllama() {
+        MovieRepository movies = mock(MovieRepository.class);
+        List<Movie> catalog = LongStream.rangeClosed(1, 4).mapToObj(this::movie).toList();
+        when(movies.findBatchMissingEmbedding("a", 0L, 8)).thenReturn(new ArrayList<>(catalog));
+        when(movies.findBatchMissingEmbedding("a", 4L, 8)).thenReturn(List.of());
+
+        JdbcTemplate jdbc = mock(JdbcTemplate.class);
+        List<Movie> persisted = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            Collection<Movie> batch = invocation.getArgument(1);
+            persisted.addAll(batch);
+            return new int[0][];
+        }).when(jdbc).batchUpdate(anyString(), any(Collection.class), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+
+        float[] cached = {-1f, -1f};
+        EmbeddingCache cache = mock(EmbeddingCache.class);
+        when(cache.isEnabled()).thenReturn(true);
+        when(cache.lookup(eq("test-model"), any())).thenAnswer(invocation -> {
+            List<String> batch = invocation.getArgument(1);
+            List<float[]> vectors = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) {
+                vectors.add(i % 2 == 0 ? cached : null);
+            }
+            return vectors;
+        });
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        EmbeddingService service = new EmbeddingService(
+                4, 2, 8, movies, jdbc, cache, activeSlot(), ollama(registry), registry);
+
+        assertThat(service.backfillEmbeddings()).isEqualTo(4);
+        assertThat(batchSizes).containsExactly(2);
+        assertThat(persisted).extracting(Movie::getId).containsExactly(1L, 2L, 3L, 4L);
+        assertThat(persisted.get(0).getEmbedding()).isSameAs(cached);
+        assertThat(persisted.get(1).getEmbedding()[0]).isEqualTo((float) persisted.get(1).getPrimaryTitle().length());
+        assertThat(persisted.get(2).getEmbedding()).isSameAs(cached);
+        verify(cache).store(eq("test-model"), eq(List.of(texts.get(0), texts.get(1))), any());
+        verify(cache).evict();
+    }
+
+    private OllamaEmbeddingEngine ollama(SimpleMeterRegistry registry) {
+        return new OllamaEmbeddingEngine("http://127.0.0.1:" + server.getAddress().getPort(), 1, Duration.ZERO, 2,
+                new OllamaConcurrencyLimiter(new OllamaLimiterProperties(), registry));
+    }
+
+    private EmbeddingSlotStore activeSlot() {
+        EmbeddingSlotStore slots = mock(EmbeddingSlotStore.class);
+        when(slots.active()).thenReturn(new EmbeddingSlotStore.SlotState(EmbeddingSlot.A, "test-model", 2, EmbeddingSlotStore.ACTIVE));
+        return slots;
+    }
+
+    private Movie movie(long id) {
+        Movie movie = new Movie();
+        movie.setId(id);
+        movie.setTconst("tt%07d".formatted(id));
+        movie.setPrimaryTitle("Title " + "x".repeat((int) id));
+        return movie;
+    }
+
+    /** Answers with [length of the title line, position] per input after a short delay. */
+    private void embed(HttpExchange exchange) throws IOException {
+        int current = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(current, Math::max);
+        try {
+            JsonNode request = mapper.readTree(exchange.getRequestBody());
+            JsonNode input = request.get("input");
+            batchSizes.add(input.size());
+            input.forEach(text -> texts.add(text.asText()));
+            Thread.sleep(50);
+
+            List<List<Float>> embeddings = new ArrayList<>();
+            for (int i = 0; i < input.size(); i++) {
+                String title = input.get(i).asText().split("\n")[0];
+                embeddings.add(List.of((float) title.length(), (float) i));
+            }
+            byte[] body = mapper.writeValueAsBytes(Map.of("model", request.get("model").asText(), "embeddings", embeddings));
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.gnemirko.imdbvec.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EmbeddingSlotStoreTest {
+
+    private static final EmbeddingSlotStore.SlotState ACTIVE =
+            new EmbeddingSlotStore.SlotState(EmbeddingSlot.A, "nomic-embed-text", 768, EmbeddingSlotStore.ACTIVE);
+
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final EmbeddingSlotStore store =
+            new EmbeddingSlotStore(jdbc, mock(PlatformTransactionManager.class), "nomic-embed-text");
+
+    @Test
+    void claimsTheIdleSlotForANewModel() {
+        slots(ACTIVE, null);
+
+        Optional<EmbeddingSlotStore.SlotState> filling = store.prepareMigration("mxbai-embed-large", 1024);
+
+        assertThat(filling).contains(new EmbeddingSlotStore.SlotState(EmbeddingSlot.B, "mxbai-embed-large", 1024,
+                EmbeddingSlotStore.FILLING));
+        verify(jdbc).execute("DROP INDEX IF EXISTS idx_movie_embedding_b_hnsw");
+        verify(jdbc).update(contains("SET model = ?, dims = ?, status = ?"),
+                eq("mxbai-embed-large"), eq(1024), eq(EmbeddingSlotStore.FILLING), eq("b"));
+    }
+
+    @Test
+    void continuesASlotAlreadyFillingWithTheSameModel() {
+        EmbeddingSlotStore.SlotState filling =
+                new EmbeddingSlotStore.SlotState(EmbeddingSlot.B, "mxbai-embed-large", 1024, EmbeddingSlotStore.FILLING);
+        slots(ACTIVE, filling);
+
+        assertThat(store.prepareMigration("mxbai-embed-large", 1024)).contains(filling);
+        verify(jdbc, never()).execute(anyString());
+    }
+
+    @Test
+    void abandonsTheFillingSlotWhenTheActiveModelIsConfiguredAgain() {
+        slots(ACTIVE, new EmbeddingSlotStore.SlotState(EmbeddingSlot.B, "mxbai-embed-large", 1024, EmbeddingSlotStore.FILLING));
+
+        assertThat(store.prepareMigration("nomic-embed-text", 768)).isEmpty();
+        verify(jdbc).update(contains("SET status = ?, updated_at = now() WHERE slot = ?"), eq(EmbeddingSlotStore.EMPTY), eq("b"));
+    }
+
+    @Test
+    void countsMoviesWithoutAVectorOfTheModel() {
+        EmbeddingSlotStore.SlotState filling =
+                new EmbeddingSlotStore.SlotState(EmbeddingSlot.B, "mxbai-embed-large", 1024, EmbeddingSlotStore.FILLING);
+        when(jdbc.queryForObject("SELECT COUNT(*) FROM movie WHERE embedding_b_model IS DISTINCT FROM ?", Long.class,
+                "mxbai-embed-large")).thenReturn(3L);
+
+        assertThat(store.missing(filling)).isEqualTo(3);
+    }
+
+    @Test
+    void cutOverRetiresTheActiveSlotAndRefusesASlotNoLongerFilling() {
+        EmbeddingSlotStore.SlotState filling =
+                new EmbeddingSlotStore.SlotState(EmbeddingSlot.B, "mxbai-embed-large", 1024, EmbeddingSlotStore.FILLING);
+        when(jdbc.update(contains("WHERE slot = ? AND status = ?"), eq(EmbeddingSlotStore.ACTIVE), eq("b"),
+                eq(EmbeddingSlotStore.FILLING))).thenReturn(1, 0);
+
+        store.cutOver(filling);
+        verify(jdbc).update(contains("WHERE status = ?"), eq(EmbeddingSlotStore.RETIRED), eq(EmbeddingSlotStore.ACTIVE));
+
+        assertThatThrownBy(() -> store.cutOver(filling))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("no longer being filled");
+    }
+
+    @SuppressWarnings("unchecked")
+    private void slots(EmbeddingSlotStore.SlotState active, EmbeddingSlotStore.SlotState filling) {
+        when(jdbc.query(anyString(), any(RowMapper.class), eq(EmbeddingSlotStore.ACTIVE))).thenReturn(List.of(active));
+        when(jdbc.query(anyString(), any(RowMapper.class), eq(EmbeddingSlotStore.FILLING)))
+                .thenReturn(filling == null ? List.of() : List.of(filling));
+    }
+}
@@ -0,0 +1,30 @@
+package com.gnemirko.imdbvec.service;
+
+import com.gnemirko.imdbvec.config.RecommendProperties;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class HybridScorerTest {
+
+    @Test
+    void blendsSimilarityRatingAndVotesWithTheDefaultWeights() {
+        HybridScorer scorer = new HybridScorer(new RecommendProperties());
+
+        assertThat(scorer.score(0.8, 7.5, 1000)).isCloseTo(0.60 * 0.8 + 0.30 * 0.75 + 0.10 * 3, within(1e-9));
+        assertThat(scorer.score(0.8, null, null)).isCloseTo(0.48, within(1e-9));
+        assertThat(scorer.score(0.8, 12.0, 0)).isCloseTo(0.48 + 0.30, within(1e-9));
+    }
+
+    @Test
+    void weightsAreConfigurable() {
+        RecommendProperties properties = new RecommendProperties();
+        properties.setSimilarityWeight(1.0);
+        properties.setRatingWeight(0);
+        properties.setVotesWeight(0);
+        HybridScorer scorer = new HybridScorer(properties);
+
+        assertThat(scorer.score(0.9, 2.0, 100)).isGreaterThan(scorer.score(0.5, 9.9, 2_000_000));
+    }
+}
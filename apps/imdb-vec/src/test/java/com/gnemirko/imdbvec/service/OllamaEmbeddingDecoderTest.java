@@ -0,0 +1,60 @@
+package com.gnemirko.imdbvec.service;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OllamaEmbeddingDecoderTest {
+
+    @Test
+    void readsTheSingleEmbeddingAndSkipsOtherFields() throws Exception {
+        OllamaEmbeddingDecoder decoder = new OllamaEmbeddingDecoder(3);
+
+        float[] embedding = decoder.readEmbedding(json("""
+                {"model":"nomic-embed-text","options":{"nested":[1,2]},"embedding":[0.5,-1,2.5e-3],"done":true}
+                """));
+
+        assertThat(embedding).containsExactly(0.5f, -1f, 0.0025f);
+    }
+
+    @Test
+    void readsBatchEmbeddingsInOrderWhateverTheHint() throws Exception {
+        OllamaEmbeddingDecoder decoder = new OllamaEmbeddingDecoder(2);
+
+        List<float[]> embeddings = decoder.readEmbeddings(json("""
+                {"model":"m","embeddings":[[1,2,3,4,5],[0.25],[]],"total_duration":12}
+                """));
+
+        assertThat(embeddings).hasSize(3);
+        assertThat(embeddings.get(0)).containsExactly(1f, 2f, 3f, 4f, 5f);
+        assertThat(embeddings.get(1)).containsExactly(0.25f);
+        assertThat(embeddings.get(2)).isEmpty();
+    }
+
+    @Test
+    void missingVectorsDecodeToNull() throws Exception {
+        OllamaEmbeddingDecoder decoder = new OllamaEmbeddingDecoder(768);
+
+        assertThat(decoder.readEmbedding(json("{\"error\":\"model not found\"}"))).isNull();
+        assertThat(decoder.readEmbeddings(json("{\"embedding\":[1,2]}"))).isNull();
+    }
+
+    @Test
+    void rejectsNonNumericComponents() {
+        OllamaEmbeddingDecoder decoder = new OllamaEmbeddingDecoder(768);
+
+        assertThatThrownBy(() -> decoder.readEmbedding(json("{\"embedding\":[1,\"x\"]}")))
+                .isInstanceOf(JsonParseException.class);
+    }
+
+    private static InputStream json(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
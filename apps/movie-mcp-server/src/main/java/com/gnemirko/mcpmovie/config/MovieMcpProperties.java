@@ -1,15 +1,67 @@
 package com.gnemirko.mcpmovie.config;
 
+import com.gnemirko.common.vector.VectorSearchPlanner;
+import com.gnemirko.common.vector.VectorSearchPlanner.IterativeScan;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.time.Duration;
+
 @ConfigurationProperties(prefix = "app.mcp")
 public record MovieMcpProperties(
         String name,
         String version,
         String description,
-        int maxResults
+        int maxResults,
+        /** How long the active embedding slot read from {@code embedding_model_state} is reused. */
+        Duration embeddingStateTtl,
+        /** Query embeddings kept in memory; 0 disables the cache. */
+        int embeddingCacheSize,
+        Duration embeddingCacheTtl,
+        VectorSearch vectorSearch,
+        ActorDictionary actorDictionary
 ) {
 
+    /**
+     * How {@code movie.search} runs its nearest-neighbour query; see {@code VectorSearchPlanner}. Unset
+     * values take the defaults below; set ones are clamped the same way imdb-vec's are.
+     *
+     * @param exactMaxRows  filters matching at most this many movies are searched exactly instead of through the index; 0 turns exact search off
+     * @param efSearch      {@code hnsw.ef_search} of index searches
+     * @param iterativeScan {@code hnsw.iterative_scan}: {@code off}, {@code strict_order} or {@code relaxed_order} (pgvector 0.8+)
+     * @param maxScanTuples upper bound on the index tuples one iterative scan visits
+     * @param rerankFactor  with a binary-quantized index, candidates fetched per result for the float re-rank
+     */
+    public record VectorSearch(Integer exactMaxRows, Integer efSearch, IterativeScan iterativeScan, Integer maxScanTuples,
+                               Integer rerankFactor) {
+
+        public VectorSearch {
+            exactMaxRows = exactMaxRows == null ? 20_000 : exactMaxRows;
+            efSearch = efSearch == null ? 100 : efSearch;
+            iterativeScan = iterativeScan == null ? IterativeScan.RELAXED_ORDER : iterativeScan;
+            maxScanTuples = maxScanTuples == null ? 20_000 : maxScanTuples;
+            rerankFactor = rerankFactor == null ? 4 : rerankFactor;
+        }
+
+        public VectorSearchPlanner.Settings settings() {
+            return new VectorSearchPlanner.Settings(exactMaxRows, efSearch, iterativeScan, maxScanTuples, rerankFactor);
+        }
+    }
+
+    /**
+     * The in-memory actor name index; see {@code ActorDictionary}.
+     *
+     * @param enabled         whether actor names are resolved in memory rather than by the database alone
+     * @param refreshInterval how often the importer's stage log is checked for a newer principals import
+     */
+    public record ActorDictionary(Boolean enabled, Duration refreshInterval) {
+
+        public ActorDictionary {
+            enabled = enabled == null || enabled;
+            refreshInterval = (refreshInterval == null || refreshInterval.isNegative() || refreshInterval.isZero())
+                    ? Duration.ofMinutes(5) : refreshInterval;
+        }
+    }
+
     public MovieMcpProperties {
         String defaultName = "Movie Recommendations MCP";
         String defaultVersion = "1.0.0";
@@ -18,5 +70,10 @@ public record MovieMcpProperties(
         version = (version == null || version.isBlank()) ? defaultVersion : version;
         description = (description == null || description.isBlank()) ? defaultDescription : description;
         maxResults = maxResults <= 0 ? 15 : maxResults;
+        embeddingStateTtl = (embeddingStateTtl == null || embeddingStateTtl.isNegative()) ? Duration.ofSeconds(30) : embeddingStateTtl;
+        embeddingCacheSize = Math.max(0, embeddingCacheSize);
+        embeddingCacheTtl = (embeddingCacheTtl == null || embeddingCacheTtl.isNegative()) ? Duration.ofMinutes(10) : embeddingCacheTtl;
+        vectorSearch = vectorSearch == null ? new VectorSearch(null, null, null, null, null) : vectorSearch;
+        actorDictionary = actorDictionary == null ? new ActorDictionary(null, null) : actorDictionary;
     }
 }
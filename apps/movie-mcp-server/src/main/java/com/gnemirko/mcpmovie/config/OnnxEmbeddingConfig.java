@@ -0,0 +1,26 @@
+package com.gnemirko.mcpmovie.config;
+
+import ai.onnxruntime.OrtException;
+import com.gnemirko.mcpmovie.service.OnnxEmbeddingModel;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+
+/**
+ * Replaces the Ollama embedding model with an in-process ONNX one. Spring AI's Ollama embedding
+ * auto-configuration only applies while {@code spring.ai.model.embedding} is {@code ollama}, so
+ * exactly one {@code EmbeddingModel} exists either way.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "spring.ai.model.embedding", havingValue = "onnx")
+@EnableConfigurationProperties(OnnxEmbeddingProperties.class)
+public class OnnxEmbeddingConfig {
+
+    @Bean
+    public OnnxEmbeddingModel onnxEmbeddingModel(OnnxEmbeddingProperties properties) throws IOException, OrtException {
+        return new OnnxEmbeddingModel(properties);
+    }
+}
@@ -0,0 +1,26 @@
+package com.gnemirko.mcpmovie.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/** In-process embedding model used when {@code spring.ai.model.embedding=onnx}. */
+@ConfigurationProperties(prefix = "app.mcp.onnx")
+public record OnnxEmbeddingProperties(
+        /** The sentence-embedding model exported to ONNX. */
+        String modelPath,
+        /** The model's HuggingFace {@code tokenizer.json}. */
+        String tokenizerPath,
+        /** Model name the vectors belong to; has to match the model of the active embedding slot. */
+        String model,
+        int maxSequenceLength,
+        /** ONNX Runtime threads per inference; 0 lets ONNX Runtime use every core. */
+        int intraOpThreads,
+        String outputName
+) {
+
+    public OnnxEmbeddingProperties {
+        model = (model == null || model.isBlank()) ? "nomic-embed-text" : model;
+        maxSequenceLength = maxSequenceLength <= 0 ? 512 : maxSequenceLength;
+        intraOpThreads = Math.max(0, intraOpThreads);
+        outputName = (outputName == null || outputName.isBlank()) ? "last_hidden_state" : outputName;
+    }
+}
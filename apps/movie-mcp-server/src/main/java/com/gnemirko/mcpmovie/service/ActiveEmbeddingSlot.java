@@ -0,0 +1,85 @@
+package com.gnemirko.mcpmovie.service;
+
+import com.gnemirko.common.vector.VectorQuantization;
+import com.gnemirko.common.vector.VectorSlot;
+import com.gnemirko.mcpmovie.config.MovieMcpProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The embedding column searches read and the model query vectors have to come from, as published
+ * by the imdb-vec importer in {@code embedding_model_state}. The importer switches models by
+ * flipping that row once the new column is complete and keeps the old column intact, so reusing
+ * a slightly stale answer for {@code app.mcp.embedding-state-ttl} is safe.
+ */
+@Component
+public class ActiveEmbeddingSlot {
+
+    private static final Logger log = LoggerFactory.getLogger(ActiveEmbeddingSlot.class);
+
+    /** Used against databases that predate embedding slots; {@code null} model means the configured one. */
+    static final Slot DEFAULT = new Slot("embedding", null, null, VectorQuantization.NONE);
+
+    private static final Pattern COLUMN_NAME = Pattern.compile("[a-z_][a-z0-9_]*");
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final MovieMcpProperties properties;
+
+    private volatile Slot cached;
+    private volatile long cachedAtNanos;
+
+    public ActiveEmbeddingSlot(NamedParameterJdbcTemplate jdbcTemplate, MovieMcpProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.properties = properties;
+    }
+
+    /** {@code dims} is {@code null} for the typed column of databases that predate embedding slots. */
+    public record Slot(String column, String model, Integer dims, VectorQuantization quantization) implements VectorSlot {
+
+        @Override
+        public String column(String alias) {
+            return alias == null ? column : alias + "." + column;
+        }
+    }
+
+    public Slot current() {
+        Slot slot = cached;
+        if (slot != null && System.nanoTime() - cachedAtNanos < properties.embeddingStateTtl().toNanos()) {
+            return slot;
+        }
+        slot = load();
+        cached = slot;
+        cachedAtNanos = System.nanoTime();
+        return slot;
+    }
+
+    private Slot load() {
+        // Checked up front: a failing query would abort the caller's transaction.
+        Boolean present = jdbcTemplate.queryForObject("SELECT to_regclass('embedding_model_state') IS NOT NULL",
+                new MapSqlParameterSource(), Boolean.class);
+        if (!Boolean.TRUE.equals(present)) {
+            log.debug("embedding_model_state does not exist; searching {}", DEFAULT.column());
+            return DEFAULT;
+        }
+        List<Slot> active = jdbcTemplate.query("""
+                SELECT embedding_column, model, dims, index_quantization
+                FROM embedding_model_state
+                WHERE status = 'ACTIVE'
+                """, new MapSqlParameterSource(), (rs, rowNum) -> new Slot(rs.getString(1), rs.getString(2),
+                (Integer) rs.getObject(3), VectorQuantization.fromCode(rs.getString(4))));
+        if (active.isEmpty()) {
+            return DEFAULT;
+        }
+        Slot slot = active.getFirst();
+        if (!COLUMN_NAME.matcher(slot.column()).matches()) {
+            throw new IllegalStateException("Unexpected embedding column in embedding_model_state: " + slot.column());
+        }
+        return slot;
+    }
+}
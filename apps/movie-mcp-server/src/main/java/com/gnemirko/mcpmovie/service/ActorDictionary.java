@@ -0,0 +1,131 @@
+package com.gnemirko.mcpmovie.service;
+
+import com.gnemirko.mcpmovie.config.MovieMcpProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Everyone credited as an actor or actress, held in an {@link ActorNameIndex} so request names
+ * resolve without a database round trip and tolerate typos. The index is loaded in the background
+ * once the application is ready and reloaded whenever the imdb-vec importer records a newer
+ * completed {@code principals} or {@code swap} stage; until the first load finishes
+ * {@link #resolve} answers {@code null} and {@link ActorResolver} queries the database instead.
+ */
+@Component
+public class ActorDictionary implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ActorDictionary.class);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final MovieMcpProperties.ActorDictionary settings;
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "actor-dictionary");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile ActorNameIndex index;
+    private volatile String loadedImport;
+
+    public ActorDictionary(NamedParameterJdbcTemplate jdbcTemplate, MovieMcpProperties properties, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.settings = properties.actorDictionary();
+        Gauge.builder("mcp.actor.dictionary.names", this, dictionary -> {
+                    ActorNameIndex current = dictionary.index;
+                    return current == null ? 0 : current.size();
+                })
+                .description("Actor names held in memory for filter resolution")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!settings.enabled()) {
+            log.info("Actor dictionary disabled; actor names are resolved by the database");
+            return;
+        }
+        long interval = settings.refreshInterval().toMillis();
+        refresher.scheduleWithFixedDelay(this::refresh, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * Ids of the people whose normalized name contains {@code token} or nearly does;
+     * {@code null} when the dictionary is not loaded or {@code token} is too short for it.
+     */
+    public List<Long> resolve(String token) {
+        ActorNameIndex current = index;
+        return current == null ? null : current.resolve(token);
+    }
+
+    void refresh() {
+        try {
+            String latestImport = latestImport();
+            if (index != null && Objects.equals(latestImport, loadedImport)) {
+                return;
+            }
+            long started = System.nanoTime();
+            ActorNameIndex loaded = load();
+            index = loaded;
+            loadedImport = latestImport;
+            log.info("Loaded {} actor names in {} ms", loaded.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (RuntimeException e) {
+            // Keep serving the previous index (or the database lookup) and try again next round.
+            log.warn("Could not load the actor dictionary: {}", e.getMessage());
+        }
+    }
+
+    /** When people were last rewritten, or {@code null} against a database without the import log. */
+    private String latestImport() {
+        Boolean present = jdbcTemplate.queryForObject("SELECT to_regclass('import_stage') IS NOT NULL",
+                new MapSqlParameterSource(), Boolean.class);
+        if (!Boolean.TRUE.equals(present)) {
+            return null;
+        }
+        return jdbcTemplate.queryForObject("""
+                SELECT max(finished_at)::text
+                FROM import_stage
+                WHERE stage IN ('principals', 'swap') AND status = 'COMPLETED'
+                """, new MapSqlParameterSource(), String.class);
+    }
+
+    private ActorNameIndex load() {
+        long[][] ids = {new long[1024]};
+        List<String> names = new ArrayList<>();
+        jdbcTemplate.query("""
+                SELECT p.id, p.normalized_name
+                FROM person p
+                WHERE EXISTS (SELECT 1 FROM movie_principal mp
+                              WHERE mp.person_id = p.id AND mp.category IN ('actor', 'actress'))
+                ORDER BY p.id
+                """, new MapSqlParameterSource(), (RowCallbackHandler) rs -> {
+            if (names.size() == ids[0].length) {
+                ids[0] = Arrays.copyOf(ids[0], ids[0].length * 2);
+            }
+            ids[0][names.size()] = rs.getLong(1);
+            names.add(rs.getString(2));
+        });
+        return new ActorNameIndex(Arrays.copyOf(ids[0], names.size()), names.toArray(String[]::new));
+    }
+}
@@ -0,0 +1,205 @@
+package com.gnemirko.mcpmovie.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable trigram index over normalized actor names (see {@link ActorResolver#normalize}). The
+ * names and person ids sit in two parallel arrays; for each of the 37^3 possible trigrams the
+ * index keeps the sorted positions of the names containing it. A name is looked up as a substring
+ * first; when nothing contains it, names within a few edits of it are accepted, so a misspelt
+ * actor still narrows the search instead of emptying it.
+ */
+final class ActorNameIndex {
+
+    private static final int ALPHABET = 37;
+    private static final int[] NO_POSTINGS = new int[0];
+
+    private final long[] personIds;
+    private final String[] names;
+    private final int[][] postings;
+
+    ActorNameIndex(long[] personIds, String[] names) {
+        if (personIds.length != names.length) {
+            throw new IllegalArgumentException("Got " + personIds.length + " ids for " + names.length + " names");
+        }
+        this.personIds = personIds;
+        this.names = names;
+        int[] counts = new int[ALPHABET * ALPHABET * ALPHABET];
+        int[][] grams = new int[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            grams[i] = trigrams(names[i]);
+            for (int gram : grams[i]) {
+                counts[gram]++;
+            }
+        }
+        this.postings = new int[counts.length][];
+        for (int gram = 0; gram < counts.length; gram++) {
+            postings[gram] = counts[gram] == 0 ? NO_POSTINGS : new int[counts[gram]];
+        }
+        int[] fill = new int[counts.length];
+        for (int i = 0; i < names.length; i++) {
+            for (int gram : grams[i]) {
+                postings[gram][fill[gram]++] = i;
+            }
+        }
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    /**
+     * Person ids of every name containing {@code token}, or failing that of the names fewest edits
+     * (at most {@link #maxEdits}) from containing it; {@code null} when {@code token} is too short
+     * to be looked up by trigram.
+     */
+    List<Long> resolve(String token) {
+        int[] grams = trigrams(token);
+        if (grams.length == 0) {
+            return null;
+        }
+        List<Long> matches = contained(token, grams);
+        return matches.isEmpty() ? similar(token, grams) : matches;
+    }
+
+    private List<Long> contained(String token, int[] grams) {
+        int[] shortest = postings[grams[0]];
+        for (int gram : grams) {
+            if (postings[gram].length < shortest.length) {
+                shortest = postings[gram];
+            }
+        }
+        List<Long> matches = new ArrayList<>();
+        for (int position : shortest) {
+            if (names[position].contains(token)) {
+                matches.add(personIds[position]);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Names within {@code k} edits of containing {@code token}. Such a name still shares all but
+     * {@code 3k} of the token's trigrams, which prunes the candidates before any distance is computed.
+     * It then appears in at least one of the shortest {@code 3k + 1} posting lists, so only those are
+     * merged and the longer ones are probed by binary search; the work follows the postings touched,
+     * not the size of the catalog.
+     */
+    private List<Long> similar(String token, int[] grams) {
+        int k = maxEdits(token.length());
+        int required = grams.length - 3 * k;
+        if (k == 0 || required < 1) {
+            return List.of();
+        }
+        int[][] lists = new int[grams.length][];
+        for (int i = 0; i < grams.length; i++) {
+            lists[i] = postings[grams[i]];
+        }
+        Arrays.sort(lists, Comparator.comparingInt(list -> list.length));
+        int sources = lists.length - required + 1;
+        int[] cursors = new int[sources];
+        List<Long> matches = new ArrayList<>();
+        int best = k;
+        while (true) {
+            int position = Integer.MAX_VALUE;
+            for (int i = 0; i < sources; i++) {
+                if (cursors[i] < lists[i].length) {
+                    position = Math.min(position, lists[i][cursors[i]]);
+                }
+            }
+            if (position == Integer.MAX_VALUE) {
+                return matches;
+            }
+            int shared = 0;
+            for (int i = 0; i < sources; i++) {
+                if (cursors[i] < lists[i].length && lists[i][cursors[i]] == position) {
+                    shared++;
+                    cursors[i]++;
+                }
+            }
+            for (int i = sources; i < lists.length && shared < required && shared + lists.length - i >= required; i++) {
+                if (Arrays.binarySearch(lists[i], position) >= 0) {
+                    shared++;
+                }
+            }
+            if (shared < required) {
+                continue;
+            }
+            int edits = substringDistance(token, names[position], best);
+            if (edits > best) {
+                continue;
+            }
+            if (edits < best) {
+                matches.clear();
+                best = edits;
+            }
+            matches.add(personIds[position]);
+        }
+    }
+
+    /**
+     * Typos tolerated in a name of {@code length} characters: as many as still leave a match
+     * sharing a trigram with the token ({@code length - 2 - 3k >= 1}), since {@link #similar} only
+     * finds candidates through their trigrams. That is one edit from six characters and two from nine.
+     */
+    static int maxEdits(int length) {
+        if (length < 6) {
+            return 0;
+        }
+        return length < 9 ? 1 : 2;
+    }
+
+    /**
+     * Fewest edits turning {@code token} into some substring of {@code name}, or {@code limit + 1}
+     * once it is certain to exceed {@code limit}.
+     */
+    static int substringDistance(String token, String name, int limit) {
+        int[] previous = new int[name.length() + 1];
+        int[] current = new int[name.length() + 1];
+        for (int i = 1; i <= token.length(); i++) {
+            current[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= name.length(); j++) {
+                int substitution = previous[j - 1] + (token.charAt(i - 1) == name.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > limit) {
+                return limit + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        int distance = Integer.MAX_VALUE;
+        for (int value : previous) {
+            distance = Math.min(distance, value);
+        }
+        return distance;
+    }
+
+    /** Distinct trigrams of {@code text}, each packed into an int below {@code 37^3}. */
+    static int[] trigrams(String text) {
+        if (text.length() < 3) {
+            return NO_POSTINGS;
+        }
+        int[] grams = new int[text.length() - 2];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = (code(text.charAt(i)) * ALPHABET + code(text.charAt(i + 1))) * ALPHABET + code(text.charAt(i + 2));
+        }
+        return Arrays.stream(grams).sorted().distinct().toArray();
+    }
+
+    private static int code(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 1;
+        }
+        if (c >= '0' && c <= '9') {
+            return c - '0' + 27;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,68 @@
+package com.gnemirko.mcpmovie.service;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Turns the actor names of a request into {@code person} filters once, before the search runs.
+ * A name matches every person whose {@code normalized_name} (lower-case letters and digits, filled
+ * by the importer) contains it. {@link ActorDictionary} answers from memory with person ids and,
+ * when nothing contains the name, falls back to names a typo or two away. While it is not loaded,
+ * or for names under three characters, the filter stays a {@code LIKE} subquery for the trigram
+ * index on the column, so a short name never materialises its thousands of matches.
+ */
+@Component
+public class ActorResolver {
+
+    private final ActorDictionary dictionary;
+
+    public ActorResolver(ActorDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * The people a name refers to: their ids when the dictionary knows them, otherwise a
+     * {@code LIKE} pattern for the database to match.
+     */
+    public record People(Long[] ids, String pattern) {
+
+        /** Whether the name is known to match nobody. */
+        public boolean none() {
+            return ids != null && ids.length == 0;
+        }
+
+        /** Condition on {@code mp.person_id}, with the ids or the pattern bound to {@code param}. */
+        public String condition(String param, MapSqlParameterSource params) {
+            if (ids != null) {
+                params.addValue(param, ids);
+                return "mp.person_id = ANY(:%s)".formatted(param);
+            }
+            params.addValue(param, pattern);
+            return "mp.person_id IN (SELECT id FROM person WHERE normalized_name LIKE :%s)".formatted(param);
+        }
+    }
+
+    /** The people {@code name} refers to; {@code null} for a name without letters or digits. */
+    public People resolve(String name) {
+        String token = normalize(name);
+        if (token.isEmpty()) {
+            return null;
+        }
+        List<Long> people = dictionary.resolve(token);
+        if (people != null) {
+            return new People(people.toArray(Long[]::new), null);
+        }
+        return new People(null, "%" + token + "%");
+    }
+
+    /** The form names are stored in {@code person.normalized_name}. */
+    static String normalize(String name) {
+        if (name == null) {
+            return "";
+        }
+        return name.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]", "");
+    }
+}
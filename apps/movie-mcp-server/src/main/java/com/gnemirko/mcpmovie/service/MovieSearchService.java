@@ -1,14 +1,16 @@
 package com.gnemirko.mcpmovie.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gnemirko.common.vector.VectorSearchPlanner;
 import com.gnemirko.mcpmovie.config.MovieMcpProperties;
 import com.gnemirko.mcpmovie.model.MovieActor;
 import com.gnemirko.mcpmovie.model.MovieContext;
 import com.gnemirko.mcpmovie.model.MovieSearchRequest;
+import com.pgvector.PGvector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.ollama.api.OllamaOptions;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
@@ -21,7 +23,6 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
@@ -31,78 +32,59 @@ public class MovieSearchService {
 
     private static final Logger log = LoggerFactory.getLogger(MovieSearchService.class);
 
+    /** Ranks the candidates {@link VectorSearchPlanner} selects ({@code %1$s}); the cast is kept on the movie row. */
     private static final String SEARCH_SQL = """
-            WITH filtered AS (
-                SELECT id, tconst, primary_title, start_year, rating, votes,
-                       genres, plot, title_type, runtime_minutes, is_adult, embedding
-                FROM movie m
-                WHERE %s
+            WITH nearest AS MATERIALIZED (
+            %1$s
             )
-            SELECT filtered.tconst,
-                   filtered.primary_title,
-                   filtered.start_year,
-                   filtered.rating,
-                   filtered.votes,
-                   filtered.genres,
-                   filtered.plot,
-                   filtered.title_type,
-                   filtered.runtime_minutes,
-                   filtered.is_adult,
-                   (1 - (filtered.embedding <=> CAST(:vec AS vector))) AS similarity,
-                   actors.actor_list
-            FROM filtered
-            LEFT JOIN LATERAL (
-                SELECT json_agg(obj) AS actor_list
-                FROM (
-                    SELECT json_build_object('id', p.nconst, 'name', p.primary_name) AS obj
-                    FROM movie_principal mp
-                    JOIN person p ON p.id = mp.person_id
-                    WHERE mp.movie_id = filtered.id
-                      AND mp.category IN ('actor','actress')
-                    ORDER BY mp.ordering NULLS LAST, p.primary_name
-                    LIMIT 5
-                ) actor_rows
-            ) actors ON TRUE
-            ORDER BY similarity DESC
-            LIMIT :limit
+            SELECT m.tconst,
+                   m.primary_title,
+                   m.start_year,
+                   m.rating,
+                   m.votes,
+                   m.genres,
+                   m.plot,
+                   m.title_type,
+                   m.runtime_minutes,
+                   m.is_adult,
+                   (1 - nearest.distance) AS similarity,
+                   m.top_cast_names,
+                   m.top_cast_ids
+            FROM nearest
+            JOIN movie m ON m.id = nearest.id
+            ORDER BY nearest.distance
             """;
 
     private static final String RESOURCE_SQL = """
             SELECT m.tconst, m.primary_title, m.start_year, m.rating, m.votes, m.genres,
                    m.plot, m.title_type, m.runtime_minutes, m.is_adult,
-                   actors.actor_list
+                   m.top_cast_names, m.top_cast_ids
             FROM movie m
-            LEFT JOIN LATERAL (
-                SELECT json_agg(obj) AS actor_list
-                FROM (
-                    SELECT json_build_object('id', p.nconst, 'name', p.primary_name) AS obj
-                    FROM movie_principal mp
-                    JOIN person p ON p.id = mp.person_id
-                    WHERE mp.movie_id = m.id
-                      AND mp.category IN ('actor','actress')
-                    ORDER BY mp.ordering NULLS LAST, p.primary_name
-                    LIMIT 5
-                ) actor_rows
-            ) actors ON TRUE
             WHERE m.tconst = :tconst
             """;
 
-    private static final TypeReference<List<Map<String, Object>>> ACTOR_LIST_TYPE =
-            new TypeReference<>() {};
-
     private final NamedParameterJdbcTemplate jdbcTemplate;
     private final EmbeddingModel embeddingModel;
-    private final ObjectMapper objectMapper;
     private final MovieMcpProperties properties;
+    private final ActiveEmbeddingSlot activeSlot;
+    private final QueryEmbeddingCache embeddingCache;
+    private final VectorSearchPlanner planner;
+    private final ActorResolver actorResolver;
 
     public MovieSearchService(NamedParameterJdbcTemplate jdbcTemplate,
                               EmbeddingModel embeddingModel,
-                              ObjectMapper objectMapper,
-                              MovieMcpProperties properties) {
+                              MovieMcpProperties properties,
+                              ActiveEmbeddingSlot activeSlot,
+                              QueryEmbeddingCache embeddingCache,
+                              VectorSearchPlanner planner,
+                              ActorResolver actorResolver) {
         this.jdbcTemplate = jdbcTemplate;
         this.embeddingModel = embeddingModel;
-        this.objectMapper = objectMapper;
         this.properties = properties;
+        this.activeSlot = activeSlot;
+        this.embeddingCache = embeddingCache;
+        this.planner = planner;
+        this.actorResolver = actorResolver;
     }
 
     @Transactional(readOnly = true)
@@ -111,19 +93,32 @@ public class MovieSearchService {
         int requested = request.limit() == null ? max : Math.max(1, request.limit());
         int limit = Math.min(requested, max);
 
+        List<ActorResolver.People> actors = new ArrayList<>();
+        for (String actor : request.actors()) {
+            ActorResolver.People people = actorResolver.resolve(actor);
+            if (people == null) {
+                continue;
+            }
+            if (people.none()) {
+                log.debug("No person matches actor filter '{}'", actor);
+                return List.of();
+            }
+            actors.add(people);
+        }
+
+        ActiveEmbeddingSlot.Slot slot = activeSlot.current();
         long start = System.nanoTime();
-        float[] embedding = embeddingModel.embed(request.query());
+        float[] embedding = embeddingCache.get(slot.model(), request.query(), () -> embed(request.query(), slot.model()));
         Duration embedDuration = Duration.ofNanos(System.nanoTime() - start);
-        log.debug("Computed embedding in {} ms", embedDuration.toMillis());
+        log.debug("Resolved query embedding in {} ms", embedDuration.toMillis());
 
-        String vectorLiteral = toVectorLiteral(embedding);
         MapSqlParameterSource params = new MapSqlParameterSource()
-                .addValue("vec", vectorLiteral)
-                .addValue("limit", limit);
+                .addValue("vec", toVector(embedding));
 
         List<String> where = new ArrayList<>();
-        where.add("m.embedding IS NOT NULL");
+        where.add("m.%s IS NOT NULL".formatted(slot.column()));
         where.add("LOWER(m.title_type) IN ('movie','tvmovie')");
+        int unfiltered = where.size();
 
         if (request.fromYear() != null) {
             where.add("m.start_year >= :fromYear");
@@ -161,24 +156,33 @@ public class MovieSearchService {
             params.addValue("excGenres", String.join(",", request.excludeGenres()));
         }
 
-        List<String> actorPatterns = buildActorPatterns(request.actors());
-        for (int i = 0; i < actorPatterns.size(); i++) {
+        for (int i = 0; i < actors.size(); i++) {
             where.add("""
-                    EXISTS (
-                      SELECT 1
+                    m.id IN (
+                      SELECT mp.movie_id
                       FROM movie_principal mp
-                      JOIN person p ON p.id = mp.person_id
-                      WHERE mp.movie_id = m.id
+                      WHERE %s
                         AND mp.category IN ('actor','actress')
-                        AND regexp_replace(LOWER(p.primary_name), '[^a-z0-9]', '', 'g')
-                            LIKE :actorPattern%s
                     )
-                    """.formatted(i));
-            params.addValue("actorPattern" + i, actorPatterns.get(i));
+                    """.formatted(actors.get(i).condition("actor" + i, params)));
         }
 
         String whereSql = String.join(" AND ", where);
-        String sql = String.format(Locale.ROOT, SEARCH_SQL, whereSql);
+        boolean filtered = where.size() > unfiltered;
+        VectorSearchPlanner.Strategy strategy = planner.choose(whereSql, params, filtered);
+        List<MovieContext> results = search(strategy, slot, whereSql, params, limit);
+        if (strategy == VectorSearchPlanner.Strategy.INDEX && filtered && results.size() < limit) {
+            // The index scan gave up (max-scan-tuples) before enough rows passed the filters.
+            log.debug("Index search returned {} of {} movies; repeating it exactly", results.size(), limit);
+            results = search(VectorSearchPlanner.Strategy.EXACT, slot, whereSql, params, limit);
+        }
+        return results;
+    }
+
+    private List<MovieContext> search(VectorSearchPlanner.Strategy strategy, ActiveEmbeddingSlot.Slot slot,
+                                      String whereSql, MapSqlParameterSource params, int limit) {
+        planner.prepare(strategy, slot, limit);
+        String sql = SEARCH_SQL.formatted(planner.candidates(strategy, slot, whereSql, params, limit));
         return jdbcTemplate.query(sql, params, (rs, rowNum) -> mapMovie(rs, false));
     }
 
@@ -207,7 +211,7 @@ public class MovieSearchService {
         String titleType = rs.getString("title_type");
         Integer runtime = (Integer) rs.getObject("runtime_minutes");
         Boolean isAdult = (Boolean) rs.getObject("is_adult");
-        List<MovieActor> actors = readActors(rs.getString("actor_list"));
+        List<MovieActor> actors = readActors(rs.getArray("top_cast_ids"), rs.getArray("top_cast_names"));
 
         Map<String, Object> metadata = new LinkedHashMap<>();
         if (plot != null) {
@@ -255,56 +259,37 @@ public class MovieSearchService {
         return List.copyOf(genres);
     }
 
-    private List<MovieActor> readActors(String json) throws SQLException {
-        if (json == null || json.isBlank()) {
+    /** Pairs the parallel {@code top_cast_ids}/{@code top_cast_names} arrays the importer maintains. */
+    private static List<MovieActor> readActors(Array idsArray, Array namesArray) throws SQLException {
+        if (idsArray == null || namesArray == null
+                || !(idsArray.getArray() instanceof Object[] ids) || !(namesArray.getArray() instanceof Object[] names)) {
             return List.of();
         }
-        try {
-            List<Map<String, Object>> rows = objectMapper.readValue(json, ACTOR_LIST_TYPE);
-            return rows.stream()
-                    .filter(Objects::nonNull)
-                    .map(row -> new MovieActor(
-                            Objects.toString(row.get("id"), ""),
-                            Objects.toString(row.get("name"), "")
-                    ))
-                    .filter(actor -> !actor.id().isBlank() && !actor.name().isBlank())
-                    .toList();
-        } catch (Exception ex) {
-            throw new SQLException("Failed to deserialize actor_list JSON", ex);
-        }
-    }
-
-    private static String toVectorLiteral(float[] embedding) {
-        if (embedding == null || embedding.length == 0) {
-            throw new IllegalArgumentException("Embedding vector is empty");
-        }
-        StringBuilder sb = new StringBuilder("[");
-        for (int i = 0; i < embedding.length; i++) {
-            if (i > 0) {
-                sb.append(',');
+        int size = Math.min(ids.length, names.length);
+        List<MovieActor> actors = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String id = Objects.toString(ids[i], "").trim();
+            String name = Objects.toString(names[i], "").trim();
+            if (!id.isEmpty() && !name.isEmpty()) {
+                actors.add(new MovieActor(id, name));
             }
-            sb.append(String.format(Locale.US, "%.8f", embedding[i]));
         }
-        sb.append(']');
-        return sb.toString();
+        return List.copyOf(actors);
     }
 
-    private List<String> buildActorPatterns(List<String> actors) {
-        if (actors == null || actors.isEmpty()) {
-            return List.of();
+    /** Embeds with the model of the active slot, or the configured one when none is recorded. */
+    private float[] embed(String text, String model) {
+        if (model == null) {
+            return embeddingModel.embed(text);
         }
-        return actors.stream()
-                .map(this::sanitizeActorToken)
-                .filter(s -> !s.isEmpty())
-                .map(token -> "%" + token + "%")
-                .toList();
+        EmbeddingRequest request = new EmbeddingRequest(List.of(text), OllamaOptions.builder().model(model).build());
+        return embeddingModel.call(request).getResult().getOutput();
     }
 
-    private String sanitizeActorToken(String raw) {
-        if (raw == null) {
-            return "";
+    private static PGvector toVector(float[] embedding) {
+        if (embedding == null || embedding.length == 0) {
+            throw new IllegalArgumentException("Embedding vector is empty");
         }
-        String ascii = raw.toLowerCase(Locale.ROOT);
-        return ascii.replaceAll("[^a-z0-9]", "");
+        return new PGvector(embedding);
     }
 }
@@ -0,0 +1,70 @@
+package com.gnemirko.mcpmovie.service;
+
+import ai.onnxruntime.OrtException;
+import com.gnemirko.common.onnx.OnnxSentenceEncoder;
+import com.gnemirko.mcpmovie.config.OnnxEmbeddingProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.AbstractEmbeddingModel;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Spring AI {@code EmbeddingModel} over an in-process {@link OnnxSentenceEncoder}, so query
+ * embeddings skip the HTTP hop to Ollama. The texts of a request are embedded as one batch with the
+ * same encoder the imdb-vec importer embeds the catalog with.
+ */
+public class OnnxEmbeddingModel extends AbstractEmbeddingModel implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(OnnxEmbeddingModel.class);
+
+    private final OnnxSentenceEncoder encoder;
+    private final String model;
+
+    public OnnxEmbeddingModel(OnnxEmbeddingProperties properties) throws IOException, OrtException {
+        if (properties.modelPath() == null || properties.modelPath().isBlank()
+                || properties.tokenizerPath() == null || properties.tokenizerPath().isBlank()) {
+            throw new IllegalStateException("spring.ai.model.embedding=onnx needs app.mcp.onnx.model-path and tokenizer-path");
+        }
+        this.encoder = new OnnxSentenceEncoder(properties.model(), properties.modelPath(), properties.tokenizerPath(),
+                properties.outputName(), properties.maxSequenceLength(), properties.intraOpThreads());
+        this.model = properties.model();
+        log.info("Loaded ONNX embedding model {} from {}", model, properties.modelPath());
+    }
+
+    OnnxEmbeddingModel(OnnxSentenceEncoder encoder, String model) {
+        this.encoder = encoder;
+        this.model = model;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        String requested = request.getOptions() == null ? null : request.getOptions().getModel();
+        if (requested != null && !requested.equals(model)) {
+            throw new IllegalStateException("The ONNX embedding model is " + model + ", but " + requested
+                    + " was requested; set app.mcp.onnx.model to the model of the active embedding slot");
+        }
+        List<float[]> vectors = encoder.encode(request.getInstructions());
+        List<Embedding> embeddings = new ArrayList<>(vectors.size());
+        for (int i = 0; i < vectors.size(); i++) {
+            embeddings.add(new Embedding(vectors.get(i), i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return encoder.encode(List.of(document.getText() == null ? "" : document.getText())).getFirst();
+    }
+
+    @Override
+    public void close() throws OrtException {
+        encoder.close();
+    }
+}
@@ -0,0 +1,142 @@
+package com.gnemirko.mcpmovie.service;
+
+import com.gnemirko.mcpmovie.config.MovieMcpProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Bounded LRU of query embeddings keyed by model and query text, with entries expiring after
+ * {@code app.mcp.embedding-cache-ttl}. Concurrent misses for the same key share one embedding call.
+ * Cached arrays are handed out as is and must not be modified.
+ */
+@Component
+public class QueryEmbeddingCache {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LongSupplier nanoTime;
+    private final Map<Key, Entry> entries;
+    private final ConcurrentHashMap<Key, CompletableFuture<float[]>> inFlight = new ConcurrentHashMap<>();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter coalesced;
+
+    @Autowired
+    public QueryEmbeddingCache(MovieMcpProperties properties, MeterRegistry meterRegistry) {
+        this(properties.embeddingCacheSize(), properties.embeddingCacheTtl(), meterRegistry, System::nanoTime);
+    }
+
+    QueryEmbeddingCache(int maxEntries, Duration ttl, MeterRegistry meterRegistry, LongSupplier nanoTime) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.nanoTime = nanoTime;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > QueryEmbeddingCache.this.maxEntries;
+            }
+        };
+        this.hits = counter(meterRegistry, "hit");
+        this.misses = counter(meterRegistry, "miss");
+        this.coalesced = counter(meterRegistry, "coalesced");
+    }
+
+    private record Key(String model, String text) {}
+
+    private record Entry(float[] embedding, long expiresAtNanos) {}
+
+    /**
+     * The cached embedding of {@code text} for {@code model}, or the result of {@code embed}. A
+     * failed call is not cached; callers that were waiting for it see the same exception.
+     */
+    public float[] get(String model, String text, Supplier<float[]> embed) {
+        if (maxEntries <= 0) {
+            misses.increment();
+            return embed.get();
+        }
+        Key key = new Key(model, text);
+        float[] cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        CompletableFuture<float[]> call = new CompletableFuture<>();
+        CompletableFuture<float[]> running = inFlight.putIfAbsent(key, call);
+        if (running != null) {
+            coalesced.increment();
+            return await(running);
+        }
+        try {
+            // The call that filled the cache may have finished between the lookup and putIfAbsent.
+            float[] embedding = lookup(key);
+            if (embedding != null) {
+                hits.increment();
+            } else {
+                misses.increment();
+                embedding = embed.get();
+                store(key, embedding);
+            }
+            call.complete(embedding);
+            return embedding;
+        } catch (Throwable ex) {
+            // Errors too: a waiter blocked in join() would otherwise never wake up.
+            call.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    private float[] lookup(Key key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (nanoTime.getAsLong() - entry.expiresAtNanos() >= 0) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.embedding();
+        }
+    }
+
+    private void store(Key key, float[] embedding) {
+        synchronized (entries) {
+            entries.put(key, new Entry(embedding, nanoTime.getAsLong() + ttlNanos));
+        }
+    }
+
+    private static float[] await(CompletableFuture<float[]> call) {
+        try {
+            return call.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (ex.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("mcp.embedding.cache.requests")
+                .description("Query embedding lookups by outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
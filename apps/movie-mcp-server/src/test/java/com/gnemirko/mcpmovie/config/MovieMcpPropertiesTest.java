@@ -0,0 +1,25 @@
+package com.gnemirko.mcpmovie.config;
+
+import com.gnemirko.common.vector.VectorSearchPlanner;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MovieMcpPropertiesTest {
+
+    @Test
+    void unsetVectorSearchValuesTakeTheDefaults() {
+        VectorSearchPlanner.Settings settings = new MovieMcpProperties.VectorSearch(null, null, null, null, null).settings();
+
+        assertThat(settings).isEqualTo(new VectorSearchPlanner.Settings(20_000, 100,
+                VectorSearchPlanner.IterativeScan.RELAXED_ORDER, 20_000, 4));
+    }
+
+    @Test
+    void zeroExactMaxRowsTurnsExactSearchOffAsInImdbVec() {
+        VectorSearchPlanner.Settings settings = new MovieMcpProperties.VectorSearch(0, 100, null, 0, 4).settings();
+
+        assertThat(settings.exactMaxRows()).isZero();
+        assertThat(settings.maxScanTuples()).isEqualTo(1);
+    }
+}
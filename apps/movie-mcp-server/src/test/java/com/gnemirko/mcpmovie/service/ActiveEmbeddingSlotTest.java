@@ -0,0 +1,83 @@
+package com.gnemirko.mcpmovie.service;
+
+import com.gnemirko.common.vector.VectorQuantization;
+import com.gnemirko.mcpmovie.config.MovieMcpProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ActiveEmbeddingSlotTest {
+
+    private final NamedParameterJdbcTemplate jdbc = mock(NamedParameterJdbcTemplate.class);
+
+    @Test
+    void databasesWithoutSlotsSearchTheDefaultColumn() {
+        stateTable(false);
+
+        assertThat(slot(Duration.ofSeconds(30)).current()).isEqualTo(ActiveEmbeddingSlot.DEFAULT);
+        verify(jdbc, never()).query(anyString(), any(MapSqlParameterSource.class), any(RowMapper.class));
+    }
+
+    @Test
+    void readsTheActiveSlotAndReusesItWithinTheTtl() {
+        ActiveEmbeddingSlot.Slot active = new ActiveEmbeddingSlot.Slot("embedding_b", "mxbai-embed-large", 1024,
+                VectorQuantization.HALFVEC);
+        stateTable(true);
+        activeSlots(List.of(active));
+        ActiveEmbeddingSlot slots = slot(Duration.ofMinutes(5));
+
+        assertThat(slots.current()).isEqualTo(active);
+        assertThat(slots.current()).isEqualTo(active);
+        verify(jdbc, times(1)).query(anyString(), any(MapSqlParameterSource.class), any(RowMapper.class));
+    }
+
+    @Test
+    void rereadsTheSlotOnceTheTtlExpired() {
+        stateTable(true);
+        activeSlots(List.of());
+        ActiveEmbeddingSlot slots = slot(Duration.ZERO);
+
+        assertThat(slots.current()).isEqualTo(ActiveEmbeddingSlot.DEFAULT);
+        slots.current();
+        verify(jdbc, times(2)).query(anyString(), any(MapSqlParameterSource.class), any(RowMapper.class));
+    }
+
+    @Test
+    void rejectsColumnNamesThatCannotBeInterpolated() {
+        stateTable(true);
+        activeSlots(List.of(new ActiveEmbeddingSlot.Slot("embedding; DROP TABLE movie", "m", 768, VectorQuantization.NONE)));
+
+        assertThatThrownBy(() -> slot(Duration.ofSeconds(30)).current())
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Unexpected embedding column");
+    }
+
+    private void stateTable(boolean present) {
+        when(jdbc.queryForObject(eq("SELECT to_regclass('embedding_model_state') IS NOT NULL"),
+                any(MapSqlParameterSource.class), eq(Boolean.class))).thenReturn(present);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void activeSlots(List<ActiveEmbeddingSlot.Slot> slots) {
+        when(jdbc.query(anyString(), any(MapSqlParameterSource.class), any(RowMapper.class))).thenReturn((List) slots);
+    }
+
+    private ActiveEmbeddingSlot slot(Duration ttl) {
+        return new ActiveEmbeddingSlot(jdbc, new MovieMcpProperties(null, null, null, 15, ttl, 0, Duration.ofMinutes(10), null, null));
+    }
+}
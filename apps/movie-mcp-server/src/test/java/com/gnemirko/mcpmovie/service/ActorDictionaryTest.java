@@ -0,0 +1,108 @@
+package com.gnemirko.mcpmovie.service;
+
+import com.gnemirko.mcpmovie.config.MovieMcpProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.sql.ResultSet;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ActorDictionaryTest {
+
+    private final NamedParameterJdbcTemplate jdbc = mock(NamedParameterJdbcTemplate.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ActorDictionary dictionary = new ActorDictionary(jdbc, new MovieMcpProperties(null, null, null, 15,
+            Duration.ofSeconds(30), 0, Duration.ofMinutes(10), null, new MovieMcpProperties.ActorDictionary(true, null)),
+            meterRegistry);
+
+    @Test
+    void answersNullUntilTheFirstLoad() {
+        assertThat(dictionary.resolve("tomhanks")).isNull();
+    }
+
+    @Test
+    void reloadsOnlyAfterANewerPrincipalsOrSwapStage() throws Exception {
+        importLog(true);
+        latestImport("2026-10-01 03:00:00+00", "2026-10-01 03:00:00+00", "2026-10-02 03:00:00+00");
+        people(new long[]{11}, new String[]{"tomhanks"});
+
+        dictionary.refresh();
+        dictionary.refresh();
+        verify(jdbc, times(1)).query(anyString(), any(MapSqlParameterSource.class), any(RowCallbackHandler.class));
+
+        dictionary.refresh();
+        verify(jdbc, times(2)).query(anyString(), any(MapSqlParameterSource.class), any(RowCallbackHandler.class));
+        assertThat(dictionary.resolve("hanks")).containsExactly(11L);
+        assertThat(meterRegistry.get("mcp.actor.dictionary.names").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void loadsOnceAgainstADatabaseWithoutTheImportLog() throws Exception {
+        importLog(false);
+        people(new long[]{11}, new String[]{"tomhanks"});
+
+        dictionary.refresh();
+        dictionary.refresh();
+
+        verify(jdbc, times(1)).query(anyString(), any(MapSqlParameterSource.class), any(RowCallbackHandler.class));
+        assertThat(dictionary.resolve("tomhanks")).containsExactly(11L);
+    }
+
+    @Test
+    void keepsTheLoadedIndexWhenAReloadFails() throws Exception {
+        importLog(true);
+        latestImport("2026-10-01 03:00:00+00", "2026-10-02 03:00:00+00", "2026-10-02 03:00:00+00");
+        people(new long[]{11}, new String[]{"tomhanks"});
+        dictionary.refresh();
+
+        doThrow(new DataAccessResourceFailureException("connection reset"))
+                .when(jdbc).query(anyString(), any(MapSqlParameterSource.class), any(RowCallbackHandler.class));
+        dictionary.refresh();
+        assertThat(dictionary.resolve("tomhanks")).containsExactly(11L);
+
+        // The failed import is still newer than the index, so the next round tries it again.
+        people(new long[]{12}, new String[]{"tomhardy"});
+        dictionary.refresh();
+        assertThat(dictionary.resolve("tomhanks")).isEmpty();
+        assertThat(dictionary.resolve("tomhardy")).containsExactly(12L);
+    }
+
+    private void importLog(boolean present) {
+        when(jdbc.queryForObject(eq("SELECT to_regclass('import_stage') IS NOT NULL"), any(MapSqlParameterSource.class),
+                eq(Boolean.class))).thenReturn(present);
+    }
+
+    private void latestImport(String first, String... next) {
+        when(jdbc.queryForObject(contains("max(finished_at)"), any(MapSqlParameterSource.class), eq(String.class)))
+                .thenReturn(first, next);
+    }
+
+    private void people(long[] ids, String[] names) throws Exception {
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(2);
+            for (int i = 0; i < ids.length; i++) {
+                ResultSet row = mock(ResultSet.class);
+                when(row.getLong(1)).thenReturn(ids[i]);
+                when(row.getString(2)).thenReturn(names[i]);
+                handler.processRow(row);
+            }
+            return null;
+        }).when(jdbc).query(anyString(), any(MapSqlParameterSource.class), any(RowCallbackHandler.class));
+    }
+}
@@ -0,0 +1,53 @@
+package com.gnemirko.mcpmovie.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ActorNameIndexTest {
+
+    private final ActorNameIndex index = new ActorNameIndex(
+            new long[]{10, 11, 12, 13, 14, 15},
+            new String[]{"tomhanksjr", "tomhanks", "colinhanks", "keanureeves", "tomhardy", "alpacino"});
+
+    @Test
+    void substringsMatchEveryNameContainingThem() {
+        assertThat(index.resolve("tomhanks")).containsExactlyInAnyOrder(10L, 11L);
+        assertThat(index.resolve("hanks")).containsExactlyInAnyOrder(10L, 11L, 12L);
+        assertThat(index.resolve("tom")).containsExactlyInAnyOrder(10L, 11L, 14L);
+    }
+
+    @Test
+    void misspeltNamesResolveToTheNearestSpellings() {
+        assertThat(index.resolve("keanureevs")).containsExactly(13L);
+        assertThat(index.resolve("tomhanx")).containsExactlyInAnyOrder(10L, 11L);
+        assertThat(index.resolve("tomhardi")).containsExactly(14L);
+    }
+
+    @Test
+    void shortNamesAreNotGuessed() {
+        assertThat(index.resolve("hanx")).isEmpty();
+        assertThat(index.resolve("pacno")).isEmpty();
+        assertThat(index.resolve("to")).isNull();
+    }
+
+    @Test
+    void toleratedEditsGrowWithTheLengthOfTheName() {
+        assertThat(ActorNameIndex.maxEdits(5)).isZero();
+        assertThat(ActorNameIndex.maxEdits(6)).isEqualTo(1);
+        assertThat(ActorNameIndex.maxEdits(8)).isEqualTo(1);
+        assertThat(ActorNameIndex.maxEdits(9)).isEqualTo(2);
+
+        assertThat(index.resolve("pacimo")).containsExactly(15L);
+        assertThat(index.resolve("pxcimo")).isEmpty();
+        assertThat(index.resolve("kenureevs")).containsExactly(13L);
+        assertThat(index.resolve("kxnureexs")).isEmpty();
+    }
+
+    @Test
+    void substringDistanceIgnoresTheRestOfTheName() {
+        assertThat(ActorNameIndex.substringDistance("hanx", "tomhanksjr", 2)).isEqualTo(1);
+        assertThat(ActorNameIndex.substringDistance("reeves", "keanureeves", 2)).isZero();
+        assertThat(ActorNameIndex.substringDistance("xxxxxx", "keanureeves", 2)).isEqualTo(3);
+    }
+}
@@ -0,0 +1,49 @@
+package com.gnemirko.mcpmovie.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ActorResolverTest {
+
+    private final ActorDictionary dictionary = mock(ActorDictionary.class);
+    private final ActorResolver resolver = new ActorResolver(dictionary);
+
+    @Test
+    void filtersByTheIdsTheDictionaryFinds() {
+        when(dictionary.resolve("tomhanks")).thenReturn(List.of(11L, 12L));
+        MapSqlParameterSource params = new MapSqlParameterSource();
+
+        ActorResolver.People people = resolver.resolve("Tom Hanks");
+
+        assertThat(people.none()).isFalse();
+        assertThat(people.condition("actor0", params)).isEqualTo("mp.person_id = ANY(:actor0)");
+        assertThat((Long[]) params.getValue("actor0")).containsExactly(11L, 12L);
+    }
+
+    @Test
+    void leavesTheMatchToTheDatabaseWhileTheDictionaryIsNotLoaded() {
+        when(dictionary.resolve("al")).thenReturn(null);
+        MapSqlParameterSource params = new MapSqlParameterSource();
+
+        ActorResolver.People people = resolver.resolve("Al");
+
+        assertThat(people.none()).isFalse();
+        assertThat(people.condition("actor0", params))
+                .isEqualTo("mp.person_id IN (SELECT id FROM person WHERE normalized_name LIKE :actor0)");
+        assertThat(params.getValue("actor0")).isEqualTo("%al%");
+    }
+
+    @Test
+    void knowsWhenNobodyMatches() {
+        when(dictionary.resolve("nobody")).thenReturn(List.of());
+
+        assertThat(resolver.resolve("Nobody").none()).isTrue();
+        assertThat(resolver.resolve(" - ")).isNull();
+    }
+}
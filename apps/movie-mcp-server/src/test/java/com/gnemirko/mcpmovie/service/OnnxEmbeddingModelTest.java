@@ -0,0 +1,23 @@
+package com.gnemirko.mcpmovie.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.ollama.api.OllamaOptions;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OnnxEmbeddingModelTest {
+
+    @Test
+    void rejectsRequestsForAnotherModel() {
+        OnnxEmbeddingModel model = new OnnxEmbeddingModel(null, "nomic-embed-text");
+        EmbeddingRequest request = new EmbeddingRequest(List.of("heist"),
+                OllamaOptions.builder().model("mxbai-embed-large").build());
+
+        assertThatThrownBy(() -> model.call(request))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("mxbai-embed-large was requested");
+    }
+}
@@ -0,0 +1,136 @@
+package com.gnemirko.mcpmovie.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class QueryEmbeddingCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void servesRepeatedQueriesFromMemoryUntilTheyExpire() {
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(10, Duration.ofMinutes(1), registry, clock::get);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThat(cache.get("m", "space opera", () -> vector(calls.incrementAndGet()))).containsExactly(1f);
+        assertThat(cache.get("m", "space opera", () -> vector(calls.incrementAndGet()))).containsExactly(1f);
+        assertThat(cache.get("other", "space opera", () -> vector(calls.incrementAndGet()))).containsExactly(2f);
+
+        clock.addAndGet(Duration.ofMinutes(1).toNanos());
+        assertThat(cache.get("m", "space opera", () -> vector(calls.incrementAndGet()))).containsExactly(3f);
+        assertThat(count("hit")).isEqualTo(1);
+        assertThat(count("miss")).isEqualTo(3);
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedQuery() {
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(2, Duration.ofMinutes(1), registry, clock::get);
+        AtomicInteger calls = new AtomicInteger();
+
+        cache.get(null, "a", () -> vector(calls.incrementAndGet()));
+        cache.get(null, "b", () -> vector(calls.incrementAndGet()));
+        cache.get(null, "a", () -> vector(calls.incrementAndGet()));
+        cache.get(null, "c", () -> vector(calls.incrementAndGet()));
+
+        assertThat(cache.get(null, "a", () -> vector(calls.incrementAndGet()))).containsExactly(1f);
+        assertThat(cache.get(null, "b", () -> vector(calls.incrementAndGet()))).containsExactly(4f);
+    }
+
+    @Test
+    void concurrentIdenticalQueriesShareOneCall() throws Exception {
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(10, Duration.ofMinutes(1), registry, clock::get);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<float[]>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(pool.submit(() -> cache.get("m", "heist movie", () -> {
+                    calls.incrementAndGet();
+                    await(release);
+                    return vector(7);
+                })));
+            }
+            while (count("coalesced") < threads - 1) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+            for (Future<float[]> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).containsExactly(7f);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void failedCallsAreNotCached() {
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(10, Duration.ofMinutes(1), registry, clock::get);
+
+        assertThatThrownBy(() -> cache.get("m", "q", () -> {
+            throw new IllegalStateException("ollama down");
+        })).hasMessage("ollama down");
+        assertThat(cache.get("m", "q", () -> vector(1))).containsExactly(1f);
+    }
+
+    @Test
+    void waitersAreReleasedWhenTheCallThrowsAnError() throws Exception {
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(10, Duration.ofMinutes(1), registry, clock::get);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<float[]>> results = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                results.add(pool.submit(() -> cache.get("m", "q", () -> {
+                    await(release);
+                    throw new OutOfMemoryError("model session");
+                })));
+            }
+            while (count("coalesced") < 1) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+            for (Future<float[]> result : results) {
+                assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS))
+                        .isInstanceOf(ExecutionException.class)
+                        .hasCauseInstanceOf(OutOfMemoryError.class);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private double count(String result) {
+        return registry.get("mcp.embedding.cache.requests").tag("result", result).counter().count();
+    }
+
+    private static float[] vector(float value) {
+        return new float[]{value};
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
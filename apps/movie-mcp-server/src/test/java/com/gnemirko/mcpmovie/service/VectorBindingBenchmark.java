@@ -0,0 +1,87 @@
+package com.gnemirko.mcpmovie.service;
+
+import com.pgvector.PGvector;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+
+/**
+ * Microbenchmark for encoding a query embedding as a statement parameter: the former
+ * {@code String.format("%.8f")} literal sent as text and cast to {@code vector} on the server,
+ * against the binary form the driver sends for a {@link PGvector} once the type is registered.
+ * Not a test; run it from the IDE or with
+ * {@code mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.gnemirko.mcpmovie.service.VectorBindingBenchmark}.
+ */
+public final class VectorBindingBenchmark {
+
+    private static final int DIMENSIONS = 768;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final int ITERATIONS = 5_000;
+
+    private VectorBindingBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        float[] embedding = new float[DIMENSIONS];
+        Random random = new Random(42);
+        for (int i = 0; i < embedding.length; i++) {
+            embedding[i] = (float) random.nextGaussian();
+        }
+
+        run("String.format literal", embedding, VectorBindingBenchmark::formatLiteral);
+        run("PGvector text value", embedding, vector -> new PGvector(vector).getValue().length());
+        run("PGvector binary", embedding, VectorBindingBenchmark::binary);
+    }
+
+    private static void run(String name, float[] embedding, ToIntFunction<float[]> encoder) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        long sink = 0;
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink += encoder.applyAsInt(embedding);
+            }
+        }
+
+        double bestNanos = Double.MAX_VALUE;
+        long bytesPerOp = 0;
+        int payload = encoder.applyAsInt(embedding);
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink += encoder.applyAsInt(embedding);
+            }
+            double nanos = (double) (System.nanoTime() - start) / ITERATIONS;
+            long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            if (nanos < bestNanos) {
+                bestNanos = nanos;
+                bytesPerOp = allocated / ITERATIONS;
+            }
+        }
+        System.out.printf(Locale.ROOT, "%-24s %10.1f us/op %10d B allocated/op %8d B payload (sink %d)%n",
+                name, bestNanos / 1_000, bytesPerOp, payload, sink & 1);
+    }
+
+    private static int formatLiteral(float[] embedding) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < embedding.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(String.format(Locale.US, "%.8f", embedding[i]));
+        }
+        sb.append(']');
+        return sb.length();
+    }
+
+    private static int binary(float[] embedding) {
+        PGvector vector = new PGvector(embedding);
+        byte[] bytes = new byte[vector.lengthInBytes()];
+        vector.toBytes(bytes, 0);
+        return bytes.length;
+    }
+}
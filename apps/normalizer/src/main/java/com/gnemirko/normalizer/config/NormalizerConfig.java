@@ -1,5 +1,7 @@
 package com.gnemirko.normalizer.config;
 
+import com.gnemirko.common.ollama.OllamaConcurrencyLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -21,4 +23,10 @@ public class NormalizerConfig {
                 .exchangeStrategies(strategies)
                 .build();
     }
+
+    @Bean
+    public OllamaConcurrencyLimiter ollamaConcurrencyLimiter(NormalizerOllamaProperties properties,
+                                                             MeterRegistry meterRegistry) {
+        return new OllamaConcurrencyLimiter(properties.getLimiter(), meterRegistry);
+    }
 }
@@ -1,5 +1,6 @@
 package com.gnemirko.normalizer.config;
 
+import com.gnemirko.common.ollama.OllamaLimiterProperties;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
@@ -14,4 +15,13 @@ public class NormalizerOllamaProperties {
     private String translationModel = "llama3.1:8b";
     private Duration timeout = Duration.ofSeconds(60);
     private double temperature = 0.1;
+    /** Adaptive bound on concurrent generate calls; smaller than imdb-vec's, as each call is a full LLM run. */
+    private OllamaLimiterProperties limiter = defaultLimiter();
+
+    private static OllamaLimiterProperties defaultLimiter() {
+        OllamaLimiterProperties limiter = new OllamaLimiterProperties();
+        limiter.setInitialLimit(2);
+        limiter.setMaxLimit(8);
+        return limiter;
+    }
 }
@@ -1,5 +1,6 @@
 package com.gnemirko.normalizer.ollama;
 
+import com.gnemirko.common.ollama.OllamaConcurrencyLimiter;
 import com.gnemirko.normalizer.config.NormalizerOllamaProperties;
 import com.gnemirko.normalizer.dto.GenerateRequest;
 import com.gnemirko.normalizer.dto.GenerateResponse;
@@ -17,6 +18,7 @@ public class OllamaClient implements CompletionClient {
 
     private final WebClient ollamaWebClient;
     private final NormalizerOllamaProperties properties;
+    private final OllamaConcurrencyLimiter limiter;
 
     @Override
     public String complete(String model, String prompt) {
@@ -29,6 +31,7 @@ public class OllamaClient implements CompletionClient {
                 .retrieve()
                 .bodyToMono(GenerateResponse.class)
                 .timeout(properties.getTimeout())
+                .transform(call -> limiter.limit("/api/generate", call))
                 .onErrorResume(ex -> {
                     log.warn("Ollama generate call failed: {}", ex.getMessage());
                     return Mono.empty();
@@ -0,0 +1,219 @@
+package com.gnemirko.common.ollama;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Adaptive (AIMD) bound on concurrent requests to Ollama. The limit grows by about one per
+ * limit's worth of successful calls while it is in use, and shrinks by {@code backoffRatio} when
+ * a call times out, fails with a 5xx / 429 or takes longer than {@code latencyTolerance} times the
+ * running average of its endpoint, at most once per average round trip. Averages are kept per
+ * endpoint because a single-text call and a batch of 32 have very different normal latencies.
+ * Calls over the limit wait in FIFO order without holding a thread; their wait does not count
+ * towards the measured latency. Callers that block give up their place when their own timeout
+ * cancels the wait. Each service registers one instance as a bean over its own properties.
+ */
+public class OllamaConcurrencyLimiter {
+
+    private static final double RTT_SMOOTHING = 0.05;
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double latencyTolerance;
+    private final LongSupplier nanoTime;
+    private final Counter overloads;
+
+    private final Object lock = new Object();
+    private final Deque<Waiter> waiting = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+    private final Map<String, Double> averageRttNanos = new HashMap<>();
+    private long lastDecreaseNanos;
+
+    public OllamaConcurrencyLimiter(OllamaLimiterProperties properties, MeterRegistry meterRegistry) {
+        this(properties, meterRegistry, System::nanoTime);
+    }
+
+    OllamaConcurrencyLimiter(OllamaLimiterProperties properties, MeterRegistry meterRegistry, LongSupplier nanoTime) {
+        this.enabled = properties.isEnabled();
+        this.minLimit = Math.max(1, properties.getMinLimit());
+        this.maxLimit = Math.max(minLimit, properties.getMaxLimit());
+        this.backoffRatio = Math.clamp(properties.getBackoffRatio(), 0.1, 0.99);
+        this.latencyTolerance = Math.max(1.0, properties.getLatencyTolerance());
+        this.limit = Math.clamp(properties.getInitialLimit(), minLimit, maxLimit);
+        this.nanoTime = nanoTime;
+        this.lastDecreaseNanos = nanoTime.getAsLong() - Long.MAX_VALUE / 2;
+        this.overloads = Counter.builder("ollama.limiter.overloads")
+                .description("Ollama calls that shrank the concurrency limit")
+                .register(meterRegistry);
+        Gauge.builder("ollama.limiter.limit", this, OllamaConcurrencyLimiter::limit)
+                .description("Current adaptive limit on concurrent Ollama calls")
+                .register(meterRegistry);
+        Gauge.builder("ollama.limiter.in.flight", this, OllamaConcurrencyLimiter::inFlight)
+                .description("Ollama calls in flight")
+                .register(meterRegistry);
+        Gauge.builder("ollama.limiter.queued", this, OllamaConcurrencyLimiter::queued)
+                .description("Ollama calls waiting for the limit")
+                .register(meterRegistry);
+    }
+
+    private enum Outcome { SUCCESS, OVERLOAD, IGNORED }
+
+    private final class Permit {
+        private final long startNanos = nanoTime.getAsLong();
+        private final String endpoint;
+        private final int inFlightAtStart;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(String endpoint, int inFlightAtStart) {
+            this.endpoint = endpoint;
+            this.inFlightAtStart = inFlightAtStart;
+        }
+    }
+
+    private static final class Waiter {
+        private final MonoSink<Permit> sink;
+        private final String endpoint;
+        private Permit permit;
+
+        private Waiter(MonoSink<Permit> sink, String endpoint) {
+            this.sink = sink;
+            this.endpoint = endpoint;
+        }
+    }
+
+    /**
+     * Subscribes to {@code call} once a slot under the limit is free; every resubscription queues
+     * again. {@code endpoint} names the kind of call whose latency it is compared with.
+     */
+    public <T> Mono<T> limit(String endpoint, Mono<T> call) {
+        if (!enabled) {
+            return call;
+        }
+        return Mono.usingWhen(acquire(endpoint),
+                permit -> call,
+                permit -> Mono.fromRunnable(() -> release(permit, Outcome.SUCCESS)),
+                (permit, error) -> Mono.fromRunnable(() -> release(permit, isOverload(error) ? Outcome.OVERLOAD : Outcome.IGNORED)),
+                permit -> Mono.fromRunnable(() -> release(permit, Outcome.IGNORED)));
+    }
+
+    double limit() {
+        synchronized (lock) {
+            return limit;
+        }
+    }
+
+    int inFlight() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    int queued() {
+        synchronized (lock) {
+            return waiting.size();
+        }
+    }
+
+    private Mono<Permit> acquire(String endpoint) {
+        return Mono.create(sink -> {
+            Waiter waiter = new Waiter(sink, endpoint);
+            sink.onCancel(() -> {
+                Permit granted;
+                synchronized (lock) {
+                    if (waiting.remove(waiter)) {
+                        return;
+                    }
+                    granted = waiter.permit;
+                }
+                // Granted concurrently with the cancellation; the permit never reached the caller.
+                if (granted != null) {
+                    release(granted, Outcome.IGNORED);
+                }
+            });
+            Permit permit = null;
+            synchronized (lock) {
+                if (waiting.isEmpty() && inFlight < (int) limit) {
+                    permit = grant(endpoint);
+                    waiter.permit = permit;
+                } else {
+                    waiting.addLast(waiter);
+                }
+            }
+            if (permit != null) {
+                sink.success(permit);
+            }
+        });
+    }
+
+    private Permit grant(String endpoint) {
+        inFlight++;
+        return new Permit(endpoint, inFlight);
+    }
+
+    private void release(Permit permit, Outcome outcome) {
+        if (!permit.released.compareAndSet(false, true)) {
+            return;
+        }
+        List<Waiter> granted = new ArrayList<>();
+        synchronized (lock) {
+            inFlight--;
+            adjust(permit, outcome);
+            while (!waiting.isEmpty() && inFlight < (int) limit) {
+                Waiter next = waiting.pollFirst();
+                next.permit = grant(next.endpoint);
+                granted.add(next);
+            }
+        }
+        granted.forEach(waiter -> waiter.sink.success(waiter.permit));
+    }
+
+    private void adjust(Permit permit, Outcome outcome) {
+        long now = nanoTime.getAsLong();
+        double averageRtt = averageRttNanos.getOrDefault(permit.endpoint, 0.0);
+        if (outcome == Outcome.SUCCESS) {
+            long rtt = now - permit.startNanos;
+            boolean slow = averageRtt > 0 && rtt > averageRtt * latencyTolerance;
+            averageRttNanos.put(permit.endpoint, averageRtt == 0 ? rtt : averageRtt + RTT_SMOOTHING * (rtt - averageRtt));
+            if (!slow) {
+                // Only grow while the limit is actually being used.
+                if (permit.inFlightAtStart * 2 >= limit) {
+                    limit = Math.min(maxLimit, limit + 1.0 / limit);
+                }
+                return;
+            }
+        } else if (outcome != Outcome.OVERLOAD) {
+            return;
+        }
+        if (now - lastDecreaseNanos < averageRtt) {
+            return;
+        }
+        lastDecreaseNanos = now;
+        limit = Math.max(minLimit, limit * backoffRatio);
+        overloads.increment();
+    }
+
+    private static boolean isOverload(Throwable error) {
+        if (error instanceof WebClientResponseException response) {
+            return response.getStatusCode().is5xxServerError() || response.getStatusCode().value() == 429;
+        }
+        return error instanceof WebClientRequestException || error instanceof TimeoutException;
+    }
+}
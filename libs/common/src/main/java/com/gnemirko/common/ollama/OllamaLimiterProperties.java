@@ -0,0 +1,65 @@
+package com.gnemirko.common.ollama;
+
+/**
+ * Settings of an {@link OllamaConcurrencyLimiter}; each service binds them under its own prefix.
+ */
+public class OllamaLimiterProperties {
+
+    /** Bound concurrent Ollama requests by the adaptive limit; when off only the retries push back. */
+    private boolean enabled = true;
+    private int initialLimit = 4;
+    private int minLimit = 1;
+    private int maxLimit = 16;
+    /** Factor the limit is multiplied by after a timeout, a 5xx or a slow response. */
+    private double backoffRatio = 0.9;
+    /** A response slower than this multiple of the average latency counts as overload. */
+    private double latencyTolerance = 2.0;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    public void setInitialLimit(int initialLimit) {
+        this.initialLimit = initialLimit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public void setMinLimit(int minLimit) {
+        this.minLimit = minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public void setMaxLimit(int maxLimit) {
+        this.maxLimit = maxLimit;
+    }
+
+    public double getBackoffRatio() {
+        return backoffRatio;
+    }
+
+    public void setBackoffRatio(double backoffRatio) {
+        this.backoffRatio = backoffRatio;
+    }
+
+    public double getLatencyTolerance() {
+        return latencyTolerance;
+    }
+
+    public void setLatencyTolerance(double latencyTolerance) {
+        this.latencyTolerance = latencyTolerance;
+    }
+}
@@ -0,0 +1,152 @@
+package com.gnemirko.common.onnx;
+
+import ai.djl.huggingface.tokenizers.Encoding;
+import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer;
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OnnxValue;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs a sentence-embedding model in-process with ONNX Runtime on the CPU. A batch is tokenized,
+ * padded to its longest text and run through the model in one call; the token states are
+ * mean-pooled over the attention mask and L2-normalized, as sentence-transformers and Ollama do for
+ * nomic-embed-text. imdb-vec embeds the catalog and the MCP server its queries with this class, so
+ * the two vectors stay comparable.
+ */
+public class OnnxSentenceEncoder implements AutoCloseable {
+
+    private final OrtEnvironment environment;
+    private final OrtSession session;
+    private final HuggingFaceTokenizer tokenizer;
+    private final String model;
+    private final String outputName;
+    private final boolean takesTypeIds;
+
+    /**
+     * @param intraOpThreads threads ONNX Runtime may use for one batch; 0 leaves its default
+     */
+    public OnnxSentenceEncoder(String model, String modelPath, String tokenizerPath, String outputName,
+                               int maxSequenceLength, int intraOpThreads) throws IOException, OrtException {
+        this.model = model;
+        this.outputName = outputName;
+        this.tokenizer = HuggingFaceTokenizer.builder()
+                .optTokenizerPath(Path.of(tokenizerPath))
+                .optTruncation(true)
+                .optPadding(true)
+                .optMaxLength(maxSequenceLength)
+                .build();
+        this.environment = OrtEnvironment.getEnvironment();
+        try (OrtSession.SessionOptions options = new OrtSession.SessionOptions()) {
+            options.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT);
+            if (intraOpThreads > 0) {
+                options.setIntraOpNumThreads(intraOpThreads);
+            }
+            this.session = environment.createSession(modelPath, options);
+        }
+        this.takesTypeIds = session.getInputNames().contains("token_type_ids");
+    }
+
+    public String model() {
+        return model;
+    }
+
+    public Set<String> inputNames() throws OrtException {
+        return session.getInputNames();
+    }
+
+    /** One unit vector per text, in order. */
+    public List<float[]> encode(List<String> texts) {
+        Map<String, long[][]> arrays = inputs(tokenizer.batchEncode(texts), takesTypeIds);
+        Map<String, OnnxTensor> inputs = new HashMap<>();
+        try {
+            for (Map.Entry<String, long[][]> input : arrays.entrySet()) {
+                inputs.put(input.getKey(), OnnxTensor.createTensor(environment, input.getValue()));
+            }
+            try (OrtSession.Result result = session.run(inputs)) {
+                OnnxValue output = result.get(outputName).orElseThrow(() ->
+                        new IllegalStateException("ONNX model " + model + " has no output " + outputName));
+                return meanPool((float[][][]) output.getValue(), arrays.get("attention_mask"));
+            }
+        } catch (OrtException ex) {
+            throw new IllegalStateException("ONNX inference of " + texts.size() + " texts with " + model + " failed", ex);
+        } finally {
+            inputs.values().forEach(OnnxTensor::close);
+        }
+    }
+
+    /**
+     * The model inputs for a batch, padded with zeros to its longest text; {@code token_type_ids}
+     * only when the model declares it, since ONNX Runtime rejects inputs a model does not have.
+     */
+    static Map<String, long[][]> inputs(Encoding[] encodings, boolean takesTypeIds) {
+        int length = 0;
+        for (Encoding encoding : encodings) {
+            length = Math.max(length, encoding.getIds().length);
+        }
+        long[][] ids = new long[encodings.length][length];
+        long[][] mask = new long[encodings.length][length];
+        long[][] typeIds = takesTypeIds ? new long[encodings.length][length] : null;
+        for (int i = 0; i < encodings.length; i++) {
+            long[] tokens = encodings[i].getIds();
+            System.arraycopy(tokens, 0, ids[i], 0, tokens.length);
+            System.arraycopy(encodings[i].getAttentionMask(), 0, mask[i], 0, tokens.length);
+            if (takesTypeIds) {
+                System.arraycopy(encodings[i].getTypeIds(), 0, typeIds[i], 0, tokens.length);
+            }
+        }
+        Map<String, long[][]> inputs = new LinkedHashMap<>();
+        inputs.put("input_ids", ids);
+        inputs.put("attention_mask", mask);
+        if (takesTypeIds) {
+            inputs.put("token_type_ids", typeIds);
+        }
+        return inputs;
+    }
+
+    /** Mean of the token states under the attention mask, scaled to unit length. */
+    static List<float[]> meanPool(float[][][] hidden, long[][] mask) {
+        List<float[]> vectors = new ArrayList<>(hidden.length);
+        for (int i = 0; i < hidden.length; i++) {
+            int dims = hidden[i][0].length;
+            float[] sum = new float[dims];
+            int tokens = 0;
+            for (int t = 0; t < hidden[i].length; t++) {
+                if (mask[i][t] == 0) {
+                    continue;
+                }
+                tokens++;
+                for (int d = 0; d < dims; d++) {
+                    sum[d] += hidden[i][t][d];
+                }
+            }
+            double norm = 0;
+            for (int d = 0; d < dims; d++) {
+                sum[d] /= Math.max(1, tokens);
+                norm += sum[d] * sum[d];
+            }
+            float scale = norm == 0 ? 1f : (float) (1 / Math.sqrt(norm));
+            for (int d = 0; d < dims; d++) {
+                sum[d] *= scale;
+            }
+            vectors.add(sum);
+        }
+        return vectors;
+    }
+
+    @Override
+    public void close() throws OrtException {
+        session.close();
+        tokenizer.close();
+    }
+}
@@ -0,0 +1,73 @@
+package com.gnemirko.common.vector;
+
+/**
+ * How the HNSW index of an embedding slot stores its vectors. The slot columns always hold float32
+ * vectors; the index is built on an expression over them, so a quantized index needs no schema
+ * change. {@link #HALFVEC} halves the index at a small recall cost; {@link #BINARY} keeps one bit
+ * per dimension and is only usable with a float re-rank of a larger candidate set. imdb-vec builds
+ * the index on {@link #indexExpression} and records the choice in
+ * {@code embedding_model_state.index_quantization}; both imdb-vec and the MCP server search it
+ * through {@link #distance}.
+ */
+public enum VectorQuantization {
+    NONE("none", "vector_cosine_ops"),
+    HALFVEC("halfvec", "halfvec_cosine_ops"),
+    BINARY("binary", "bit_hamming_ops");
+
+    private final String code;
+    private final String operatorClass;
+
+    VectorQuantization(String code, String operatorClass) {
+        this.code = code;
+        this.operatorClass = operatorClass;
+    }
+
+    /** Value of {@code embedding_model_state.index_quantization}. */
+    public String code() {
+        return code;
+    }
+
+    public String operatorClass() {
+        return operatorClass;
+    }
+
+    /** Whether index results are only candidates that have to be re-ranked by float distance. */
+    public boolean reranks() {
+        return this == BINARY;
+    }
+
+    /** The expression the index is built on for a column of {@code dims}-dimensional vectors. */
+    public String indexExpression(String column, int dims) {
+        return switch (this) {
+            case NONE -> "(%s::vector(%d))".formatted(column, dims);
+            case HALFVEC -> "(%s::halfvec(%d))".formatted(column, dims);
+            case BINARY -> "(binary_quantize(%s)::bit(%d))".formatted(column, dims);
+        };
+    }
+
+    /**
+     * The distance between {@code column} and the SQL expression {@code query} in the form an
+     * {@code ORDER BY} has to use for the planner to pick the index.
+     */
+    public String distance(String column, String query, int dims) {
+        return switch (this) {
+            case NONE -> "%s <=> (%s)::vector(%d)".formatted(indexExpression(column, dims), query, dims);
+            case HALFVEC -> "%s <=> (%s)::halfvec(%d)".formatted(indexExpression(column, dims), query, dims);
+            case BINARY -> "%s <~> binary_quantize((%s)::vector(%d))::bit(%d)"
+                    .formatted(indexExpression(column, dims), query, dims, dims);
+        };
+    }
+
+    /** {@code null} (a database older than quantized indexes) means {@link #NONE}. */
+    public static VectorQuantization fromCode(String code) {
+        if (code == null) {
+            return NONE;
+        }
+        for (VectorQuantization quantization : values()) {
+            if (quantization.code.equals(code)) {
+                return quantization;
+            }
+        }
+        throw new IllegalArgumentException("Unknown vector index quantization: " + code);
+    }
+}
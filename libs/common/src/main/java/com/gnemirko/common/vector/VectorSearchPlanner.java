@@ -0,0 +1,120 @@
+package com.gnemirko.common.vector;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.util.Locale;
+
+/**
+ * Decides per query how a filtered nearest-neighbour search runs. An HNSW scan finds the nearest
+ * vectors first and filters afterwards, so under a selective filter it has to walk most of the
+ * graph (pgvector's iterative scan) or returns too few rows; scoring every movie that passes the
+ * filter is then cheaper and exact. The filtered rows are counted up to
+ * {@link Settings#exactMaxRows}, so the estimate never costs more than the exact scan it may
+ * choose. Both plans yield the same shape: movie ids with their float32 cosine distance. imdb-vec
+ * and the MCP server each register one instance over their own properties.
+ */
+public class VectorSearchPlanner {
+
+    public enum Strategy { EXACT, INDEX }
+
+    /** pgvector's {@code hnsw.iterative_scan} modes; iterative scans need pgvector 0.8 or newer. */
+    public enum IterativeScan { OFF, STRICT_ORDER, RELAXED_ORDER }
+
+    /**
+     * @param exactMaxRows  filters matching at most this many movies are searched exactly; 0 or less always uses the index
+     * @param efSearch      {@code hnsw.ef_search} of index searches, raised to the rows fetched and capped at 1000
+     * @param iterativeScan {@code hnsw.iterative_scan}; {@code null} means {@link IterativeScan#RELAXED_ORDER}
+     * @param maxScanTuples upper bound on the index tuples one iterative scan visits, at least 1
+     * @param rerankFactor  with a binary-quantized index, candidates fetched per result for the float re-rank, at least 1
+     */
+    public record Settings(int exactMaxRows, int efSearch, IterativeScan iterativeScan, int maxScanTuples,
+                           int rerankFactor) {
+
+        static final int MAX_EF_SEARCH = 1000;
+
+        public Settings {
+            exactMaxRows = Math.max(0, exactMaxRows);
+            efSearch = Math.clamp(efSearch, 1, MAX_EF_SEARCH);
+            iterativeScan = iterativeScan == null ? IterativeScan.RELAXED_ORDER : iterativeScan;
+            maxScanTuples = Math.max(1, maxScanTuples);
+            rerankFactor = Math.max(1, rerankFactor);
+        }
+    }
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final Settings settings;
+
+    public VectorSearchPlanner(NamedParameterJdbcTemplate jdbc, Settings settings) {
+        this.jdbc = jdbc;
+        this.settings = settings;
+    }
+
+    /**
+     * @param where    condition on {@code movie m}, including that the slot column is set
+     * @param filtered whether {@code where} holds request filters; unfiltered searches always use the index
+     */
+    public Strategy choose(String where, MapSqlParameterSource params, boolean filtered) {
+        if (!filtered || settings.exactMaxRows() == 0) {
+            return Strategy.INDEX;
+        }
+        params.addValue("countLimit", settings.exactMaxRows() + 1);
+        Integer matching = jdbc.queryForObject(
+                "SELECT COUNT(*) FROM (SELECT 1 FROM movie m WHERE %s LIMIT :countLimit) c".formatted(where),
+                params, Integer.class);
+        return matching != null && matching <= settings.exactMaxRows() ? Strategy.EXACT : Strategy.INDEX;
+    }
+
+    /**
+     * SQL returning {@code id} and {@code distance} of the {@code candidates} movies nearest to
+     * {@code :vec} that satisfy {@code where}, nearest first. Run it in the transaction
+     * {@link #prepare} was called in.
+     */
+    public String candidates(Strategy strategy, VectorSlot slot, String where, MapSqlParameterSource params,
+                             int candidates) {
+        params.addValue("candidateLimit", candidates);
+        String distance = "%s <=> :vec".formatted(slot.column("m"));
+        if (strategy == Strategy.EXACT) {
+            // OFFSET 0 keeps the subquery from being flattened, so the ordering cannot go through the index.
+            return """
+                    SELECT c.id, c.distance FROM (
+                        SELECT m.id, %s AS distance FROM movie m
+                        WHERE %s
+                        OFFSET 0
+                    ) c
+                    ORDER BY c.distance
+                    LIMIT :candidateLimit
+                    """.formatted(distance, where);
+        }
+        params.addValue("indexLimit", indexLimit(slot, candidates));
+        // The outer ORDER BY restores float32 order after a relaxed iterative scan or a quantized index.
+        return """
+                SELECT c.id, c.distance FROM (
+                    SELECT m.id, %s AS distance FROM movie m
+                    WHERE %s
+                    ORDER BY %s
+                    LIMIT :indexLimit
+                ) c
+                ORDER BY c.distance
+                LIMIT :candidateLimit
+                """.formatted(distance, where, slot.indexDistance("m", ":vec"));
+    }
+
+    /** Applies the index scan settings to the current transaction. */
+    public void prepare(Strategy strategy, VectorSlot slot, int candidates) {
+        if (strategy != Strategy.INDEX) {
+            return;
+        }
+        int ef = Math.min(Settings.MAX_EF_SEARCH, Math.max(settings.efSearch(), indexLimit(slot, candidates)));
+        jdbc.getJdbcTemplate().execute("SET LOCAL hnsw.ef_search = " + ef);
+        if (settings.iterativeScan() != IterativeScan.OFF) {
+            jdbc.getJdbcTemplate().execute("SET LOCAL hnsw.iterative_scan = "
+                    + settings.iterativeScan().name().toLowerCase(Locale.ROOT));
+            jdbc.getJdbcTemplate().execute("SET LOCAL hnsw.max_scan_tuples = " + settings.maxScanTuples());
+        }
+    }
+
+    private int indexLimit(VectorSlot slot, int candidates) {
+        return slot.quantization().reranks() ? candidates * settings.rerankFactor() : candidates;
+    }
+}
@@ -0,0 +1,20 @@
+package com.gnemirko.common.vector;
+
+/** An embedding column of {@code movie} as {@link VectorSearchPlanner} searches it. */
+public interface VectorSlot {
+
+    /** The column, qualified with {@code alias} when it is not null. */
+    String column(String alias);
+
+    /** Declared dimensions of the column; {@code null} for the typed column of databases that predate slots. */
+    Integer dims();
+
+    VectorQuantization quantization();
+
+    /** The distance to the SQL expression {@code query} in the form the slot's HNSW index is searched by. */
+    default String indexDistance(String alias, String query) {
+        return dims() == null
+                ? "%s <=> %s".formatted(column(alias), query)
+                : quantization().distance(column(alias), query, dims());
+    }
+}
@@ -0,0 +1,140 @@
+package com.gnemirko.common.ollama;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OllamaConcurrencyLimiterTest {
+
+    private static final String GENERATE = "/api/generate";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void queuesCallsOverTheLimitUntilOneFinishes() {
+        OllamaConcurrencyLimiter limiter = limiter(2, 1, 2);
+        AtomicInteger started = new AtomicInteger();
+        List<Sinks.One<String>> responses = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Sinks.One<String> response = Sinks.one();
+            responses.add(response);
+            limiter.limit(GENERATE, Mono.defer(() -> {
+                started.incrementAndGet();
+                return response.asMono();
+            })).subscribe();
+        }
+
+        assertThat(started).hasValue(2);
+        assertThat(limiter.inFlight()).isEqualTo(2);
+        assertThat(registry.get("ollama.limiter.queued").gauge().value()).isEqualTo(3);
+        assertThat(registry.get("ollama.limiter.in.flight").gauge().value()).isEqualTo(2);
+        assertThat(registry.get("ollama.limiter.limit").gauge().value()).isEqualTo(2);
+
+        responses.get(0).tryEmitValue("done");
+        assertThat(started).hasValue(3);
+        assertThat(limiter.queued()).isEqualTo(2);
+    }
+
+    @Test
+    void growsWhileSaturatedAndShrinksOnOverload() {
+        OllamaConcurrencyLimiter limiter = limiter(1, 1, 4);
+        for (int i = 0; i < 10; i++) {
+            limiter.limit(GENERATE, Mono.fromSupplier(() -> {
+                clock.addAndGet(Duration.ofMillis(10).toNanos());
+                return "ok";
+            })).block();
+        }
+        double grown = limiter.limit();
+        assertThat(grown).isGreaterThan(2);
+
+        clock.addAndGet(Duration.ofSeconds(1).toNanos());
+        limiter.limit(GENERATE, Mono.error(new TimeoutException("ollama timed out"))).onErrorResume(ex -> Mono.empty()).block();
+        assertThat(limiter.limit()).isEqualTo(grown * 0.9);
+        assertThat(registry.get("ollama.limiter.overloads").counter().count()).isEqualTo(1);
+        assertThat(limiter.inFlight()).isZero();
+    }
+
+    @Test
+    void slowResponsesShrinkTheLimitOncePerRoundTrip() {
+        OllamaConcurrencyLimiter limiter = limiter(8, 1, 8);
+        limiter.limit(GENERATE, Mono.fromSupplier(() -> {
+            clock.addAndGet(Duration.ofMillis(10).toNanos());
+            return "ok";
+        })).block();
+
+        Sinks.One<String> first = Sinks.one();
+        Sinks.One<String> second = Sinks.one();
+        limiter.limit(GENERATE, first.asMono()).subscribe();
+        limiter.limit(GENERATE, second.asMono()).subscribe();
+        clock.addAndGet(Duration.ofMillis(100).toNanos());
+        first.tryEmitValue("slow");
+        second.tryEmitValue("slow");
+
+        assertThat(limiter.limit()).isEqualTo(8 * 0.9);
+        assertThat(registry.get("ollama.limiter.overloads").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void latencyIsComparedWithinTheSameEndpoint() {
+        OllamaConcurrencyLimiter limiter = limiter(8, 1, 8);
+        for (int i = 0; i < 5; i++) {
+            limiter.limit("/api/chat", Mono.fromSupplier(() -> {
+                clock.addAndGet(Duration.ofMillis(10).toNanos());
+                return "short";
+            })).block();
+        }
+        double before = limiter.limit();
+
+        limiter.limit(GENERATE, Mono.fromSupplier(() -> {
+            clock.addAndGet(Duration.ofMillis(200).toNanos());
+            return "generation";
+        })).block();
+        assertThat(limiter.limit()).isGreaterThanOrEqualTo(before);
+
+        limiter.limit(GENERATE, Mono.fromSupplier(() -> {
+            clock.addAndGet(Duration.ofMillis(1000).toNanos());
+            return "slow generation";
+        })).block();
+        assertThat(limiter.limit()).isLessThan(before);
+    }
+
+    @Test
+    void cancelledWaitersGiveUpTheirPlace() {
+        OllamaConcurrencyLimiter limiter = limiter(1, 1, 1);
+        Sinks.One<String> first = Sinks.one();
+        limiter.limit(GENERATE, first.asMono()).subscribe();
+        AtomicInteger started = new AtomicInteger();
+        Disposable waiting = limiter.limit(GENERATE, Mono.fromSupplier(() -> {
+            started.incrementAndGet();
+            return "never";
+        })).subscribe();
+        assertThat(limiter.queued()).isEqualTo(1);
+
+        waiting.dispose();
+        first.tryEmitValue("done");
+
+        assertThat(limiter.queued()).isZero();
+        assertThat(limiter.inFlight()).isZero();
+        assertThat(started).hasValue(0);
+    }
+
+    private OllamaConcurrencyLimiter limiter(int initial, int min, int max) {
+        OllamaLimiterProperties properties = new OllamaLimiterProperties();
+        properties.setInitialLimit(initial);
+        properties.setMinLimit(min);
+        properties.setMaxLimit(max);
+        return new OllamaConcurrencyLimiter(properties, registry, clock::get);
+    }
+}
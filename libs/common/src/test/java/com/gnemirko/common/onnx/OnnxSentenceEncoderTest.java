@@ -0,0 +1,67 @@
+package com.gnemirko.common.onnx;
+
+import ai.djl.huggingface.tokenizers.Encoding;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OnnxSentenceEncoderTest {
+
+    @Test
+    void meanPoolsUnmaskedTokensToUnitVectors() {
+        float[][][] hidden = {
+                {{3, 0}, {1, 4}, {100, 100}},
+                {{0, 2}, {0, 0}, {0, 0}}
+        };
+        long[][] mask = {
+                {1, 1, 0},
+                {1, 0, 0}
+        };
+
+        List<float[]> vectors = OnnxSentenceEncoder.meanPool(hidden, mask);
+
+        assertThat(vectors.get(0)).containsExactly(new float[]{0.7071068f, 0.7071068f}, within(1e-6f));
+        assertThat(vectors.get(1)).containsExactly(new float[]{0f, 1f}, within(1e-6f));
+    }
+
+    @Test
+    void padsTheBatchToItsLongestText() {
+        Encoding[] encodings = {
+                encoding(new long[]{101, 7, 8, 102}, new long[]{0, 0, 1, 1}),
+                encoding(new long[]{101, 102}, new long[]{0, 0})
+        };
+
+        Map<String, long[][]> inputs = OnnxSentenceEncoder.inputs(encodings, true);
+
+        assertThat(inputs).containsOnlyKeys("input_ids", "attention_mask", "token_type_ids");
+        assertThat(inputs.get("input_ids")).isDeepEqualTo(new long[][]{{101, 7, 8, 102}, {101, 102, 0, 0}});
+        assertThat(inputs.get("attention_mask")).isDeepEqualTo(new long[][]{{1, 1, 1, 1}, {1, 1, 0, 0}});
+        assertThat(inputs.get("token_type_ids")).isDeepEqualTo(new long[][]{{0, 0, 1, 1}, {0, 0, 0, 0}});
+    }
+
+    @Test
+    void leavesOutTokenTypeIdsForModelsWithoutThatInput() {
+        Map<String, long[][]> inputs = OnnxSentenceEncoder.inputs(
+                new Encoding[]{encoding(new long[]{101, 7, 102}, new long[]{0, 0, 0})}, false);
+
+        assertThat(inputs).containsOnlyKeys("input_ids", "attention_mask");
+        assertThat(inputs.get("input_ids")).isDeepEqualTo(new long[][]{{101, 7, 102}});
+    }
+
+    private static Encoding encoding(long[] ids, long[] typeIds) {
+        long[] mask = new long[ids.length];
+        Arrays.fill(mask, 1);
+        Encoding encoding = mock(Encoding.class);
+        when(encoding.getIds()).thenReturn(ids);
+        when(encoding.getTypeIds()).thenReturn(typeIds);
+        when(encoding.getAttentionMask()).thenReturn(mask);
+        return encoding;
+    }
+}
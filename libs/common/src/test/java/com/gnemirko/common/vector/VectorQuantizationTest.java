@@ -0,0 +1,53 @@
+package com.gnemirko.common.vector;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Pins the index expressions and distances: a query whose ORDER BY differs from the indexed
+ * expression silently falls back to a sequential scan.
+ */
+class VectorQuantizationTest {
+
+    @Test
+    void indexesAreBuiltOnTheQuantizedColumn() {
+        assertThat(VectorQuantization.NONE.indexExpression("embedding", 768)).isEqualTo("(embedding::vector(768))");
+        assertThat(VectorQuantization.HALFVEC.indexExpression("embedding", 768)).isEqualTo("(embedding::halfvec(768))");
+        assertThat(VectorQuantization.BINARY.indexExpression("embedding", 768)).isEqualTo("(binary_quantize(embedding)::bit(768))");
+    }
+
+    @Test
+    void operatorClassesMatchTheIndexedType() {
+        assertThat(VectorQuantization.NONE.operatorClass()).isEqualTo("vector_cosine_ops");
+        assertThat(VectorQuantization.HALFVEC.operatorClass()).isEqualTo("halfvec_cosine_ops");
+        assertThat(VectorQuantization.BINARY.operatorClass()).isEqualTo("bit_hamming_ops");
+    }
+
+    @Test
+    void distancesOrderByTheIndexedExpression() {
+        assertThat(VectorQuantization.NONE.distance("m.embedding", ":vec", 768))
+                .isEqualTo("(m.embedding::vector(768)) <=> (:vec)::vector(768)");
+        assertThat(VectorQuantization.HALFVEC.distance("m.embedding", ":vec", 768))
+                .isEqualTo("(m.embedding::halfvec(768)) <=> (:vec)::halfvec(768)");
+        assertThat(VectorQuantization.BINARY.distance("m.embedding", ":vec", 768))
+                .isEqualTo("(binary_quantize(m.embedding)::bit(768)) <~> binary_quantize((:vec)::vector(768))::bit(768)");
+    }
+
+    @Test
+    void onlyBinaryIndexesNeedARerank() {
+        assertThat(VectorQuantization.BINARY.reranks()).isTrue();
+        assertThat(VectorQuantization.HALFVEC.reranks()).isFalse();
+        assertThat(VectorQuantization.NONE.reranks()).isFalse();
+    }
+
+    @Test
+    void codesRoundTrip() {
+        for (VectorQuantization quantization : VectorQuantization.values()) {
+            assertThat(VectorQuantization.fromCode(quantization.code())).isEqualTo(quantization);
+        }
+        assertThat(VectorQuantization.fromCode(null)).isEqualTo(VectorQuantization.NONE);
+        assertThatThrownBy(() -> VectorQuantization.fromCode("pq")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,123 @@
+package com.gnemirko.common.vector;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class VectorSearchPlannerTest {
+
+    private static final Slot HALFVEC_SLOT = new Slot("embedding_b", 768, VectorQuantization.HALFVEC);
+
+    private final NamedParameterJdbcTemplate jdbc = mock(NamedParameterJdbcTemplate.class);
+    private final JdbcTemplate session = mock(JdbcTemplate.class);
+    private final VectorSearchPlanner planner = new VectorSearchPlanner(jdbc,
+            new VectorSearchPlanner.Settings(1000, 100, VectorSearchPlanner.IterativeScan.RELAXED_ORDER, 5000, 4));
+
+    @Test
+    void searchesSelectiveFiltersExactlyAndLooseOnesThroughTheIndex() {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        when(jdbc.queryForObject(anyString(), any(MapSqlParameterSource.class), eq(Integer.class))).thenReturn(1000, 1001);
+
+        assertThat(planner.choose("m.start_year = 1999", params, true)).isEqualTo(VectorSearchPlanner.Strategy.EXACT);
+        assertThat(planner.choose("m.start_year > 1999", params, true)).isEqualTo(VectorSearchPlanner.Strategy.INDEX);
+        assertThat(params.getValue("countLimit")).isEqualTo(1001);
+        verify(jdbc).queryForObject(eq("SELECT COUNT(*) FROM (SELECT 1 FROM movie m WHERE m.start_year = 1999 LIMIT :countLimit) c"),
+                any(MapSqlParameterSource.class), eq(Integer.class));
+    }
+
+    @Test
+    void unfilteredSearchesSkipTheCount() {
+        assertThat(planner.choose("m.embedding IS NOT NULL", new MapSqlParameterSource(), false))
+                .isEqualTo(VectorSearchPlanner.Strategy.INDEX);
+        verifyNoInteractions(jdbc);
+    }
+
+    @Test
+    void zeroExactMaxRowsAlwaysSearchesTheIndex() {
+        VectorSearchPlanner indexOnly = new VectorSearchPlanner(jdbc, new VectorSearchPlanner.Settings(0, 100, null, 5000, 4));
+
+        assertThat(indexOnly.choose("m.start_year = 1999", new MapSqlParameterSource(), true))
+                .isEqualTo(VectorSearchPlanner.Strategy.INDEX);
+        verifyNoInteractions(jdbc);
+    }
+
+    @Test
+    void settingsAreClampedToWhatPgvectorAccepts() {
+        VectorSearchPlanner.Settings settings = new VectorSearchPlanner.Settings(-1, 5000, null, 0, 0);
+
+        assertThat(settings.exactMaxRows()).isZero();
+        assertThat(settings.efSearch()).isEqualTo(1000);
+        assertThat(settings.iterativeScan()).isEqualTo(VectorSearchPlanner.IterativeScan.RELAXED_ORDER);
+        assertThat(settings.maxScanTuples()).isEqualTo(1);
+        assertThat(settings.rerankFactor()).isEqualTo(1);
+    }
+
+    @Test
+    void indexCandidatesOrderByTheIndexedExpression() {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+
+        String sql = planner.candidates(VectorSearchPlanner.Strategy.INDEX, HALFVEC_SLOT, "TRUE", params, 10);
+
+        assertThat(sql).contains("ORDER BY (m.embedding_b::halfvec(768)) <=> (:vec)::halfvec(768)");
+        assertThat(params.getValue("indexLimit")).isEqualTo(10);
+        assertThat(params.getValue("candidateLimit")).isEqualTo(10);
+    }
+
+    @Test
+    void slotsWithoutADimensionSearchThePlainColumnIndex() {
+        Slot legacy = new Slot("embedding", null, VectorQuantization.NONE);
+
+        String sql = planner.candidates(VectorSearchPlanner.Strategy.INDEX, legacy, "TRUE", new MapSqlParameterSource(), 10);
+
+        assertThat(sql).contains("ORDER BY m.embedding <=> :vec");
+    }
+
+    @Test
+    void exactCandidatesCannotUseTheIndex() {
+        String sql = planner.candidates(VectorSearchPlanner.Strategy.EXACT, HALFVEC_SLOT, "TRUE",
+                new MapSqlParameterSource(), 10);
+
+        assertThat(sql).contains("OFFSET 0").doesNotContain(":indexLimit");
+    }
+
+    @Test
+    void binaryIndexesOverFetchAndTuneTheScan() {
+        Slot slot = new Slot("embedding_b", 768, VectorQuantization.BINARY);
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        when(jdbc.getJdbcTemplate()).thenReturn(session);
+
+        String sql = planner.candidates(VectorSearchPlanner.Strategy.INDEX, slot, "TRUE", params, 50);
+        planner.prepare(VectorSearchPlanner.Strategy.INDEX, slot, 50);
+
+        assertThat(sql).contains("ORDER BY (binary_quantize(m.embedding_b)::bit(768)) <~> binary_quantize((:vec)::vector(768))::bit(768)");
+        assertThat(params.getValue("indexLimit")).isEqualTo(200);
+        verify(session).execute("SET LOCAL hnsw.ef_search = 200");
+        verify(session).execute("SET LOCAL hnsw.iterative_scan = relaxed_order");
+        verify(session).execute("SET LOCAL hnsw.max_scan_tuples = 5000");
+    }
+
+    @Test
+    void exactSearchesLeaveTheScanSettingsAlone() {
+        planner.prepare(VectorSearchPlanner.Strategy.EXACT, HALFVEC_SLOT, 50);
+
+        verifyNoInteractions(jdbc);
+    }
+
+    private record Slot(String column, Integer dims, VectorQuantization quantization) implements VectorSlot {
+
+        @Override
+        public String column(String alias) {
+            return alias + "." + column;
+        }
+    }
+}